@@ -3,7 +3,9 @@ package org.minimarket.minimarketbackendspring.controllers;
 import java.math.BigDecimal;
 import java.util.List;
 
+import org.minimarket.minimarketbackendspring.dtos.CarritoResumenDTO;
 import org.minimarket.minimarketbackendspring.dtos.CarritoTemporalDto;
+import org.minimarket.minimarketbackendspring.dtos.requests.CarritoOperacionDTO;
 import org.minimarket.minimarketbackendspring.services.interfaces.CarritoTemporalService;
 import org.minimarket.minimarketbackendspring.utils.PDFExportUtil;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,6 +15,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PatchMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
@@ -20,6 +23,9 @@ import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+
+import jakarta.persistence.EntityNotFoundException;
 
 /**
  * Controlador REST para manejar operaciones del carrito temporal.
@@ -37,10 +43,24 @@ public class CarritoTemporalController {
 
     /**
      * Obtiene todos los items del carrito de un usuario.
+     *
+     * Responde con un ETag débil; si el cliente envía la versión vigente en
+     * If-None-Match se responde 304 sin cargar el carrito. Sin versión (usuario
+     * inexistente o almacén no versionado) se responde sin ETag.
      */
     @GetMapping("/usuario/{idUsuario}")
-    public ResponseEntity<List<CarritoTemporalDto>> getCarritoByUsuario(@PathVariable String idUsuario) {
-        return ResponseEntity.ok(carritoService.findByUsuario(idUsuario));
+    public ResponseEntity<List<CarritoTemporalDto>> getCarritoByUsuario(@PathVariable String idUsuario,
+            WebRequest request) {
+        String version = carritoService.versionCarrito(idUsuario);
+        if (version == null) {
+            return ResponseEntity.ok(carritoService.findByUsuario(idUsuario));
+        }
+
+        String etag = "W/\"" + version + "\"";
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(carritoService.findByUsuario(idUsuario));
     }
 
     /**
@@ -76,6 +96,23 @@ public class CarritoTemporalController {
         return ResponseEntity.ok().build();
     }
 
+    /**
+     * Aplica varias operaciones (agregar, fijar, eliminar) sobre el carrito en
+     * una sola transacción y devuelve el carrito resultante con sus totales.
+     */
+    @PatchMapping("/usuario/{idUsuario}/items")
+    public ResponseEntity<CarritoResumenDTO> aplicarOperaciones(
+            @PathVariable String idUsuario,
+            @RequestBody List<CarritoOperacionDTO> operaciones) {
+        try {
+            return ResponseEntity.ok(carritoService.aplicarOperaciones(idUsuario, operaciones));
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
     /**
      * Vacía todo el carrito de un usuario.
      */
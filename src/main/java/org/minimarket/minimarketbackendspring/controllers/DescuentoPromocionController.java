@@ -4,6 +4,8 @@ import java.math.BigDecimal;
 import java.util.List;
 
 import org.minimarket.minimarketbackendspring.dtos.DescuentoPromocionDTO;
+import org.minimarket.minimarketbackendspring.dtos.PrecioEfectivoDTO;
+import org.minimarket.minimarketbackendspring.dtos.requests.PrecioConsultaDTO;
 import org.minimarket.minimarketbackendspring.services.interfaces.DescuentoPromocionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -132,18 +134,39 @@ public class DescuentoPromocionController {
     }
 
     /**
-     * Crea un nuevo descuento.
+     * Calcula el precio efectivo de varios productos en una sola llamada, por
+     * ejemplo para una grilla de catálogo.
+     */
+    @PostMapping("/precios")
+    public ResponseEntity<List<PrecioEfectivoDTO>> calcularPreciosEfectivos(
+            @RequestBody List<PrecioConsultaDTO> consultas) {
+        try {
+            return ResponseEntity.ok(descuentoService.calcularPreciosEfectivos(consultas));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * Crea un nuevo descuento. Sin idProducto, aplica a la categoría o al
+     * proveedor indicados en el cuerpo, o a todo el catálogo si el cuerpo
+     * trae alcance CATALOGO; sin ninguno de ellos se rechaza.
      *
      * @param descuento el objeto DescuentoPromocionDTO a crear
-     * @param idProducto el identificador del producto
-     * @return una respuesta HTTP 201 si se crea correctamente
+     * @param idProducto el identificador del producto (opcional)
+     * @return una respuesta HTTP 201 si se crea correctamente, o 400 si el
+     *         alcance falta o es inválido
      */
     @PostMapping
     public ResponseEntity<DescuentoPromocionDTO> createDescuento(
             @RequestBody DescuentoPromocionDTO descuento, 
-            @RequestParam String idProducto) {        
-        DescuentoPromocionDTO savedDescuento = descuentoService.save(descuento, idProducto);
-        return ResponseEntity.status(HttpStatus.CREATED).body(savedDescuento);
+            @RequestParam(required = false) String idProducto) {        
+        try {
+            DescuentoPromocionDTO savedDescuento = descuentoService.save(descuento, idProducto);
+            return ResponseEntity.status(HttpStatus.CREATED).body(savedDescuento);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().build();
+        }
     }
 
     /**
@@ -4,7 +4,9 @@ import java.util.List;
 
 import org.minimarket.minimarketbackendspring.dtos.DetallePedidoDTO;
 import org.minimarket.minimarketbackendspring.services.interfaces.DetallePedidoService;
+import org.minimarket.minimarketbackendspring.services.interfaces.ReintentoConcurrenciaService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -29,6 +31,9 @@ public class DetallePedidoController {
     @Autowired
     private DetallePedidoService detallePedidoService;
 
+    @Autowired
+    private ReintentoConcurrenciaService reintentoConcurrenciaService;
+
     /**
      * Obtiene una lista de todos los detalles de pedido.
      *
@@ -74,8 +79,11 @@ public class DetallePedidoController {
             @RequestParam Long idPedido,
             @RequestParam String idProducto) {
         try {
-            DetallePedidoDTO savedDetalle = detallePedidoService.save(detallePedidoDTO, idPedido, idProducto);
+            DetallePedidoDTO savedDetalle = reintentoConcurrenciaService.ejecutar("detalle.crear",
+                    () -> detallePedidoService.save(detallePedidoDTO, idPedido, idProducto));
             return ResponseEntity.status(HttpStatus.CREATED).body(savedDetalle);
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (EntityNotFoundException e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         } catch (IllegalArgumentException | IllegalStateException e) {
@@ -97,8 +105,13 @@ public class DetallePedidoController {
             @PathVariable Long id,
             @RequestBody DetallePedidoDTO detallePedidoDTO) {
         try {
-            DetallePedidoDTO updatedDetalle = detallePedidoService.update(id, detallePedidoDTO);
+            DetallePedidoDTO updatedDetalle = reintentoConcurrenciaService.ejecutar("detalle.actualizar",
+                    () -> detallePedidoService.update(id, detallePedidoDTO));
             return ResponseEntity.ok(updatedDetalle);
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalStateException e) {
+            return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
@@ -113,8 +126,10 @@ public class DetallePedidoController {
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteDetalle(@PathVariable Long id) {
         try {
-            detallePedidoService.deleteById(id);
+            reintentoConcurrenciaService.ejecutar("detalle.eliminar", () -> detallePedidoService.deleteById(id));
             return ResponseEntity.noContent().build();
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
@@ -205,8 +220,11 @@ public class DetallePedidoController {
             @PathVariable String idProducto,
             @RequestParam Long cantidad) {
         try {
-            DetallePedidoDTO detalle = detallePedidoService.agregarProductoAPedido(idPedido, idProducto, cantidad);
+            DetallePedidoDTO detalle = reintentoConcurrenciaService.ejecutar("detalle.agregarProducto",
+                    () -> detallePedidoService.agregarProductoAPedido(idPedido, idProducto, cantidad));
             return ResponseEntity.status(HttpStatus.CREATED).body(detalle);
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
@@ -226,8 +244,11 @@ public class DetallePedidoController {
             @PathVariable String idProducto,
             @RequestParam Long nuevaCantidad) {
         try {
-            DetallePedidoDTO detalle = detallePedidoService.actualizarCantidad(idPedido, idProducto, nuevaCantidad);
+            DetallePedidoDTO detalle = reintentoConcurrenciaService.ejecutar("detalle.actualizarCantidad",
+                    () -> detallePedidoService.actualizarCantidad(idPedido, idProducto, nuevaCantidad));
             return ResponseEntity.ok(detalle);
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.BAD_REQUEST).build();
         }
@@ -245,8 +266,11 @@ public class DetallePedidoController {
             @PathVariable Long idPedido,
             @PathVariable String idProducto) {
         try {
-            detallePedidoService.eliminarProductoDePedido(idPedido, idProducto);
+            reintentoConcurrenciaService.ejecutar("detalle.eliminarProducto",
+                    () -> detallePedidoService.eliminarProductoDePedido(idPedido, idProducto));
             return ResponseEntity.noContent().build();
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
         }
@@ -5,9 +5,12 @@ import java.util.List;
 import org.minimarket.minimarketbackendspring.dtos.DetallePedidoDTO;
 import org.minimarket.minimarketbackendspring.dtos.PedidoDTO;
 import org.minimarket.minimarketbackendspring.services.interfaces.DetallePedidoService;
+import org.minimarket.minimarketbackendspring.services.interfaces.PedidoIdempotenciaService;
 import org.minimarket.minimarketbackendspring.services.interfaces.PedidoService;
+import org.minimarket.minimarketbackendspring.services.interfaces.ReintentoConcurrenciaService;
 import org.minimarket.minimarketbackendspring.utils.PDFExportUtil;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -17,9 +20,11 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
 import jakarta.persistence.EntityNotFoundException;
 
@@ -40,6 +45,12 @@ public class PedidoController {
     @Autowired
     private DetallePedidoService detallePedidoService;
 
+    @Autowired
+    private PedidoIdempotenciaService pedidoIdempotenciaService;
+
+    @Autowired
+    private ReintentoConcurrenciaService reintentoConcurrenciaService;
+
     /**
      * Obtiene todos los pedidos.
      */
@@ -50,10 +61,18 @@ public class PedidoController {
 
     /**
      * Obtiene pedidos por usuario.
+     *
+     * Responde con un ETag débil; si el cliente envía la versión vigente en
+     * If-None-Match se responde 304 sin consultar la base de datos.
      */
     @GetMapping("/usuario/{idUsuario}")
-    public ResponseEntity<List<PedidoDTO>> getPedidosByUsuario(@PathVariable String idUsuario) {
-        return ResponseEntity.ok(pedidoService.findByUsuario(idUsuario));
+    public ResponseEntity<List<PedidoDTO>> getPedidosByUsuario(@PathVariable String idUsuario,
+            WebRequest request) {
+        String etag = "W/\"" + pedidoService.versionPedidos(idUsuario) + "\"";
+        if (request.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(pedidoService.findByUsuario(idUsuario));
     }
 
     /**
@@ -126,14 +145,30 @@ public class PedidoController {
      *
      * @param idUsuario el identificador del usuario
      * @param createdBy el identificador de quien crea el pedido (opcional)
+     * @param idempotencyKey clave para que los reintentos devuelvan el mismo pedido (opcional)
      * @return una respuesta HTTP 201 si se crea correctamente
      */
     @PostMapping("/desde-carrito")
     public ResponseEntity<PedidoDTO> createPedidoDesdeCarrito(
             @RequestParam String idUsuario,
-            @RequestParam(required = false) String createdBy) {
-        PedidoDTO pedido = pedidoService.crearPedidoDesdeCarrito(idUsuario, createdBy != null ? createdBy : idUsuario);
-        return ResponseEntity.status(HttpStatus.CREATED).body(pedido);
+            @RequestParam(required = false) String createdBy,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        String creador = createdBy != null ? createdBy : idUsuario;
+        try {
+            PedidoDTO pedido = reintentoConcurrenciaService.ejecutar("pedido.desdeCarrito", () -> idempotencyKey != null
+                    ? pedidoIdempotenciaService.ejecutar(idempotencyKey, idUsuario,
+                            () -> pedidoService.crearPedidoDesdeCarrito(idUsuario, creador))
+                    : pedidoService.crearPedidoDesdeCarrito(idUsuario, creador));
+            return ResponseEntity.status(HttpStatus.CREATED).body(pedido);
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
     }
 
     /**
@@ -149,8 +184,19 @@ public class PedidoController {
             @PathVariable Long id,
             @RequestBody PedidoDTO pedido,
             @RequestParam String idUsuario) {
-        PedidoDTO updatedPedido = pedidoService.update(id, pedido, idUsuario);
-        return ResponseEntity.ok(updatedPedido);
+        try {
+            PedidoDTO updatedPedido = reintentoConcurrenciaService.ejecutar("pedido.actualizar",
+                    () -> pedidoService.update(id, pedido, idUsuario));
+            return ResponseEntity.ok(updatedPedido);
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
     }
 
     /**
@@ -165,10 +211,13 @@ public class PedidoController {
             @PathVariable Long id,
             @RequestParam String nuevoEstado) {
         try {
-            PedidoDTO pedidoActualizado = pedidoService.cambiarEstado(id, nuevoEstado);
+            PedidoDTO pedidoActualizado = reintentoConcurrenciaService.ejecutar("pedido.cambiarEstado",
+                    () -> pedidoService.cambiarEstado(id, nuevoEstado));
             return ResponseEntity.ok(pedidoActualizado);
         } catch (EntityNotFoundException e) {
             return ResponseEntity.notFound().build();
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
         } catch (IllegalArgumentException | IllegalStateException e) {
             return ResponseEntity.badRequest().build();
         } catch (Exception e) {
@@ -185,8 +234,18 @@ public class PedidoController {
      */
     @PatchMapping("/{id}/cancelar")
     public ResponseEntity<Void> cancelarPedido(@PathVariable Long id, @RequestParam String updatedBy) {
-        pedidoService.cancelarPedido(id, updatedBy);
-        return ResponseEntity.ok().build();
+        try {
+            reintentoConcurrenciaService.ejecutar("pedido.cancelar", () -> pedidoService.cancelarPedido(id, updatedBy));
+            return ResponseEntity.ok().build();
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
     }
 
     /**
@@ -197,8 +256,18 @@ public class PedidoController {
      */
     @PatchMapping("/{id}/totales")
     public ResponseEntity<Void> actualizarTotales(@PathVariable Long id) {
-        pedidoService.actualizarTotalesPedido(id);
-        return ResponseEntity.ok().build();
+        try {
+            reintentoConcurrenciaService.ejecutar("pedido.totales", () -> pedidoService.actualizarTotalesPedido(id));
+            return ResponseEntity.ok().build();
+        } catch (EntityNotFoundException e) {
+            return ResponseEntity.notFound().build();
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            return ResponseEntity.badRequest().build();
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).build();
+        }
     }
 
     /**
@@ -5,6 +5,7 @@ import java.util.List;
 import org.minimarket.minimarketbackendspring.dtos.ProductoDTO;
 import org.minimarket.minimarketbackendspring.services.interfaces.ProductoService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
@@ -107,7 +108,12 @@ public class ProductoController {
     @PutMapping("/{id}")
     public ResponseEntity<Void> updateProducto(@PathVariable String id, @RequestBody ProductoDTO producto) {
         producto.setIdProducto(id);
-        productoService.update(producto);
+        try {
+            productoService.update(producto);
+        } catch (OptimisticLockingFailureException e) {
+            // El stock cambió (venta o reposición) después de leer el producto
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
         return ResponseEntity.ok().build();
     }
 
@@ -119,7 +125,11 @@ public class ProductoController {
      */
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteProducto(@PathVariable String id) {
-        productoService.delete(id);
+        try {
+            productoService.delete(id);
+        } catch (OptimisticLockingFailureException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).build();
+        }
         return ResponseEntity.ok().build();
     }
 
@@ -0,0 +1,238 @@
+package org.minimarket.minimarketbackendspring.daos.impl;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Implementación de la interfaz CarritoDAO utilizando JdbcTemplate.
+ *
+ * <p>
+ * Las sentencias se ejecutan sobre la conexión de la transacción en curso.
+ * </p>
+ */
+@Repository
+public class CarritoDaoImpl implements CarritoDAO {
+
+    // LEFT JOIN desde USUARIOS: sin filas significa que el usuario no existe
+    private static final String SQL_LINEAS_POR_USUARIO = "SELECT c.ID_CARRITO, c.ID_PRODUCTO, c.CANTIDAD, "
+            + "c.FECHA_AGREGADO FROM USUARIOS u LEFT JOIN CARRITO_TEMPORAL c ON c.ID_USUARIO = u.ID_USUARIO "
+            + "WHERE u.ID_USUARIO = ? ORDER BY c.ID_CARRITO";
+
+    private static final String SQL_ELIMINAR_POR_USUARIOS = "DELETE FROM CARRITO_TEMPORAL "
+            + "WHERE ID_USUARIO IN (:ids)";
+
+    // Oracle solo devuelve varias filas de DELETE ... RETURNING desde PL/SQL:
+    // se bloquean las filas y luego se eliminan en la misma transacción
+    private static final String SQL_USUARIOS_POR_PRODUCTO = "SELECT ID_USUARIO FROM CARRITO_TEMPORAL "
+            + "WHERE ID_PRODUCTO = ? FOR UPDATE";
+
+    private static final String SQL_ELIMINAR_PRODUCTO = "DELETE FROM CARRITO_TEMPORAL WHERE ID_PRODUCTO = ?";
+
+    private static final String SQL_USUARIOS_ABANDONADOS = "SELECT ID_USUARIO FROM CARRITO_TEMPORAL "
+            + "WHERE ID_USUARIO IS NOT NULL %s GROUP BY ID_USUARIO HAVING MAX(FECHA_AGREGADO) < :corte "
+            + "ORDER BY ID_USUARIO FETCH FIRST :limite ROWS ONLY";
+
+    private static final String SQL_ELIMINAR_ABANDONADOS = "DELETE FROM CARRITO_TEMPORAL "
+            + "WHERE ID_USUARIO IN (:ids) AND ID_USUARIO NOT IN (SELECT ID_USUARIO FROM CARRITO_TEMPORAL "
+            + "WHERE ID_USUARIO IN (:ids) AND FECHA_AGREGADO >= :corte)";
+
+    private static final String SQL_ELIMINAR_LINEA = "DELETE FROM CARRITO_TEMPORAL "
+            + "WHERE ID_USUARIO = ? AND ID_PRODUCTO = ?";
+
+    private static final String SQL_ACTUALIZAR_CANTIDAD = "UPDATE CARRITO_TEMPORAL SET CANTIDAD = ? "
+            + "WHERE ID_USUARIO = ? AND ID_PRODUCTO = ?";
+
+    // Upsert sobre la restricción única (ID_USUARIO, ID_PRODUCTO)
+    private static final String SQL_GUARDAR_LINEA = "MERGE INTO CARRITO_TEMPORAL c "
+            + "USING (SELECT CAST(? AS VARCHAR2(36)) AS ID_USUARIO, CAST(? AS VARCHAR2(36)) AS ID_PRODUCTO, "
+            + "CAST(? AS NUMBER) AS CANTIDAD, CAST(? AS TIMESTAMP) AS FECHA_AGREGADO FROM DUAL) s "
+            + "ON (c.ID_USUARIO = s.ID_USUARIO AND c.ID_PRODUCTO = s.ID_PRODUCTO) "
+            + "WHEN MATCHED THEN UPDATE SET c.CANTIDAD = s.CANTIDAD "
+            + "WHEN NOT MATCHED THEN INSERT (ID_USUARIO, ID_PRODUCTO, CANTIDAD, FECHA_AGREGADO) "
+            + "VALUES (s.ID_USUARIO, s.ID_PRODUCTO, s.CANTIDAD, COALESCE(s.FECHA_AGREGADO, CURRENT_TIMESTAMP))";
+
+    // La fuente queda vacía si el usuario o el producto no existen o si la
+    // cantidad resultante supera el límite; en ese caso no se escribe nada
+    private static final String SQL_INCREMENTAR_LINEA = "MERGE INTO CARRITO_TEMPORAL c "
+            + "USING (SELECT u.ID_USUARIO, p.ID_PRODUCTO FROM USUARIOS u "
+            + "JOIN PRODUCTOS p ON p.ID_PRODUCTO = CAST(? AS VARCHAR2(36)) "
+            + "WHERE u.ID_USUARIO = CAST(? AS VARCHAR2(36)) AND COALESCE((SELECT ct.CANTIDAD FROM CARRITO_TEMPORAL ct "
+            + "WHERE ct.ID_USUARIO = u.ID_USUARIO AND ct.ID_PRODUCTO = p.ID_PRODUCTO), 0) + ? <= ?) s "
+            + "ON (c.ID_USUARIO = s.ID_USUARIO AND c.ID_PRODUCTO = s.ID_PRODUCTO) "
+            + "WHEN MATCHED THEN UPDATE SET c.CANTIDAD = c.CANTIDAD + ? "
+            + "WHEN NOT MATCHED THEN INSERT (ID_USUARIO, ID_PRODUCTO, CANTIDAD, FECHA_AGREGADO) "
+            + "VALUES (s.ID_USUARIO, s.ID_PRODUCTO, ?, CURRENT_TIMESTAMP)";
+
+    // Solo datos del producto; los descuentos salen de la tabla de precios
+    private static final String SQL_VISTA_PRODUCTOS = "SELECT ID_PRODUCTO, NOMBRE, PRECIO, STOCK "
+            + "FROM PRODUCTOS WHERE ID_PRODUCTO IN (:ids)";
+
+    // Oracle no admite más de 1000 expresiones en una lista IN
+    private static final int MAX_PARAMETROS_IN = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Override
+    public List<Linea> findLineasByUsuario(String idUsuario) {
+        List<Linea> lineas = new ArrayList<>();
+        boolean[] usuarioExiste = { false };
+        jdbcTemplate.query(SQL_LINEAS_POR_USUARIO, rs -> {
+            usuarioExiste[0] = true;
+            String idProducto = rs.getString("ID_PRODUCTO");
+            if (idProducto != null) {
+                Timestamp fecha = rs.getTimestamp("FECHA_AGREGADO");
+                lineas.add(new Linea(rs.getLong("ID_CARRITO"), idProducto, rs.getLong("CANTIDAD"),
+                        fecha != null ? fecha.toLocalDateTime() : null));
+            }
+        }, idUsuario);
+        return usuarioExiste[0] ? lineas : null;
+    }
+
+    @Override
+    public int eliminarPorUsuarios(Collection<String> idsUsuarios) {
+        List<String> lista = new ArrayList<>(idsUsuarios);
+        int eliminadas = 0;
+        for (int desde = 0; desde < lista.size(); desde += MAX_PARAMETROS_IN) {
+            List<String> bloque = lista.subList(desde, Math.min(desde + MAX_PARAMETROS_IN, lista.size()));
+            eliminadas += namedParameterJdbcTemplate.update(SQL_ELIMINAR_POR_USUARIOS,
+                    new MapSqlParameterSource("ids", bloque));
+        }
+        return eliminadas;
+    }
+
+    @Override
+    public Set<String> eliminarProducto(String idProducto) {
+        Set<String> usuarios = new HashSet<>();
+        jdbcTemplate.query(SQL_USUARIOS_POR_PRODUCTO, rs -> {
+            String idUsuario = rs.getString("ID_USUARIO");
+            if (idUsuario != null) {
+                usuarios.add(idUsuario);
+            }
+        }, idProducto);
+        jdbcTemplate.update(SQL_ELIMINAR_PRODUCTO, idProducto);
+        return usuarios;
+    }
+
+    @Override
+    public List<String> findUsuariosConCarritoAbandonado(LocalDateTime corte, String despuesDe, int limite) {
+        MapSqlParameterSource parametros = new MapSqlParameterSource()
+                .addValue("corte", Timestamp.valueOf(corte))
+                .addValue("limite", limite);
+        String sql;
+        if (despuesDe != null) {
+            parametros.addValue("despuesDe", despuesDe);
+            sql = String.format(SQL_USUARIOS_ABANDONADOS, "AND ID_USUARIO > :despuesDe");
+        } else {
+            sql = String.format(SQL_USUARIOS_ABANDONADOS, "");
+        }
+        return namedParameterJdbcTemplate.queryForList(sql, parametros, String.class);
+    }
+
+    @Override
+    public int eliminarCarritosAbandonados(Collection<String> idsUsuarios, LocalDateTime corte) {
+        if (idsUsuarios.isEmpty()) {
+            return 0;
+        }
+        return namedParameterJdbcTemplate.update(SQL_ELIMINAR_ABANDONADOS, new MapSqlParameterSource()
+                .addValue("ids", new ArrayList<>(idsUsuarios))
+                .addValue("corte", Timestamp.valueOf(corte)));
+    }
+
+    @Override
+    public int eliminarLineas(Map<String, ? extends Collection<String>> productosPorUsuario) {
+        List<Object[]> parametros = new ArrayList<>();
+        productosPorUsuario.forEach((idUsuario, productos) -> productos
+                .forEach(idProducto -> parametros.add(new Object[] { idUsuario, idProducto })));
+
+        if (parametros.isEmpty()) {
+            return 0;
+        }
+
+        int eliminadas = 0;
+        for (int filas : jdbcTemplate.batchUpdate(SQL_ELIMINAR_LINEA, parametros)) {
+            // SUCCESS_NO_INFO: el driver no informa el conteo, se asume aplicada
+            eliminadas += filas == Statement.SUCCESS_NO_INFO ? 1 : Math.max(filas, 0);
+        }
+        return eliminadas;
+    }
+
+    @Override
+    public int actualizarCantidades(Map<String, ? extends Map<String, Long>> cantidadesPorUsuario) {
+        List<Object[]> parametros = new ArrayList<>();
+        cantidadesPorUsuario.forEach((idUsuario, cantidades) -> cantidades.forEach(
+                (idProducto, cantidad) -> parametros.add(new Object[] { cantidad, idUsuario, idProducto })));
+
+        if (parametros.isEmpty()) {
+            return 0;
+        }
+
+        int actualizadas = 0;
+        for (int filas : jdbcTemplate.batchUpdate(SQL_ACTUALIZAR_CANTIDAD, parametros)) {
+            actualizadas += filas == Statement.SUCCESS_NO_INFO ? 1 : Math.max(filas, 0);
+        }
+        return actualizadas;
+    }
+
+    @Override
+    public void guardarLineas(Map<String, ? extends Collection<Linea>> lineasPorUsuario) {
+        List<Object[]> parametros = new ArrayList<>();
+        lineasPorUsuario.forEach((idUsuario, lineas) -> lineas.forEach(linea -> parametros.add(new Object[] {
+                idUsuario, linea.idProducto(), linea.cantidad(),
+                linea.fechaAgregado() != null ? Timestamp.valueOf(linea.fechaAgregado()) : null })));
+
+        if (!parametros.isEmpty()) {
+            jdbcTemplate.batchUpdate(SQL_GUARDAR_LINEA, parametros);
+        }
+    }
+
+    @Override
+    public boolean incrementar(String idUsuario, String idProducto, long cantidad, long maximo) {
+        try {
+            return ejecutarIncremento(idUsuario, idProducto, cantidad, maximo);
+        } catch (DuplicateKeyException e) {
+            // Otra transacción insertó la misma línea a la vez: ahora existe y se actualiza
+            return ejecutarIncremento(idUsuario, idProducto, cantidad, maximo);
+        }
+    }
+
+    private boolean ejecutarIncremento(String idUsuario, String idProducto, long cantidad, long maximo) {
+        return jdbcTemplate.update(SQL_INCREMENTAR_LINEA, idProducto, idUsuario, cantidad, maximo, cantidad,
+                cantidad) > 0;
+    }
+
+    @Override
+    public Map<String, ProductoVista> findVistaProductos(Collection<String> idsProductos) {
+        Map<String, ProductoVista> vista = new HashMap<>();
+        List<String> lista = new ArrayList<>(idsProductos);
+        for (int desde = 0; desde < lista.size(); desde += MAX_PARAMETROS_IN) {
+            MapSqlParameterSource parametros = new MapSqlParameterSource()
+                    .addValue("ids", lista.subList(desde, Math.min(desde + MAX_PARAMETROS_IN, lista.size())));
+            namedParameterJdbcTemplate.query(SQL_VISTA_PRODUCTOS, parametros, rs -> {
+                String idProducto = rs.getString("ID_PRODUCTO");
+                vista.put(idProducto, new ProductoVista(idProducto, rs.getString("NOMBRE"),
+                        rs.getDouble("PRECIO"), rs.getLong("STOCK")));
+            });
+        }
+        return vista;
+    }
+}
@@ -0,0 +1,144 @@
+package org.minimarket.minimarketbackendspring.daos.impl;
+
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.minimarket.minimarketbackendspring.daos.interfaces.StockDAO;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Implementación de la interfaz StockDAO utilizando JdbcTemplate.
+ *
+ * <p>
+ * Las sentencias se ejecutan sobre la misma conexión de la transacción JPA en
+ * curso, por lo que un rechazo seguido de una excepción revierte también los
+ * descuentos que sí se aplicaron.
+ * </p>
+ */
+@Repository
+public class StockDaoImpl implements StockDAO {
+
+    // Ambas sentencias avanzan VERSION para que una edición del producto que
+    // leyó el stock anterior falle por bloqueo optimista en vez de pisarlo
+    private static final String SQL_DESCONTAR = "UPDATE PRODUCTOS SET STOCK = STOCK - ?, VERSION = VERSION + 1 "
+            + "WHERE ID_PRODUCTO = ? AND STOCK >= ?";
+
+    private static final String SQL_AJUSTAR = "UPDATE PRODUCTOS SET STOCK = STOCK + ?, VERSION = VERSION + 1 "
+            + "WHERE ID_PRODUCTO = ?";
+
+    private static final String SQL_STOCK_POR_IDS = "SELECT ID_PRODUCTO, STOCK FROM PRODUCTOS "
+            + "WHERE ID_PRODUCTO IN (:ids)";
+
+    private static final String SQL_STOCK_TODOS = "SELECT ID_PRODUCTO, STOCK FROM PRODUCTOS";
+
+    private static final String SQL_AGOTADOS = "SELECT ID_PRODUCTO FROM PRODUCTOS "
+            + "WHERE ID_PRODUCTO IN (:ids) AND STOCK <= 0";
+
+    // Oracle no admite más de 1000 expresiones en una lista IN
+    private static final int MAX_PARAMETROS_IN = 1000;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    @Override
+    public List<String> descontarStock(Map<String, Long> cantidadesPorProducto,
+            Map<String, Long> reservadoPorProducto) {
+        List<String> ids = new ArrayList<>(cantidadesPorProducto.keySet());
+        List<Object[]> parametros = new ArrayList<>(ids.size());
+        for (String idProducto : ids) {
+            Long cantidad = cantidadesPorProducto.get(idProducto);
+            long minimo = cantidad + reservadoPorProducto.getOrDefault(idProducto, 0L);
+            parametros.add(new Object[] { cantidad, idProducto, minimo });
+        }
+
+        int[] filasAfectadas = jdbcTemplate.batchUpdate(SQL_DESCONTAR, parametros);
+        return filtrarSinFilasAfectadas(ids, filasAfectadas);
+    }
+
+    @Override
+    public List<String> reponerStock(Map<String, Long> cantidadesPorProducto) {
+        return ajustarStock(cantidadesPorProducto);
+    }
+
+    @Override
+    public List<String> ajustarStock(Map<String, Long> variacionesPorProducto) {
+        List<String> ids = new ArrayList<>(variacionesPorProducto.keySet());
+        List<Object[]> parametros = new ArrayList<>(ids.size());
+        for (String idProducto : ids) {
+            parametros.add(new Object[] { variacionesPorProducto.get(idProducto), idProducto });
+        }
+
+        int[] filasAfectadas = jdbcTemplate.batchUpdate(SQL_AJUSTAR, parametros);
+        return filtrarSinFilasAfectadas(ids, filasAfectadas);
+    }
+
+    @Override
+    public Map<String, Long> findStockByIds(Collection<String> idsProductos) {
+        Map<String, Long> stockPorProducto = new HashMap<>();
+        for (List<String> bloque : dividirEnBloques(idsProductos)) {
+            namedParameterJdbcTemplate.query(SQL_STOCK_POR_IDS, new MapSqlParameterSource("ids", bloque),
+                    rs -> {
+                        stockPorProducto.put(rs.getString("ID_PRODUCTO"), rs.getLong("STOCK"));
+                    });
+        }
+        return stockPorProducto;
+    }
+
+    @Override
+    public Map<String, Long> findAllStock() {
+        Map<String, Long> stockPorProducto = new HashMap<>();
+        jdbcTemplate.query(SQL_STOCK_TODOS, rs -> {
+            stockPorProducto.put(rs.getString("ID_PRODUCTO"), rs.getLong("STOCK"));
+        });
+        return stockPorProducto;
+    }
+
+    @Override
+    public List<String> findProductosAgotados(Collection<String> idsProductos) {
+        List<String> agotados = new ArrayList<>();
+        for (List<String> bloque : dividirEnBloques(idsProductos)) {
+            agotados.addAll(namedParameterJdbcTemplate.queryForList(SQL_AGOTADOS,
+                    new MapSqlParameterSource("ids", bloque), String.class));
+        }
+        return agotados;
+    }
+
+    /**
+     * Devuelve los ids cuya sentencia del lote no afectó ninguna fila.
+     * El driver de Oracle (12c+) informa el conteo real por sentencia; si un
+     * driver solo informa SUCCESS_NO_INFO se considera aplicada.
+     */
+    private List<String> filtrarSinFilasAfectadas(List<String> ids, int[] filasAfectadas) {
+        List<String> rechazados = new ArrayList<>();
+        for (int i = 0; i < filasAfectadas.length; i++) {
+            int filas = filasAfectadas[i];
+            if (filas == 0 || (filas < 0 && filas != Statement.SUCCESS_NO_INFO)) {
+                rechazados.add(ids.get(i));
+            }
+        }
+        return rechazados;
+    }
+
+    /**
+     * Divide los ids en bloques que respetan el límite de la lista IN.
+     */
+    private List<List<String>> dividirEnBloques(Collection<String> ids) {
+        List<String> lista = new ArrayList<>(ids);
+        List<List<String>> bloques = new ArrayList<>();
+        for (int desde = 0; desde < lista.size(); desde += MAX_PARAMETROS_IN) {
+            bloques.add(lista.subList(desde, Math.min(desde + MAX_PARAMETROS_IN, lista.size())));
+        }
+        return bloques;
+    }
+}
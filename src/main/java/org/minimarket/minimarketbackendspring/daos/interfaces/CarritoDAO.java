@@ -0,0 +1,136 @@
+package org.minimarket.minimarketbackendspring.daos.interfaces;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Interfaz para el acceso a datos de CARRITO_TEMPORAL mediante sentencias SQL
+ * por lotes.
+ *
+ * <p><strong>IMPORTANTE:</strong> Este DAO no valida stock ni existencia de
+ * productos; lo usa el almacén de carritos, que recibe las líneas ya validadas
+ * por CarritoTemporalService.</p>
+ */
+public interface CarritoDAO {
+
+    /**
+     * Línea de carrito reducida a lo que se persiste.
+     *
+     * @param idCarrito     ID de la fila (null si aún no se ha insertado)
+     * @param idProducto    ID del producto
+     * @param cantidad      cantidad en el carrito
+     * @param fechaAgregado fecha en que se agregó el producto
+     */
+    record Linea(Long idCarrito, String idProducto, long cantidad, LocalDateTime fechaAgregado) {
+    }
+
+    /**
+     * Datos de un producto que muestra la vista del carrito.
+     *
+     * @param idProducto ID del producto
+     * @param nombre     nombre del producto
+     * @param precio     precio de lista
+     * @param stock      stock registrado en PRODUCTOS
+     */
+    record ProductoVista(String idProducto, String nombre, Double precio, Long stock) {
+    }
+
+    /**
+     * Obtiene las líneas del carrito de un usuario, validando en la misma
+     * consulta que el usuario existe.
+     *
+     * @param idUsuario ID del usuario
+     * @return líneas en orden de inserción, o null si el usuario no existe
+     */
+    List<Linea> findLineasByUsuario(String idUsuario);
+
+    /**
+     * Elimina todas las líneas de los usuarios indicados.
+     *
+     * @param idsUsuarios ids de los usuarios
+     * @return filas eliminadas
+     */
+    int eliminarPorUsuarios(Collection<String> idsUsuarios);
+
+    /**
+     * Elimina un producto de todos los carritos con un solo DELETE. Las filas
+     * se bloquean antes para devolver exactamente los usuarios afectados.
+     * Requiere una transacción activa.
+     *
+     * @param idProducto ID del producto
+     * @return ids de los usuarios que tenían el producto
+     */
+    Set<String> eliminarProducto(String idProducto);
+
+    /**
+     * Obtiene un bloque de usuarios cuyo carrito está abandonado (su línea más
+     * reciente es anterior al corte), ordenados por ID para paginar por clave.
+     *
+     * @param corte        fecha límite de la última línea agregada
+     * @param despuesDe    último ID del bloque anterior (null para el primero)
+     * @param limite       tamaño máximo del bloque
+     * @return ids de usuarios en orden ascendente
+     */
+    List<String> findUsuariosConCarritoAbandonado(LocalDateTime corte, String despuesDe, int limite);
+
+    /**
+     * Elimina los carritos de los usuarios indicados que siguen abandonados; la
+     * condición se vuelve a evaluar en el mismo DELETE.
+     *
+     * @param idsUsuarios ids de usuarios candidatos (máximo 1000)
+     * @param corte       fecha límite de la última línea agregada
+     * @return filas eliminadas
+     */
+    int eliminarCarritosAbandonados(Collection<String> idsUsuarios, LocalDateTime corte);
+
+    /**
+     * Elimina líneas puntuales en un solo lote JDBC.
+     *
+     * @param productosPorUsuario idUsuario -> ids de productos a quitar
+     * @return filas eliminadas
+     */
+    int eliminarLineas(Map<String, ? extends Collection<String>> productosPorUsuario);
+
+    /**
+     * Cambia la cantidad de líneas existentes en un solo lote JDBC. Las líneas
+     * que ya no existen no se vuelven a crear.
+     *
+     * @param cantidadesPorUsuario idUsuario -> (idProducto -> nueva cantidad)
+     * @return filas actualizadas
+     */
+    int actualizarCantidades(Map<String, ? extends Map<String, Long>> cantidadesPorUsuario);
+
+    /**
+     * Guarda líneas en un solo lote de MERGE: actualiza la cantidad de las que
+     * ya existen e inserta las que no.
+     *
+     * @param lineasPorUsuario idUsuario -> líneas a guardar
+     */
+    void guardarLineas(Map<String, ? extends Collection<Linea>> lineasPorUsuario);
+
+    /**
+     * Suma una cantidad a la línea de un producto (insertándola si no existe)
+     * con un solo MERGE que valida en la misma sentencia que el resultado no
+     * supere el máximo.
+     *
+     * @param idUsuario  ID del usuario
+     * @param idProducto ID del producto
+     * @param cantidad   cantidad a sumar
+     * @param maximo     cantidad máxima que puede quedar en la línea
+     * @return true si se escribió; false si el usuario o el producto no existen
+     *         o se superaría el máximo
+     */
+    boolean incrementar(String idUsuario, String idProducto, long cantidad, long maximo);
+
+    /**
+     * Obtiene nombre, precio y stock de los productos de un carrito en una sola
+     * consulta. Los descuentos salen de la tabla de precios.
+     *
+     * @param idsProductos ids de los productos del carrito
+     * @return idProducto -> datos del producto (los que no existen se omiten)
+     */
+    Map<String, ProductoVista> findVistaProductos(Collection<String> idsProductos);
+}
@@ -0,0 +1,74 @@
+package org.minimarket.minimarketbackendspring.daos.interfaces;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interfaz para el acceso a datos del stock de productos mediante sentencias
+ * SQL por lotes.
+ *
+ * <p><strong>IMPORTANTE:</strong> Este DAO solo ejecuta sentencias sobre la tabla
+ * PRODUCTOS. La decisión de qué descontar o reponer, y qué hacer ante un rechazo,
+ * pertenece a la capa de servicios.</p>
+ */
+public interface StockDAO {
+
+    /**
+     * Descuenta stock de varios productos con actualizaciones condicionales
+     * ({@code STOCK = STOCK - ? ... AND STOCK >= ?}) enviadas en un solo lote JDBC.
+     * La condición exige además que queden las unidades reservadas por otros
+     * pedidos.
+     *
+     * @param cantidadesPorProducto idProducto -> cantidad a descontar
+     * @param reservadoPorProducto  idProducto -> unidades reservadas que deben
+     *                              quedar (los productos ausentes no tienen
+     *                              reservas)
+     * @return ids de los productos cuya actualización fue rechazada por stock
+     *         insuficiente o inexistencia (lista vacía si todo se aplicó)
+     */
+    List<String> descontarStock(Map<String, Long> cantidadesPorProducto, Map<String, Long> reservadoPorProducto);
+
+    /**
+     * Repone stock de varios productos en un solo lote JDBC.
+     *
+     * @param cantidadesPorProducto idProducto -> cantidad a devolver
+     * @return ids de los productos que no existen en PRODUCTOS
+     */
+    List<String> reponerStock(Map<String, Long> cantidadesPorProducto);
+
+    /**
+     * Aplica variaciones de stock (positivas o negativas) sin condición, en un
+     * solo lote JDBC. Lo usa el ledger en memoria, que ya validó la
+     * disponibilidad antes de acumular la variación.
+     *
+     * @param variacionesPorProducto idProducto -> unidades a sumar (negativo
+     *                               para restar)
+     * @return ids de los productos que no existen en PRODUCTOS
+     */
+    List<String> ajustarStock(Map<String, Long> variacionesPorProducto);
+
+    /**
+     * Obtiene el stock actual de varios productos con una sola consulta IN.
+     *
+     * @param idsProductos ids de los productos
+     * @return idProducto -> stock (los productos inexistentes no aparecen)
+     */
+    Map<String, Long> findStockByIds(Collection<String> idsProductos);
+
+    /**
+     * Obtiene el stock de todos los productos, leyendo solo las columnas
+     * necesarias.
+     *
+     * @return idProducto -> stock
+     */
+    Map<String, Long> findAllStock();
+
+    /**
+     * Filtra, de los productos indicados, los que quedaron sin stock.
+     *
+     * @param idsProductos ids de los productos a revisar
+     * @return ids de los productos con stock menor o igual a cero
+     */
+    List<String> findProductosAgotados(Collection<String> idsProductos);
+}
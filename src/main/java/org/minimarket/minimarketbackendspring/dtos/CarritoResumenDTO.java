@@ -0,0 +1,58 @@
+package org.minimarket.minimarketbackendspring.dtos;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Carrito de un usuario con sus totales, devuelto tras editarlo por lotes.
+ */
+public class CarritoResumenDTO implements Serializable {
+    private String idUsuario;
+    private List<CarritoTemporalDto> items;
+    private BigDecimal total;
+    private BigDecimal totalConDescuentos;
+
+    public CarritoResumenDTO() {
+    }
+
+    public CarritoResumenDTO(String idUsuario, List<CarritoTemporalDto> items, BigDecimal total,
+            BigDecimal totalConDescuentos) {
+        this.idUsuario = idUsuario;
+        this.items = items;
+        this.total = total;
+        this.totalConDescuentos = totalConDescuentos;
+    }
+
+    public String getIdUsuario() {
+        return idUsuario;
+    }
+
+    public void setIdUsuario(String idUsuario) {
+        this.idUsuario = idUsuario;
+    }
+
+    public List<CarritoTemporalDto> getItems() {
+        return items;
+    }
+
+    public void setItems(List<CarritoTemporalDto> items) {
+        this.items = items;
+    }
+
+    public BigDecimal getTotal() {
+        return total;
+    }
+
+    public void setTotal(BigDecimal total) {
+        this.total = total;
+    }
+
+    public BigDecimal getTotalConDescuentos() {
+        return totalConDescuentos;
+    }
+
+    public void setTotalConDescuentos(BigDecimal totalConDescuentos) {
+        this.totalConDescuentos = totalConDescuentos;
+    }
+}
@@ -8,9 +8,19 @@ import java.time.LocalDate;
  * DTO for {@link org.minimarket.minimarketbackendspring.entities.DescuentoPromocion}
  */
 public class DescuentoPromocionDTO implements Serializable {
+
+    // Alcances de una promoción
+    public static final String ALCANCE_PRODUCTO = "PRODUCTO";
+    public static final String ALCANCE_CATEGORIA = "CATEGORIA";
+    public static final String ALCANCE_PROVEEDOR = "PROVEEDOR";
+    public static final String ALCANCE_CATALOGO = "CATALOGO";
+
     private Long id;
     private String idProductoIdProducto;
     private String idProductoNombre;
+    private Long idCategoriaId;
+    private Long idProveedorId;
+    private String alcance;
     private String descripcion;
     private BigDecimal porcentaje;
     private LocalDate fechaInicio;
@@ -55,6 +65,30 @@ public class DescuentoPromocionDTO implements Serializable {
         this.idProductoNombre = idProductoNombre;
     }
 
+    public Long getIdCategoriaId() {
+        return idCategoriaId;
+    }
+
+    public void setIdCategoriaId(Long idCategoriaId) {
+        this.idCategoriaId = idCategoriaId;
+    }
+
+    public Long getIdProveedorId() {
+        return idProveedorId;
+    }
+
+    public void setIdProveedorId(Long idProveedorId) {
+        this.idProveedorId = idProveedorId;
+    }
+
+    public String getAlcance() {
+        return alcance;
+    }
+
+    public void setAlcance(String alcance) {
+        this.alcance = alcance;
+    }
+
     public String getDescripcion() {
         return descripcion;
     }
@@ -101,6 +135,9 @@ public class DescuentoPromocionDTO implements Serializable {
                 "id = " + id + ", " +
                 "idProductoIdProducto = " + idProductoIdProducto + ", " +
                 "idProductoNombre = " + idProductoNombre + ", " +
+                "idCategoriaId = " + idCategoriaId + ", " +
+                "idProveedorId = " + idProveedorId + ", " +
+                "alcance = " + alcance + ", " +
                 "descripcion = " + descripcion + ", " +
                 "porcentaje = " + porcentaje + ", " +
                 "fechaInicio = " + fechaInicio + ", " +
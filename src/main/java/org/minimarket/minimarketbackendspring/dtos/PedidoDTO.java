@@ -22,6 +22,9 @@ public class PedidoDTO implements Serializable {
     private OffsetDateTime updatedAt;
     private Long comprobanteId;
 
+    public PedidoDTO() {
+    }
+
     public PedidoDTO(Long id, String idUsuarioIdUsuario, String idUsuarioNombre, String idUsuarioApellido, OffsetDateTime fechaPedido, String estado, String metodoPago, BigDecimal total, BigDecimal descuentoAplicado, BigDecimal impuesto, OffsetDateTime createdAt, OffsetDateTime updatedAt, Long comprobanteId) {
         this.id = id;
         this.idUsuarioIdUsuario = idUsuarioIdUsuario;
@@ -0,0 +1,88 @@
+package org.minimarket.minimarketbackendspring.dtos;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+
+/**
+ * Precio de un producto con el mejor descuento vigente aplicado. Sin descuento,
+ * el descuento va en null y el precio final es el original.
+ */
+public class PrecioEfectivoDTO implements Serializable {
+    private String idProducto;
+    private Long cantidad;
+    private BigDecimal precioOriginal;
+    private Long idDescuento;
+    private BigDecimal porcentajeDescuento;
+    private BigDecimal precioFinal;
+    private BigDecimal ahorro;
+
+    public PrecioEfectivoDTO() {
+    }
+
+    public PrecioEfectivoDTO(String idProducto, Long cantidad, BigDecimal precioOriginal, Long idDescuento,
+            BigDecimal porcentajeDescuento, BigDecimal precioFinal, BigDecimal ahorro) {
+        this.idProducto = idProducto;
+        this.cantidad = cantidad;
+        this.precioOriginal = precioOriginal;
+        this.idDescuento = idDescuento;
+        this.porcentajeDescuento = porcentajeDescuento;
+        this.precioFinal = precioFinal;
+        this.ahorro = ahorro;
+    }
+
+    public String getIdProducto() {
+        return idProducto;
+    }
+
+    public void setIdProducto(String idProducto) {
+        this.idProducto = idProducto;
+    }
+
+    public Long getCantidad() {
+        return cantidad;
+    }
+
+    public void setCantidad(Long cantidad) {
+        this.cantidad = cantidad;
+    }
+
+    public BigDecimal getPrecioOriginal() {
+        return precioOriginal;
+    }
+
+    public void setPrecioOriginal(BigDecimal precioOriginal) {
+        this.precioOriginal = precioOriginal;
+    }
+
+    public Long getIdDescuento() {
+        return idDescuento;
+    }
+
+    public void setIdDescuento(Long idDescuento) {
+        this.idDescuento = idDescuento;
+    }
+
+    public BigDecimal getPorcentajeDescuento() {
+        return porcentajeDescuento;
+    }
+
+    public void setPorcentajeDescuento(BigDecimal porcentajeDescuento) {
+        this.porcentajeDescuento = porcentajeDescuento;
+    }
+
+    public BigDecimal getPrecioFinal() {
+        return precioFinal;
+    }
+
+    public void setPrecioFinal(BigDecimal precioFinal) {
+        this.precioFinal = precioFinal;
+    }
+
+    public BigDecimal getAhorro() {
+        return ahorro;
+    }
+
+    public void setAhorro(BigDecimal ahorro) {
+        this.ahorro = ahorro;
+    }
+}
@@ -1,5 +1,7 @@
 package org.minimarket.minimarketbackendspring.dtos;
 
+import java.math.BigDecimal;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
@@ -27,6 +29,12 @@ public class ProductoDTO {
     //@JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private Long idProveedor;      // <--- ID para inserción
 
+    // Precio con la promoción vigente, tomado de la tabla de precios
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private BigDecimal precioConDescuento;
+    @JsonProperty(access = JsonProperty.Access.READ_ONLY)
+    private BigDecimal porcentajeDescuento;
+
     // Constructor vacío
     public ProductoDTO() {
     }
@@ -172,4 +180,20 @@ public class ProductoDTO {
     public void setIdProveedor(Long idProveedor) {
         this.idProveedor = idProveedor;
     }
+
+    public BigDecimal getPrecioConDescuento() {
+        return precioConDescuento;
+    }
+
+    public void setPrecioConDescuento(BigDecimal precioConDescuento) {
+        this.precioConDescuento = precioConDescuento;
+    }
+
+    public BigDecimal getPorcentajeDescuento() {
+        return porcentajeDescuento;
+    }
+
+    public void setPorcentajeDescuento(BigDecimal porcentajeDescuento) {
+        this.porcentajeDescuento = porcentajeDescuento;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,51 @@
+package org.minimarket.minimarketbackendspring.dtos.requests;
+
+/**
+ * Operación sobre una línea del carrito dentro de una edición por lotes.
+ *
+ * Tipos admitidos: {@code agregar} (suma la cantidad), {@code fijar} (establece
+ * la cantidad de un producto que ya está en el carrito) y {@code eliminar}.
+ */
+public class CarritoOperacionDTO {
+
+    public static final String AGREGAR = "agregar";
+    public static final String FIJAR = "fijar";
+    public static final String ELIMINAR = "eliminar";
+
+    private String tipo;
+    private String idProducto;
+    private Long cantidad;
+
+    public CarritoOperacionDTO() {
+    }
+
+    public CarritoOperacionDTO(String tipo, String idProducto, Long cantidad) {
+        this.tipo = tipo;
+        this.idProducto = idProducto;
+        this.cantidad = cantidad;
+    }
+
+    public String getTipo() {
+        return tipo;
+    }
+
+    public void setTipo(String tipo) {
+        this.tipo = tipo;
+    }
+
+    public String getIdProducto() {
+        return idProducto;
+    }
+
+    public void setIdProducto(String idProducto) {
+        this.idProducto = idProducto;
+    }
+
+    public Long getCantidad() {
+        return cantidad;
+    }
+
+    public void setCantidad(Long cantidad) {
+        this.cantidad = cantidad;
+    }
+}
@@ -0,0 +1,35 @@
+package org.minimarket.minimarketbackendspring.dtos.requests;
+
+/**
+ * Producto cuyo precio efectivo se consulta por lotes. La cantidad es
+ * opcional (por defecto 1) y solo afecta al ahorro calculado.
+ */
+public class PrecioConsultaDTO {
+
+    private String idProducto;
+    private Long cantidad;
+
+    public PrecioConsultaDTO() {
+    }
+
+    public PrecioConsultaDTO(String idProducto, Long cantidad) {
+        this.idProducto = idProducto;
+        this.cantidad = cantidad;
+    }
+
+    public String getIdProducto() {
+        return idProducto;
+    }
+
+    public void setIdProducto(String idProducto) {
+        this.idProducto = idProducto;
+    }
+
+    public Long getCantidad() {
+        return cantidad;
+    }
+
+    public void setCantidad(Long cantidad) {
+        this.cantidad = cantidad;
+    }
+}
@@ -9,7 +9,8 @@ import java.time.Instant;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "CARRITO_TEMPORAL")
+@Table(name = "CARRITO_TEMPORAL", uniqueConstraints = @UniqueConstraint(name = "UQ_CARRITO_USUARIO_PRODUCTO",
+        columnNames = { "ID_USUARIO", "ID_PRODUCTO" }))
 public class CarritoTemporal {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -17,7 +18,7 @@ public class CarritoTemporal {
     private Long id;
 
     @ManyToOne(fetch = FetchType.LAZY)
-    @OnDelete(action = OnDeleteAction.SET_NULL)
+    @OnDelete(action = OnDeleteAction.CASCADE)
     @JoinColumn(name = "ID_USUARIO")
     private Usuario idUsuario;
 
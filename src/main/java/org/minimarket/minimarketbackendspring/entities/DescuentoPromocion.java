@@ -18,11 +18,21 @@ public class DescuentoPromocion {
     @Column(name = "ID_DESCUENTO", nullable = false)
     private Long id;
 
-    @ManyToOne(fetch = FetchType.LAZY, optional = false)
+    // Alcance de la promoción: a lo sumo uno de producto, categoría o proveedor;
+    // sin ninguno aplica a todo el catálogo
+    @ManyToOne(fetch = FetchType.LAZY)
     @OnDelete(action = OnDeleteAction.RESTRICT)
-    @JoinColumn(name = "ID_PRODUCTO", nullable = false)
+    @JoinColumn(name = "ID_PRODUCTO")
     private Producto idProducto;
 
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "ID_CATEGORIA")
+    private Categoria idCategoria;
+
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "ID_PROVEEDOR")
+    private Proveedor idProveedor;
+
     @Column(name = "DESCRIPCION", length = 100)
     private String descripcion;
 
@@ -58,6 +68,22 @@ public class DescuentoPromocion {
         this.idProducto = idProducto;
     }
 
+    public Categoria getIdCategoria() {
+        return idCategoria;
+    }
+
+    public void setIdCategoria(Categoria idCategoria) {
+        this.idCategoria = idCategoria;
+    }
+
+    public Proveedor getIdProveedor() {
+        return idProveedor;
+    }
+
+    public void setIdProveedor(Proveedor idProveedor) {
+        this.idProveedor = idProveedor;
+    }
+
     public String getDescripcion() {
         return descripcion;
     }
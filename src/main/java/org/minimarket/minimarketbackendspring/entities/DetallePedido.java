@@ -1,6 +1,7 @@
 package org.minimarket.minimarketbackendspring.entities;
 
 import jakarta.persistence.*;
+import org.hibernate.annotations.ColumnDefault;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
 
@@ -10,7 +11,9 @@ import java.math.BigDecimal;
 @Table(name = "DETALLE_PEDIDO")
 public class DetallePedido {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Secuencia con asignación por bloques: permite insertar en lotes JDBC
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "seq_detalle_pedido")
+    @SequenceGenerator(name = "seq_detalle_pedido", sequenceName = "SEQ_DETALLE_PEDIDO", allocationSize = 50)
     @Column(name = "ID_DETALLE", nullable = false)
     private Long id;
 
@@ -33,6 +36,12 @@ public class DetallePedido {
     @Column(name = "SUBTOTAL", precision = 10, scale = 2)
     private BigDecimal subtotal;
 
+    // Control de concurrencia optimista: un UPDATE con versión vieja no afecta filas
+    @ColumnDefault("0")
+    @Version
+    @Column(name = "VERSION", nullable = false)
+    private Long version;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @OnDelete(action = OnDeleteAction.SET_NULL)
     @JoinColumn(name = "ID_DESCUENTO")
@@ -94,4 +103,12 @@ public class DetallePedido {
         this.idDescuento = idDescuento;
     }
 
-}
\ No newline at end of file
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+}
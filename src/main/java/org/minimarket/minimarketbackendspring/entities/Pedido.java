@@ -14,7 +14,9 @@ import java.util.Set;
 @Table(name = "PEDIDO")
 public class Pedido {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Secuencia con asignación por bloques: permite insertar en lotes JDBC
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "seq_pedido")
+    @SequenceGenerator(name = "seq_pedido", sequenceName = "SEQ_PEDIDO", allocationSize = 50)
     @Column(name = "ID_PEDIDO", nullable = false)
     private Long id;
 
@@ -47,6 +49,12 @@ public class Pedido {
     @Column(name = "IMPUESTO", precision = 10, scale = 2)
     private BigDecimal impuesto;
 
+    // Control de concurrencia optimista: un UPDATE con versión vieja no afecta filas
+    @ColumnDefault("0")
+    @Version
+    @Column(name = "VERSION", nullable = false)
+    private Long version;
+
     @ManyToOne(fetch = FetchType.LAZY)
     @OnDelete(action = OnDeleteAction.SET_NULL)
     @JoinColumn(name = "CREATED_BY")
@@ -183,4 +191,12 @@ public class Pedido {
         this.detallePedidos = detallePedidos;
     }
 
-}
\ No newline at end of file
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
+}
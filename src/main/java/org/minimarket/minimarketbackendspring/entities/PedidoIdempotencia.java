@@ -0,0 +1,130 @@
+package org.minimarket.minimarketbackendspring.entities;
+
+import jakarta.persistence.*;
+import org.springframework.data.domain.Persistable;
+
+import java.time.OffsetDateTime;
+
+/**
+ * Registro de una solicitud de creación de pedido identificada por su
+ * {@code Idempotency-Key}.
+ *
+ * La clave se inserta antes de procesar la solicitud (la primera escritura
+ * gana) y la respuesta se guarda en la misma transacción que crea el pedido.
+ * El propietario identifica el intento que tiene la clave reclamada; si el
+ * reclamo vence sin respuesta, otro intento puede tomarlo.
+ */
+@Entity
+@Table(name = "PEDIDO_IDEMPOTENCIA")
+public class PedidoIdempotencia implements Persistable<String> {
+    @Id
+    @Column(name = "CLAVE", nullable = false, length = 100)
+    private String clave;
+
+    @Column(name = "ID_USUARIO", nullable = false, length = 36)
+    private String idUsuario;
+
+    @Column(name = "ID_PEDIDO")
+    private Long idPedido;
+
+    @Lob
+    @Column(name = "RESPUESTA")
+    private String respuesta;
+
+    @Column(name = "CREATED_AT", nullable = false)
+    private OffsetDateTime createdAt;
+
+    @Column(name = "PROPIETARIO", nullable = false, length = 36)
+    private String propietario;
+
+    @Column(name = "RECLAMADA_AT", nullable = false)
+    private OffsetDateTime reclamadaAt;
+
+    // Fuerza un INSERT al guardar: una clave repetida debe fallar, no actualizarse
+    @Transient
+    private boolean nuevo = true;
+
+    public PedidoIdempotencia() {
+    }
+
+    public PedidoIdempotencia(String clave, String idUsuario, String propietario, OffsetDateTime createdAt) {
+        this.clave = clave;
+        this.idUsuario = idUsuario;
+        this.propietario = propietario;
+        this.createdAt = createdAt;
+        this.reclamadaAt = createdAt;
+    }
+
+    @Override
+    public String getId() {
+        return clave;
+    }
+
+    @Override
+    public boolean isNew() {
+        return nuevo;
+    }
+
+    @PostLoad
+    @PostPersist
+    void marcarPersistido() {
+        this.nuevo = false;
+    }
+
+    public String getClave() {
+        return clave;
+    }
+
+    public void setClave(String clave) {
+        this.clave = clave;
+    }
+
+    public String getIdUsuario() {
+        return idUsuario;
+    }
+
+    public void setIdUsuario(String idUsuario) {
+        this.idUsuario = idUsuario;
+    }
+
+    public Long getIdPedido() {
+        return idPedido;
+    }
+
+    public void setIdPedido(Long idPedido) {
+        this.idPedido = idPedido;
+    }
+
+    public String getRespuesta() {
+        return respuesta;
+    }
+
+    public void setRespuesta(String respuesta) {
+        this.respuesta = respuesta;
+    }
+
+    public OffsetDateTime getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(OffsetDateTime createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public String getPropietario() {
+        return propietario;
+    }
+
+    public void setPropietario(String propietario) {
+        this.propietario = propietario;
+    }
+
+    public OffsetDateTime getReclamadaAt() {
+        return reclamadaAt;
+    }
+
+    public void setReclamadaAt(OffsetDateTime reclamadaAt) {
+        this.reclamadaAt = reclamadaAt;
+    }
+
+}
@@ -14,6 +14,7 @@ import jakarta.persistence.Lob;
 import jakarta.persistence.ManyToOne;
 
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 
 @Entity
 @Table(name = "PRODUCTOS")
@@ -41,6 +42,12 @@ public class Producto {
     @Column(name = "STOCK", nullable = false)
     private Long stock;
 
+    // Control de concurrencia optimista: un UPDATE con versión vieja no afecta filas
+    @ColumnDefault("0")
+    @Version
+    @Column(name = "VERSION", nullable = false)
+    private Long version;
+
     @Column(name = "FOTO", length = 100)
     private String foto;
     
@@ -182,4 +189,12 @@ public class Producto {
         this.updateBy = updateBy;
     }
 
+    public Long getVersion() {
+        return version;
+    }
+
+    public void setVersion(Long version) {
+        this.version = version;
+    }
+
 }
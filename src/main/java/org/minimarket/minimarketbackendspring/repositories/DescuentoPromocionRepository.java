@@ -6,6 +6,8 @@ import java.util.List;
 
 import org.minimarket.minimarketbackendspring.entities.DescuentoPromocion;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -40,6 +42,11 @@ public interface DescuentoPromocionRepository extends JpaRepository<DescuentoPro
     // El mejor descuento (mayor porcentaje)
     List<DescuentoPromocion> findByIdProducto_IdProductoAndEstadoAndFechaInicioLessThanEqualAndFechaFinGreaterThanEqualOrderByPorcentajeDesc(String idProducto, String estado, LocalDate fechaActual1, LocalDate fechaActual2);
     
+    // Descuentos de un estado con su alcance, para compilar el índice en memoria
+    @Query("SELECT d FROM DescuentoPromocion d LEFT JOIN FETCH d.idProducto LEFT JOIN FETCH d.idCategoria "
+            + "LEFT JOIN FETCH d.idProveedor WHERE d.estado = :estado")
+    List<DescuentoPromocion> findByEstadoConAlcance(@Param("estado") String estado);
+    
     // Contadores y verificaciones
     Long countByIdProducto_IdProducto(String idProducto);
     Long countByEstado(String estado);
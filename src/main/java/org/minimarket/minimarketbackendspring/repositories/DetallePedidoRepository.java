@@ -5,6 +5,8 @@ import java.util.List;
 
 import org.minimarket.minimarketbackendspring.entities.DetallePedido;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 @Repository
@@ -31,6 +33,10 @@ public interface DetallePedidoRepository extends JpaRepository<DetallePedido, Lo
     // Buscar detalles con subtotal mayor a un valor
     List<DetallePedido> findBySubtotalGreaterThan(BigDecimal subtotal);
     
+    // Sumar subtotales del pedido en la base de datos (0 si no tiene detalles)
+    @Query("SELECT COALESCE(SUM(d.subtotal), 0) FROM DetallePedido d WHERE d.idPedido.id = :idPedido")
+    BigDecimal sumSubtotalByPedidoId(@Param("idPedido") Long idPedido);
+    
     // Contar detalles por pedido
     Long countByIdPedido_Id(Long idPedido);
     
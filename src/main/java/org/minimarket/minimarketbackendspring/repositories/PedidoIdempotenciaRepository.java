@@ -0,0 +1,39 @@
+package org.minimarket.minimarketbackendspring.repositories;
+
+import java.time.OffsetDateTime;
+
+import org.minimarket.minimarketbackendspring.entities.PedidoIdempotencia;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface PedidoIdempotenciaRepository extends JpaRepository<PedidoIdempotencia, String> {
+
+    // Elimina las claves vencidas en una sola sentencia
+    @Modifying
+    @Query("DELETE FROM PedidoIdempotencia p WHERE p.createdAt < :limite")
+    int deleteByCreatedAtBefore(@Param("limite") OffsetDateTime limite);
+
+    // Toma un reclamo sin respuesta que venció; solo un intento puede ganarlo
+    @Modifying
+    @Query("UPDATE PedidoIdempotencia p SET p.propietario = :propietario, p.reclamadaAt = :ahora "
+            + "WHERE p.clave = :clave AND p.idPedido IS NULL AND p.reclamadaAt < :limite")
+    int tomarReclamoVencido(@Param("clave") String clave, @Param("propietario") String propietario,
+            @Param("ahora") OffsetDateTime ahora, @Param("limite") OffsetDateTime limite);
+
+    // Guarda la respuesta solo si el reclamo sigue siendo de este propietario
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE PedidoIdempotencia p SET p.idPedido = :idPedido, p.respuesta = :respuesta "
+            + "WHERE p.clave = :clave AND p.propietario = :propietario")
+    int guardarRespuesta(@Param("clave") String clave, @Param("propietario") String propietario,
+            @Param("idPedido") Long idPedido, @Param("respuesta") String respuesta);
+
+    // Libera un reclamo propio que no llegó a tener respuesta
+    @Modifying
+    @Query("DELETE FROM PedidoIdempotencia p WHERE p.clave = :clave AND p.propietario = :propietario "
+            + "AND p.idPedido IS NULL")
+    int liberar(@Param("clave") String clave, @Param("propietario") String propietario);
+}
@@ -2,14 +2,21 @@ package org.minimarket.minimarketbackendspring.repositories;
 
 import java.math.BigDecimal;
 import java.time.OffsetDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 import org.minimarket.minimarketbackendspring.entities.Pedido;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import jakarta.persistence.LockModeType;
+
 @Repository
 public interface PedidoRepository extends JpaRepository<Pedido, Long> {
     
@@ -39,4 +46,15 @@ public interface PedidoRepository extends JpaRepository<Pedido, Long> {
     Long countByEstado(String estado);
     Long countByIdUsuario_IdUsuario(String idUsuario);
     boolean existsByIdUsuario_IdUsuarioAndEstado(String idUsuario, String estado);
+
+    // IDs de los pedidos del usuario en cualquiera de los estados indicados (usa idx_pedido_usuario_estado)
+    @Query("SELECT p.id FROM Pedido p WHERE p.idUsuario.idUsuario = :idUsuario AND p.estado IN :estados")
+    List<Long> findIdsByUsuarioAndEstadoIn(@Param("idUsuario") String idUsuario,
+            @Param("estados") Collection<String> estados);
+
+    // Carga el pedido e incrementa su versión al confirmar: dos cambios concurrentes
+    // sobre sus líneas chocan en la versión del pedido
+    @Lock(LockModeType.OPTIMISTIC_FORCE_INCREMENT)
+    @Query("SELECT p FROM Pedido p WHERE p.id = :id")
+    Optional<Pedido> findParaModificarLineasById(@Param("id") Long id);
 }
\ No newline at end of file
@@ -1,23 +1,41 @@
 package org.minimarket.minimarketbackendspring.repositories;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 import org.minimarket.minimarketbackendspring.entities.Producto;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 /**
  * Repositorio para manejar operaciones CRUD de la entidad Usuario.
+ *
+ * Los listados traen en la misma consulta la categoría, el proveedor y los
+ * usuarios de auditoría, que se leen al convertir cada producto a DTO.
  */
 public interface ProductoRepository extends JpaRepository<Producto, String> {
 
+    /**
+     * Obtiene todos los productos con su categoría, proveedor y usuarios de
+     * auditoría.
+     *
+     * @return lista de productos
+     */
+    @Override
+    @EntityGraph(attributePaths = { "idCategoria", "idProveedor", "createdBy", "updateBy" })
+    List<Producto> findAll();
+
     /**
      * Encuentra un producto por su nombre
      *
      * @param nombre nombre del producto
      * @return
      */
-    Optional<Producto> findByNombre(String nombre); 
+    @EntityGraph(attributePaths = { "idCategoria", "idProveedor", "createdBy", "updateBy" })
+    Optional<Producto> findByNombre(String nombre);
     
     /**
      * Encuentra todos los productos asociados a una categoría específica.
@@ -25,6 +43,7 @@ public interface ProductoRepository extends JpaRepository<Producto, String> {
      * @param idCategoria el identificador de la categoría
      * @return una lista de productos pertenecientes a la categoría
      */
+    @EntityGraph(attributePaths = { "idCategoria", "idProveedor", "createdBy", "updateBy" })
     List<Producto> findByIdCategoria_Id(Long idCategoria);
 
      /**
@@ -33,6 +52,7 @@ public interface ProductoRepository extends JpaRepository<Producto, String> {
      * @param idProveedor el identificador del proveedor
      * @return una lista de productos pertenecientes al proveedor
      */
+    @EntityGraph(attributePaths = { "idCategoria", "idProveedor", "createdBy", "updateBy" })
     List<Producto> findByIdProveedor_Id(Long idProveedor);
 
     /**
@@ -41,6 +61,27 @@ public interface ProductoRepository extends JpaRepository<Producto, String> {
         * @param stock el valor límite de stock
         * @return lista de productos con stock bajo
     */
+    @EntityGraph(attributePaths = { "idCategoria", "idProveedor", "createdBy", "updateBy" })
     List<Producto> findByStockLessThanEqual(Long stock);
 
+    /**
+     * Obtiene, de todos los productos, los datos que deciden su precio
+     * efectivo: [idProducto, idCategoria, idProveedor, precio].
+     *
+     * @return una fila por producto
+     */
+    @Query("SELECT p.idProducto, c.id, pr.id, p.precio FROM Producto p "
+            + "LEFT JOIN p.idCategoria c LEFT JOIN p.idProveedor pr")
+    List<Object[]> findAlcancesYPrecios();
+
+    /**
+     * Igual que {@link #findAlcancesYPrecios()}, solo para los productos indicados.
+     *
+     * @param idsProductos ids de los productos (como máximo 1000)
+     * @return una fila por producto existente
+     */
+    @Query("SELECT p.idProducto, c.id, pr.id, p.precio FROM Producto p "
+            + "LEFT JOIN p.idCategoria c LEFT JOIN p.idProveedor pr WHERE p.idProducto IN :idsProductos")
+    List<Object[]> findAlcancesYPrecios(@Param("idsProductos") Collection<String> idsProductos);
+
 }
@@ -0,0 +1,128 @@
+package org.minimarket.minimarketbackendspring.services.impl;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO;
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO.Linea;
+import org.minimarket.minimarketbackendspring.services.interfaces.CarritoStoreService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import jakarta.persistence.EntityNotFoundException;
+
+/**
+ * Almacén de carritos que escribe cada operación en CARRITO_TEMPORAL dentro de
+ * la transacción en curso.
+ */
+@Service
+@ConditionalOnProperty(name = "app.carrito.store.tipo", havingValue = "base-datos")
+public class CarritoStoreBaseDatosServiceImpl implements CarritoStoreService {
+
+    @Autowired
+    private CarritoDAO carritoDAO;
+
+    private final AtomicLong secuenciaVersiones = new AtomicLong();
+
+    @Override
+    public List<Linea> obtener(String idUsuario) {
+        return carritoDAO.findLineasByUsuario(idUsuario);
+    }
+
+    /**
+     * La tabla puede cambiar desde otras instancias: cada consulta recibe una
+     * versión nueva y el almacén se declara no versionado. La existencia del
+     * usuario se comprueba al leer las líneas.
+     */
+    @Override
+    public Long version(String idUsuario) {
+        return secuenciaVersiones.incrementAndGet();
+    }
+
+    @Override
+    public boolean versionado() {
+        return false;
+    }
+
+    @Override
+    public void fijar(String idUsuario, String idProducto, long cantidad) {
+        carritoDAO.guardarLineas(Map.of(idUsuario,
+                List.of(new Linea(null, idProducto, cantidad, LocalDateTime.now()))));
+    }
+
+    @Override
+    public Linea agregar(String idUsuario, String idProducto, long cantidad, long maximo) {
+        boolean escrito = carritoDAO.incrementar(idUsuario, idProducto, cantidad, maximo);
+
+        // Solo se relee para armar la respuesta o distinguir el motivo del rechazo
+        List<Linea> lineas = carritoDAO.findLineasByUsuario(idUsuario);
+        if (lineas == null) {
+            throw new EntityNotFoundException("Usuario no encontrado con ID: " + idUsuario);
+        }
+        if (!escrito) {
+            return null;
+        }
+        return lineas.stream()
+                .filter(linea -> linea.idProducto().equals(idProducto))
+                .findFirst()
+                .orElse(null);
+    }
+
+    @Override
+    public boolean quitar(String idUsuario, String idProducto) {
+        return carritoDAO.eliminarLineas(Map.of(idUsuario, Set.of(idProducto))) > 0;
+    }
+
+    /**
+     * Un DELETE por lotes para lo que se quita y un UPDATE por lotes para lo
+     * que se reduce.
+     */
+    @Override
+    public void ajustar(String idUsuario, Collection<String> quitar, Map<String, Long> cantidades) {
+        carritoDAO.eliminarLineas(Map.of(idUsuario, quitar));
+        carritoDAO.actualizarCantidades(Map.of(idUsuario, cantidades));
+    }
+
+    @Override
+    @Transactional
+    public Set<String> quitarProducto(String idProducto) {
+        return carritoDAO.eliminarProducto(idProducto);
+    }
+
+    @Override
+    public void avanzarVersiones(Collection<String> idsProductos) {
+        // No está versionado: no hay nada calculado que invalidar
+    }
+
+    @Override
+    @Transactional
+    public ResultadoPurga purgarAbandonados(LocalDateTime corte, String despuesDe, int limite) {
+        List<String> candidatos = carritoDAO.findUsuariosConCarritoAbandonado(corte, despuesDe, limite);
+        if (candidatos.isEmpty()) {
+            return new ResultadoPurga(null, 0, 0);
+        }
+        int lineas = carritoDAO.eliminarCarritosAbandonados(candidatos, corte);
+        return new ResultadoPurga(candidatos.get(candidatos.size() - 1), candidatos.size(), lineas);
+    }
+
+    @Override
+    public void vaciar(String idUsuario) {
+        carritoDAO.eliminarPorUsuarios(List.of(idUsuario));
+    }
+
+    @Override
+    public int persistirPendientes() {
+        return 0;
+    }
+
+    @Override
+    public void descartar(Collection<String> idsUsuarios) {
+        // No hay copia en memoria que descartar
+    }
+}
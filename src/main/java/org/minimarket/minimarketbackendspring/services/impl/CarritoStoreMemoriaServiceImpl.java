@@ -0,0 +1,682 @@
+package org.minimarket.minimarketbackendspring.services.impl;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO;
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO.Linea;
+import org.minimarket.minimarketbackendspring.services.interfaces.CarritoStoreService;
+import org.minimarket.minimarketbackendspring.utils.DiccionarioOrdinales;
+import org.minimarket.minimarketbackendspring.utils.TransaccionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityNotFoundException;
+
+/**
+ * Almacén de carritos en memoria con escritura diferida.
+ *
+ * Cada carrito se lee de CARRITO_TEMPORAL la primera vez que se usa y desde
+ * entonces las operaciones solo modifican memoria. Cada carrito recuerda qué
+ * productos cambiaron; un proceso programado escribe esos cambios de todos los
+ * carritos en una sola transacción con sentencias por lotes.
+ *
+ * Si la transacción que hizo un cambio se revierte, el cambio se deshace en
+ * memoria. Tras cada escritura se desalojan los carritos sin cambios
+ * pendientes que superan el tiempo de inactividad o el máximo de usuarios.
+ */
+@Service
+@ConditionalOnProperty(name = "app.carrito.store.tipo", havingValue = "memoria", matchIfMissing = true)
+public class CarritoStoreMemoriaServiceImpl implements CarritoStoreService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CarritoStoreMemoriaServiceImpl.class);
+
+    @Autowired
+    private CarritoDAO carritoDAO;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.carrito.store.max-usuarios:100000}")
+    private int maxUsuarios;
+
+    @Value("${app.carrito.store.inactividad-minutos:30}")
+    private long inactividadMinutos;
+
+    private final Map<String, CarritoEnMemoria> carritos = new ConcurrentHashMap<>();
+
+    // Origen de las versiones de todos los carritos: un carrito recargado nunca
+    // repite la versión de uno descartado
+    private final AtomicLong secuenciaVersiones = new AtomicLong();
+
+    // Serializa la escritura de pendientes con el desalojo y el descarte
+    private final Object lockPersistencia = new Object();
+
+    // La escritura no debe depender de la transacción de quien la solicita
+    private TransactionTemplate transaccionNueva;
+
+    private Counter erroresPersistencia;
+
+    // ID de producto <-> ordinal, compartido por todos los carritos
+    private final DiccionarioOrdinales productos = new DiccionarioOrdinales();
+
+    /**
+     * Carrito de un usuario. Se accede siempre sincronizando sobre la instancia.
+     *
+     * Las líneas se guardan en arreglos paralelos de primitivos, en orden de
+     * inserción, con el producto como ordinal del diccionario; los objetos
+     * {@link Linea} solo se crean al leerlas. Los carritos tienen pocas líneas,
+     * por lo que las búsquedas son secuenciales.
+     */
+    private final class CarritoEnMemoria {
+        private int[] ordinales;
+        private long[] cantidades;
+        private long[] ids;
+        private long[] fechas;
+        private int tamanio;
+
+        // Ordinales de los productos cuya fila en la tabla difiere de la memoria
+        private int[] pendientes = new int[0];
+        private int numPendientes;
+
+        // Se vació el carrito: la tabla conserva filas que ya no existen
+        private boolean reemplazar;
+
+        // Ya no está en el mapa; quien lo tenga debe volver a obtenerlo
+        private boolean descartado;
+
+        // Cambia con cada modificación de las líneas
+        private long version;
+
+        private volatile long ultimoAcceso = System.currentTimeMillis();
+
+        private CarritoEnMemoria(List<Linea> iniciales, long version) {
+            int capacidad = Math.max(iniciales.size(), 4);
+            ordinales = new int[capacidad];
+            cantidades = new long[capacidad];
+            ids = new long[capacidad];
+            fechas = new long[capacidad];
+            iniciales.forEach(this::ponerLinea);
+            this.version = version;
+        }
+
+        private boolean sucio() {
+            return reemplazar || numPendientes > 0;
+        }
+
+        private int posicion(int ordinal) {
+            for (int i = 0; i < tamanio; i++) {
+                if (ordinales[i] == ordinal) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private Linea linea(int i) {
+            return new Linea(ids[i] == SIN_VALOR ? null : ids[i], productos.clave(ordinales[i]), cantidades[i],
+                    fechas[i] == SIN_VALOR ? null : aFecha(fechas[i]));
+        }
+
+        private Linea obtenerLinea(String idProducto) {
+            int ordinal = productos.buscar(idProducto);
+            int i = ordinal < 0 ? -1 : posicion(ordinal);
+            return i < 0 ? null : linea(i);
+        }
+
+        private List<Linea> lineas() {
+            List<Linea> lineas = new ArrayList<>(tamanio);
+            for (int i = 0; i < tamanio; i++) {
+                lineas.add(linea(i));
+            }
+            return lineas;
+        }
+
+        private void ponerLinea(Linea linea) {
+            int ordinal = productos.ordinal(linea.idProducto());
+            int i = posicion(ordinal);
+            if (i < 0) {
+                if (tamanio == ordinales.length) {
+                    int capacidad = tamanio * 2;
+                    ordinales = Arrays.copyOf(ordinales, capacidad);
+                    cantidades = Arrays.copyOf(cantidades, capacidad);
+                    ids = Arrays.copyOf(ids, capacidad);
+                    fechas = Arrays.copyOf(fechas, capacidad);
+                }
+                i = tamanio++;
+                ordinales[i] = ordinal;
+            }
+            cantidades[i] = linea.cantidad();
+            ids[i] = linea.idCarrito() != null ? linea.idCarrito() : SIN_VALOR;
+            fechas[i] = linea.fechaAgregado() != null ? aMicros(linea.fechaAgregado()) : SIN_VALOR;
+        }
+
+        private Linea quitarLinea(String idProducto) {
+            int ordinal = productos.buscar(idProducto);
+            int i = ordinal < 0 ? -1 : posicion(ordinal);
+            if (i < 0) {
+                return null;
+            }
+            Linea anterior = linea(i);
+            int siguientes = tamanio - i - 1;
+            System.arraycopy(ordinales, i + 1, ordinales, i, siguientes);
+            System.arraycopy(cantidades, i + 1, cantidades, i, siguientes);
+            System.arraycopy(ids, i + 1, ids, i, siguientes);
+            System.arraycopy(fechas, i + 1, fechas, i, siguientes);
+            tamanio--;
+            return anterior;
+        }
+
+        private void vaciar() {
+            tamanio = 0;
+        }
+
+        private void marcarPendiente(String idProducto) {
+            int ordinal = productos.ordinal(idProducto);
+            for (int i = 0; i < numPendientes; i++) {
+                if (pendientes[i] == ordinal) {
+                    return;
+                }
+            }
+            if (numPendientes == pendientes.length) {
+                pendientes = Arrays.copyOf(pendientes, Math.max(4, numPendientes * 2));
+            }
+            pendientes[numPendientes++] = ordinal;
+        }
+
+        private void desmarcarPendiente(String idProducto) {
+            int ordinal = productos.buscar(idProducto);
+            for (int i = 0; i < numPendientes; i++) {
+                if (pendientes[i] == ordinal) {
+                    pendientes[i] = pendientes[--numPendientes];
+                    return;
+                }
+            }
+        }
+
+        private Set<String> pendientes() {
+            Set<String> idsProductos = new HashSet<>();
+            for (int i = 0; i < numPendientes; i++) {
+                idsProductos.add(productos.clave(pendientes[i]));
+            }
+            return idsProductos;
+        }
+
+        private void limpiarPendientes() {
+            numPendientes = 0;
+            pendientes = new int[0];
+        }
+    }
+
+    // Marca de id o fecha ausentes en los arreglos de un carrito
+    private static final long SIN_VALOR = Long.MIN_VALUE;
+
+    private static long aMicros(LocalDateTime fecha) {
+        Instant instante = fecha.toInstant(ZoneOffset.UTC);
+        return instante.getEpochSecond() * 1_000_000L + instante.getNano() / 1_000;
+    }
+
+    private static LocalDateTime aFecha(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000L),
+                (int) Math.floorMod(micros, 1_000_000L) * 1_000, ZoneOffset.UTC);
+    }
+
+    /**
+     * Cambios de un carrito tomados para escribirse.
+     */
+    private record Cambios(String idUsuario, CarritoEnMemoria carrito, boolean reemplazar,
+            Set<String> pendientes, List<Linea> presentes, Set<String> ausentes) {
+    }
+
+    @PostConstruct
+    public void inicializar() {
+        transaccionNueva = new TransactionTemplate(transactionManager);
+        transaccionNueva.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        meterRegistry.gauge("carrito.store.usuarios", carritos, Map::size);
+        meterRegistry.gauge("carrito.store.pendientes", carritos, mapa -> mapa.values().stream()
+                .filter(carrito -> {
+                    synchronized (carrito) {
+                        return carrito.sucio();
+                    }
+                }).count());
+        erroresPersistencia = meterRegistry.counter("carrito.store.persistencia.errores");
+    }
+
+    @Override
+    public List<Linea> obtener(String idUsuario) {
+        while (true) {
+            CarritoEnMemoria carrito = obtenerCarrito(idUsuario);
+            if (carrito == null) {
+                return null;
+            }
+            synchronized (carrito) {
+                if (!carrito.descartado) {
+                    return carrito.lineas();
+                }
+            }
+        }
+    }
+
+    @Override
+    public Long version(String idUsuario) {
+        while (true) {
+            CarritoEnMemoria carrito = obtenerCarrito(idUsuario);
+            if (carrito == null) {
+                return null;
+            }
+            synchronized (carrito) {
+                if (!carrito.descartado) {
+                    return carrito.version;
+                }
+            }
+        }
+    }
+
+    @Override
+    public void fijar(String idUsuario, String idProducto, long cantidad) {
+        modificar(idUsuario, carrito -> {
+            Linea anterior = carrito.obtenerLinea(idProducto);
+            carrito.ponerLinea(anterior != null
+                    ? new Linea(anterior.idCarrito(), idProducto, cantidad, anterior.fechaAgregado())
+                    : new Linea(null, idProducto, cantidad, LocalDateTime.now()));
+            carrito.marcarPendiente(idProducto);
+            return otro -> restaurarLinea(otro, idProducto, anterior);
+        });
+    }
+
+    @Override
+    public Linea agregar(String idUsuario, String idProducto, long cantidad, long maximo) {
+        Linea[] resultado = { null };
+        modificar(idUsuario, carrito -> {
+            Linea anterior = carrito.obtenerLinea(idProducto);
+            long nuevaCantidad = (anterior != null ? anterior.cantidad() : 0L) + cantidad;
+            if (nuevaCantidad > maximo) {
+                return null;
+            }
+            resultado[0] = anterior != null
+                    ? new Linea(anterior.idCarrito(), idProducto, nuevaCantidad, anterior.fechaAgregado())
+                    : new Linea(null, idProducto, nuevaCantidad, LocalDateTime.now());
+            carrito.ponerLinea(resultado[0]);
+            carrito.marcarPendiente(idProducto);
+            return otro -> restaurarLinea(otro, idProducto, anterior);
+        });
+        return resultado[0];
+    }
+
+    @Override
+    public boolean quitar(String idUsuario, String idProducto) {
+        boolean[] estaba = { false };
+        modificar(idUsuario, carrito -> {
+            Linea anterior = carrito.quitarLinea(idProducto);
+            if (anterior == null) {
+                return null;
+            }
+            estaba[0] = true;
+            carrito.marcarPendiente(idProducto);
+            return otro -> restaurarLinea(otro, idProducto, anterior);
+        });
+        return estaba[0];
+    }
+
+    @Override
+    public void ajustar(String idUsuario, Collection<String> quitar, Map<String, Long> cantidades) {
+        modificar(idUsuario, carrito -> {
+            Map<String, Linea> anteriores = new HashMap<>();
+            for (String idProducto : quitar) {
+                Linea anterior = carrito.quitarLinea(idProducto);
+                if (anterior != null) {
+                    anteriores.put(idProducto, anterior);
+                }
+            }
+            cantidades.forEach((idProducto, cantidad) -> {
+                Linea anterior = carrito.obtenerLinea(idProducto);
+                if (anterior != null) {
+                    carrito.ponerLinea(new Linea(anterior.idCarrito(), idProducto, cantidad, anterior.fechaAgregado()));
+                    anteriores.putIfAbsent(idProducto, anterior);
+                }
+            });
+            if (anteriores.isEmpty()) {
+                return null;
+            }
+            anteriores.keySet().forEach(carrito::marcarPendiente);
+            return otro -> anteriores.forEach((idProducto, linea) -> restaurarLinea(otro, idProducto, linea));
+        });
+    }
+
+    @Override
+    public Set<String> quitarProducto(String idProducto) {
+        synchronized (lockPersistencia) {
+            // Primero la tabla: si falla, la memoria queda intacta
+            Set<String> afectados = new HashSet<>(
+                    transaccionNueva.execute(status -> carritoDAO.eliminarProducto(idProducto)));
+
+            // Las líneas aún no escritas se descartan junto con su cambio pendiente
+            carritos.forEach((idUsuario, carrito) -> {
+                synchronized (carrito) {
+                    if (carrito.quitarLinea(idProducto) != null) {
+                        carrito.version = secuenciaVersiones.incrementAndGet();
+                        afectados.add(idUsuario);
+                    }
+                    carrito.desmarcarPendiente(idProducto);
+                }
+            });
+            return afectados;
+        }
+    }
+
+    @Override
+    public void avanzarVersiones(Collection<String> idsProductos) {
+        Set<Integer> ordinales = new HashSet<>();
+        for (String idProducto : idsProductos) {
+            int ordinal = productos.buscar(idProducto);
+            if (ordinal >= 0) {
+                ordinales.add(ordinal);
+            }
+        }
+        if (ordinales.isEmpty()) {
+            return;
+        }
+
+        // Un carrito que no está en memoria recibe una versión nueva al cargarse
+        carritos.values().forEach(carrito -> {
+            synchronized (carrito) {
+                for (int i = 0; i < carrito.tamanio; i++) {
+                    if (ordinales.contains(carrito.ordinales[i])) {
+                        carrito.version = secuenciaVersiones.incrementAndGet();
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    @Override
+    public ResultadoPurga purgarAbandonados(LocalDateTime corte, String despuesDe, int limite) {
+        synchronized (lockPersistencia) {
+            return transaccionNueva.execute(status -> {
+                List<String> candidatos = carritoDAO.findUsuariosConCarritoAbandonado(corte, despuesDe, limite);
+                if (candidatos.isEmpty()) {
+                    return new ResultadoPurga(null, 0, 0);
+                }
+
+                // Un carrito en memoria se usó hace poco: no está abandonado
+                List<String> abandonados = candidatos.stream()
+                        .filter(idUsuario -> !carritos.containsKey(idUsuario))
+                        .toList();
+                int lineas = carritoDAO.eliminarCarritosAbandonados(abandonados, corte);
+
+                // Si alguno se cargó mientras tanto, su contenido en memoria manda
+                TransaccionUtils.despuesDeCommit(() -> abandonados.forEach(idUsuario -> {
+                    CarritoEnMemoria carrito = carritos.get(idUsuario);
+                    if (carrito != null) {
+                        synchronized (carrito) {
+                            carrito.reemplazar = true;
+                        }
+                    }
+                }));
+                return new ResultadoPurga(candidatos.get(candidatos.size() - 1), abandonados.size(), lineas);
+            });
+        }
+    }
+
+    @Override
+    public void vaciar(String idUsuario) {
+        modificar(idUsuario, carrito -> {
+            if (carrito.tamanio == 0) {
+                return null;
+            }
+            List<Linea> anteriores = carrito.lineas();
+            carrito.vaciar();
+            carrito.limpiarPendientes();
+            carrito.reemplazar = true;
+            return otro -> anteriores.forEach(linea -> {
+                otro.ponerLinea(linea);
+                otro.marcarPendiente(linea.idProducto());
+            });
+        });
+    }
+
+    @Override
+    public int persistirPendientes() {
+        synchronized (lockPersistencia) {
+            List<Cambios> lote = tomarCambios();
+            if (lote.isEmpty()) {
+                return 0;
+            }
+
+            try {
+                transaccionNueva.executeWithoutResult(status -> escribir(lote));
+                return lote.size();
+            } catch (RuntimeException e) {
+                // Se reintentará en la siguiente ejecución
+                lote.forEach(this::devolverCambios);
+                erroresPersistencia.increment();
+                logger.error("Error al persistir carritos en memoria: {}", e.getMessage(), e);
+                return 0;
+            }
+        }
+    }
+
+    @Override
+    public void descartar(Collection<String> idsUsuarios) {
+        synchronized (lockPersistencia) {
+            for (String idUsuario : idsUsuarios) {
+                CarritoEnMemoria carrito = carritos.remove(idUsuario);
+                if (carrito != null) {
+                    synchronized (carrito) {
+                        carrito.descartado = true;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Escribe los cambios pendientes y desaloja carritos inactivos.
+     */
+    @Scheduled(fixedDelayString = "${app.carrito.store.flush-ms:1000}")
+    public void persistirPendientesProgramado() {
+        persistirPendientes();
+        desalojar();
+    }
+
+    /**
+     * Escribe lo pendiente antes de apagar la aplicación.
+     */
+    @PreDestroy
+    public void alApagar() {
+        int escritos = persistirPendientes();
+        logger.info("Carritos en memoria persistidos al apagar: {}", escritos);
+    }
+
+    private CarritoEnMemoria obtenerCarrito(String idUsuario) {
+        CarritoEnMemoria carrito = carritos.get(idUsuario);
+        if (carrito == null) {
+            List<Linea> lineas = carritoDAO.findLineasByUsuario(idUsuario);
+            if (lineas == null) {
+                return null;
+            }
+            CarritoEnMemoria nuevo = new CarritoEnMemoria(lineas, secuenciaVersiones.incrementAndGet());
+            CarritoEnMemoria previo = carritos.putIfAbsent(idUsuario, nuevo);
+            carrito = previo != null ? previo : nuevo;
+        }
+        carrito.ultimoAcceso = System.currentTimeMillis();
+        return carrito;
+    }
+
+    /**
+     * Aplica un cambio sobre el carrito vigente del usuario y, si hay una
+     * transacción activa, lo deshace cuando ésta se revierte. Tanto el cambio
+     * como su reversión dan una versión nueva al carrito.
+     *
+     * @param cambio aplica el cambio y devuelve cómo deshacerlo (null si no
+     *               cambió nada)
+     */
+    private void modificar(String idUsuario, Function<CarritoEnMemoria, Consumer<CarritoEnMemoria>> cambio) {
+        Consumer<CarritoEnMemoria> deshacer = aplicar(idUsuario, carrito -> {
+            Consumer<CarritoEnMemoria> reversion = cambio.apply(carrito);
+            if (reversion != null) {
+                carrito.version = secuenciaVersiones.incrementAndGet();
+            }
+            return reversion;
+        });
+        if (deshacer != null) {
+            TransaccionUtils.alFinalizar(() -> {
+            }, () -> aplicar(idUsuario, carrito -> {
+                deshacer.accept(carrito);
+                carrito.version = secuenciaVersiones.incrementAndGet();
+                return null;
+            }));
+        }
+    }
+
+    private <T> T aplicar(String idUsuario, Function<CarritoEnMemoria, T> cambio) {
+        while (true) {
+            CarritoEnMemoria carrito = obtenerCarrito(idUsuario);
+            if (carrito == null) {
+                throw new EntityNotFoundException("Usuario no encontrado con ID: " + idUsuario);
+            }
+            synchronized (carrito) {
+                if (!carrito.descartado) {
+                    return cambio.apply(carrito);
+                }
+            }
+        }
+    }
+
+    private void restaurarLinea(CarritoEnMemoria carrito, String idProducto, Linea anterior) {
+        if (anterior != null) {
+            carrito.ponerLinea(anterior);
+        } else {
+            carrito.quitarLinea(idProducto);
+        }
+        carrito.marcarPendiente(idProducto);
+    }
+
+    private List<Cambios> tomarCambios() {
+        List<Cambios> lote = new ArrayList<>();
+        carritos.forEach((idUsuario, carrito) -> {
+            synchronized (carrito) {
+                if (!carrito.sucio()) {
+                    return;
+                }
+
+                Set<String> pendientes = carrito.pendientes();
+                List<Linea> presentes = new ArrayList<>();
+                Set<String> ausentes = new HashSet<>();
+                if (carrito.reemplazar) {
+                    // Se borran todas sus filas: hay que escribir todas las líneas actuales
+                    presentes.addAll(carrito.lineas());
+                } else {
+                    for (String idProducto : pendientes) {
+                        Linea linea = carrito.obtenerLinea(idProducto);
+                        if (linea != null) {
+                            presentes.add(linea);
+                        } else {
+                            ausentes.add(idProducto);
+                        }
+                    }
+                }
+
+                lote.add(new Cambios(idUsuario, carrito, carrito.reemplazar, pendientes, presentes, ausentes));
+                carrito.limpiarPendientes();
+                carrito.reemplazar = false;
+            }
+        });
+        return lote;
+    }
+
+    private void escribir(List<Cambios> lote) {
+        List<String> reemplazados = new ArrayList<>();
+        Map<String, Set<String>> ausentes = new HashMap<>();
+        Map<String, List<Linea>> presentes = new HashMap<>();
+        for (Cambios cambios : lote) {
+            if (cambios.reemplazar()) {
+                reemplazados.add(cambios.idUsuario());
+            }
+            if (!cambios.ausentes().isEmpty()) {
+                ausentes.put(cambios.idUsuario(), cambios.ausentes());
+            }
+            if (!cambios.presentes().isEmpty()) {
+                presentes.put(cambios.idUsuario(), cambios.presentes());
+            }
+        }
+
+        if (!reemplazados.isEmpty()) {
+            carritoDAO.eliminarPorUsuarios(reemplazados);
+        }
+        carritoDAO.eliminarLineas(ausentes);
+        carritoDAO.guardarLineas(presentes);
+    }
+
+    private void devolverCambios(Cambios cambios) {
+        CarritoEnMemoria carrito = cambios.carrito();
+        synchronized (carrito) {
+            carrito.reemplazar |= cambios.reemplazar();
+            cambios.pendientes().forEach(carrito::marcarPendiente);
+        }
+    }
+
+    /**
+     * Quita de memoria los carritos sin cambios pendientes que llevan tiempo
+     * sin usarse o que exceden el máximo de usuarios (los menos usados
+     * primero).
+     */
+    private void desalojar() {
+        synchronized (lockPersistencia) {
+            long limite = System.currentTimeMillis() - Duration.ofMinutes(inactividadMinutos).toMillis();
+            carritos.forEach((idUsuario, carrito) -> {
+                if (carrito.ultimoAcceso < limite) {
+                    desalojarSiLimpio(idUsuario, carrito);
+                }
+            });
+
+            int exceso = carritos.size() - maxUsuarios;
+            if (exceso > 0) {
+                carritos.entrySet().stream()
+                        .sorted(Comparator.comparingLong(entry -> entry.getValue().ultimoAcceso))
+                        .limit(exceso)
+                        .forEach(entry -> desalojarSiLimpio(entry.getKey(), entry.getValue()));
+            }
+        }
+    }
+
+    private void desalojarSiLimpio(String idUsuario, CarritoEnMemoria carrito) {
+        synchronized (carrito) {
+            if (!carrito.sucio() && carritos.remove(idUsuario, carrito)) {
+                carrito.descartado = true;
+            }
+        }
+    }
+}
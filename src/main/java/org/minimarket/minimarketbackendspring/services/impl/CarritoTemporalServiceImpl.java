@@ -2,49 +2,125 @@ package org.minimarket.minimarketbackendspring.services.impl;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO;
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO.Linea;
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO.ProductoVista;
+import org.minimarket.minimarketbackendspring.dtos.CarritoResumenDTO;
 import org.minimarket.minimarketbackendspring.dtos.CarritoTemporalDto;
+import org.minimarket.minimarketbackendspring.dtos.requests.CarritoOperacionDTO;
 import org.minimarket.minimarketbackendspring.entities.CarritoTemporal;
 import org.minimarket.minimarketbackendspring.entities.Producto;
-import org.minimarket.minimarketbackendspring.entities.Usuario;
 import org.minimarket.minimarketbackendspring.repositories.CarritoTemporalRepository;
 import org.minimarket.minimarketbackendspring.repositories.ProductoRepository;
-import org.minimarket.minimarketbackendspring.repositories.UsuarioRepository;
+import org.minimarket.minimarketbackendspring.services.interfaces.CarritoStoreService;
 import org.minimarket.minimarketbackendspring.services.interfaces.CarritoTemporalService;
 import org.minimarket.minimarketbackendspring.services.interfaces.DescuentoPromocionService;
+import org.minimarket.minimarketbackendspring.services.interfaces.StockLedgerService;
+import org.minimarket.minimarketbackendspring.services.interfaces.StockReservaService;
+import org.minimarket.minimarketbackendspring.services.interfaces.TablaPreciosService.CambioPrecios;
+import org.minimarket.minimarketbackendspring.utils.PrecioUtils;
+import org.minimarket.minimarketbackendspring.utils.VersionesPorClave;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.event.EventListener;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.annotation.PostConstruct;
 import jakarta.persistence.EntityNotFoundException;
 
 /**
  * Implementación del servicio de gestión de carrito temporal.
  * 
  * Maneja la lógica de agregar, actualizar y eliminar productos del carrito
- * antes de crear el pedido final.
+ * antes de crear el pedido final. Las líneas se guardan a través de
+ * {@link CarritoStoreService}; las consultas que recorren CARRITO_TEMPORAL
+ * directamente escriben antes los cambios pendientes.
+ *
+ * Los items con descuentos, la cantidad de líneas y ambos totales se calculan
+ * juntos y se reutilizan mientras no cambien la versión del carrito, la del
+ * catálogo de precios ni la fecha (de la que depende la vigencia de los
+ * descuentos).
  */
 @Service
 @Transactional
 public class CarritoTemporalServiceImpl implements CarritoTemporalService {
 
+    private static final Logger logger = LoggerFactory.getLogger(CarritoTemporalServiceImpl.class);
+
     @Autowired
     private CarritoTemporalRepository carritoRepository;
 
     @Autowired
-    private UsuarioRepository usuarioRepository;
+    private ProductoRepository productoRepository;
 
     @Autowired
-    private ProductoRepository productoRepository;
+    private StockLedgerService stockLedgerService;
+
+    @Autowired
+    private StockReservaService stockReservaService;
+
+    @Autowired
+    private CarritoStoreService carritoStore;
+
+    @Autowired
+    private CarritoDAO carritoDAO;
 
     @Autowired
     private DescuentoPromocionService descuentoService;
 
+    @Value("${app.carrito.resumen.cache-max:10000}")
+    private long maximoResumenes;
+
+    // Último resumen calculado por usuario
+    private Cache<String, ResumenCarrito> resumenes;
+
+    /**
+     * Items con descuentos y totales del carrito en una versión concreta.
+     */
+    private record ResumenCarrito(long versionCarrito, LocalDate fecha, List<CarritoTemporalDto> items,
+            long cantidadLineas, BigDecimal total, BigDecimal totalConDescuentos) {
+
+        private boolean vigente(long versionCarrito, LocalDate fecha) {
+            return this.versionCarrito == versionCarrito && this.fecha.equals(fecha);
+        }
+    }
+
+    @PostConstruct
+    public void inicializar() {
+        resumenes = CacheBuilder.newBuilder()
+                .maximumSize(maximoResumenes)
+                .build();
+    }
+
+    /**
+     * Un cambio de precio solo invalida los resúmenes y el ETag de los carritos
+     * que tienen alguno de los productos afectados. El evento se publica ya
+     * con la tabla de precios nueva, así que lo calculado después la usa.
+     */
+    @EventListener
+    @Transactional(propagation = Propagation.SUPPORTS)
+    public void alCambiarPrecios(CambioPrecios cambio) {
+        carritoStore.avanzarVersiones(cambio.idsProductos());
+    }
+
     // @Autowired
     // private StockValidationService stockValidationService; // ELIMINAMOS ESTA
     // DEPENDENCIA
@@ -55,6 +131,7 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
     @Override
     @Transactional(readOnly = true)
     public List<CarritoTemporalDto> findAll() {
+        carritoStore.persistirPendientes();
         List<CarritoTemporal> items = carritoRepository.findAll();
         return convertToDTOList(items);
     }
@@ -65,6 +142,7 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
     @Override
     @Transactional(readOnly = true)
     public CarritoTemporalDto findById(Long id) {
+        carritoStore.persistirPendientes();
         CarritoTemporal item = carritoRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Item de carrito no encontrado con ID: " + id));
         return convertToDTO(item);
@@ -76,8 +154,10 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
     @Override
     @Transactional(readOnly = true)
     public BigDecimal calcularTotalCarritoConDescuentos(String idUsuario) {
-        List<CarritoTemporalDto> itemsConDescuentos = findByUsuarioConDescuentos(idUsuario);
+        return obtenerResumen(idUsuario).totalConDescuentos();
+    }
 
+    private BigDecimal sumarConDescuentos(List<CarritoTemporalDto> itemsConDescuentos) {
         return itemsConDescuentos.stream()
                 .map(item -> {
                     BigDecimal precioEfectivo = item.getPrecioConDescuento() != null ? item.getPrecioConDescuento()
@@ -93,50 +173,102 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
 
     /**
      * Obtiene items del carrito con información de descuentos aplicados.
+     *
+     * Las líneas salen del almacén de carritos y los datos de productos y
+     * descuentos de una sola consulta de proyección.
      */
     @Override
     @Transactional(readOnly = true)
     public List<CarritoTemporalDto> findByUsuarioConDescuentos(String idUsuario) {
-        List<CarritoTemporalDto> items = findByUsuario(idUsuario);
+        return new ArrayList<>(obtenerResumen(idUsuario).items());
+    }
 
-        // Enriquecer cada item con información de descuentos
-        return items.stream()
-                .map(item -> {
-                    // Verificar si tiene descuentos activos
-                    boolean tieneDescuento = descuentoService.tieneDescuentosActivos(item.getIdProducto());
-
-                    Double precioOriginal = item.getIdProductoPrecio();
-
-                    item.setTieneDescuento(tieneDescuento);
-
-                    if (tieneDescuento) {
-                        BigDecimal precioOriginalBD = BigDecimal.valueOf(precioOriginal);
-                        BigDecimal precioConDescuento = descuentoService.calcularPrecioConDescuento(
-                                item.getIdProducto(), precioOriginalBD);
-
-                        // Calcular información de descuento
-                        BigDecimal montoDescuentoBD = precioOriginalBD.subtract(precioConDescuento);
-                        BigDecimal porcentajeDescuentoBD = montoDescuentoBD
-                                .divide(precioOriginalBD, 4, RoundingMode.HALF_UP)
-                                .multiply(BigDecimal.valueOf(100))
-                                .setScale(2, RoundingMode.HALF_UP);
-
-                        // USAR BigDecimal directamente (sin conversiones)
-                        item.setPrecioOriginal(precioOriginalBD);
-                        item.setPrecioConDescuento(precioConDescuento);
-                        item.setMontoDescuento(montoDescuentoBD);
-                        item.setPorcentajeDescuento(porcentajeDescuentoBD);
-                    } else {
-                        // Sin descuento
-                        item.setPrecioOriginal(BigDecimal.valueOf(precioOriginal));
-                        item.setPrecioConDescuento(BigDecimal.valueOf(precioOriginal));
-                        item.setMontoDescuento(BigDecimal.ZERO);
-                        item.setPorcentajeDescuento(BigDecimal.ZERO);
-                    }
+    /**
+     * Devuelve el resumen del carrito, recalculándolo solo si cambió su
+     * versión (por una modificación del carrito o de los precios de sus
+     * productos) o la fecha. La versión se lee antes que los datos: un resumen
+     * guardado nunca es más antiguo que la versión con la que se guarda. Si el
+     * almacén no está versionado se calcula siempre y no se guarda.
+     */
+    private ResumenCarrito obtenerResumen(String idUsuario) {
+        if (!carritoStore.versionado()) {
+            return calcularResumen(idUsuario, 0L, LocalDate.now());
+        }
 
-                    return item;
-                })
-                .collect(Collectors.toList());
+        Long versionCarrito = carritoStore.version(idUsuario);
+        if (versionCarrito == null) {
+            throw new EntityNotFoundException("Usuario no encontrado con ID: " + idUsuario);
+        }
+        LocalDate fecha = LocalDate.now();
+
+        ResumenCarrito resumen = resumenes.getIfPresent(idUsuario);
+        if (resumen != null && resumen.vigente(versionCarrito, fecha)) {
+            return resumen;
+        }
+
+        resumen = calcularResumen(idUsuario, versionCarrito, fecha);
+        resumenes.put(idUsuario, resumen);
+        return resumen;
+    }
+
+    private ResumenCarrito calcularResumen(String idUsuario, long versionCarrito, LocalDate fecha) {
+        List<Linea> lineas = obtenerLineas(idUsuario);
+        List<CarritoTemporalDto> items = List.copyOf(construirItemsConDescuentos(idUsuario, lineas, fecha));
+        return new ResumenCarrito(versionCarrito, fecha, items, lineas.size(),
+                sumarSinDescuentos(items), sumarConDescuentos(items));
+    }
+
+    private List<CarritoTemporalDto> construirItemsConDescuentos(String idUsuario, List<Linea> lineas,
+            LocalDate fecha) {
+        if (lineas.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        List<String> idsProductos = lineas.stream().map(Linea::idProducto).toList();
+        Map<String, ProductoVista> productos = carritoDAO.findVistaProductos(idsProductos);
+        Map<String, BigDecimal> porcentajes = descuentoService.findMejorPorcentajePorProducto(idsProductos, fecha);
+
+        List<CarritoTemporalDto> items = new ArrayList<>(lineas.size());
+        for (Linea linea : lineas) {
+            ProductoVista producto = productos.get(linea.idProducto());
+            if (producto == null) {
+                continue;
+            }
+
+            CarritoTemporalDto item = new CarritoTemporalDto(linea.idCarrito(), idUsuario, linea.idProducto(),
+                    producto.nombre(), producto.precio(), linea.cantidad(), linea.fechaAgregado());
+            aplicarDescuento(item, porcentajes.get(linea.idProducto()));
+            items.add(item);
+        }
+        return items;
+    }
+
+    /**
+     * Completa los campos de descuento de un item a partir del mejor
+     * porcentaje vigente.
+     */
+    private void aplicarDescuento(CarritoTemporalDto item, BigDecimal porcentaje) {
+        BigDecimal precioOriginalBD = BigDecimal.valueOf(item.getIdProductoPrecio());
+        BigDecimal precioConDescuento = porcentaje != null
+                ? PrecioUtils.aplicarPorcentaje(precioOriginalBD, porcentaje)
+                : precioOriginalBD;
+
+        boolean tieneDescuento = precioConDescuento.compareTo(precioOriginalBD) < 0;
+        item.setTieneDescuento(tieneDescuento);
+        item.setPrecioOriginal(precioOriginalBD);
+        item.setPrecioConDescuento(precioConDescuento);
+
+        if (tieneDescuento) {
+            BigDecimal montoDescuentoBD = precioOriginalBD.subtract(precioConDescuento);
+            item.setMontoDescuento(montoDescuentoBD);
+            item.setPorcentajeDescuento(montoDescuentoBD
+                    .divide(precioOriginalBD, 4, RoundingMode.HALF_UP)
+                    .multiply(BigDecimal.valueOf(100))
+                    .setScale(2, RoundingMode.HALF_UP));
+        } else {
+            item.setMontoDescuento(BigDecimal.ZERO);
+            item.setPorcentajeDescuento(BigDecimal.ZERO);
+        }
     }
 
     /**
@@ -145,27 +277,18 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
     @Override
     public CarritoTemporalDto save(CarritoTemporalDto carritoDTO, String idUsuario, String idProducto) {
         // Validar que el usuario existe
-        Usuario usuario = usuarioRepository.findById(idUsuario)
-                .orElseThrow(() -> new EntityNotFoundException("Usuario no encontrado con ID: " + idUsuario));
+        obtenerLineas(idUsuario);
 
         // Validar que el producto existe
-        Producto producto = productoRepository.findById(idProducto)
-                .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado con ID: " + idProducto));
-
-        CarritoTemporal item = convertToEntity(carritoDTO);
-        item.setIdUsuario(usuario);
-        item.setIdProducto(producto);
+        Producto producto = buscarProducto(idProducto);
 
         // Establecer valores por defecto
-        if (item.getCantidad() == null || item.getCantidad() <= 0) {
-            item.setCantidad(1L);
-        }
-        if (item.getFechaAgregado() == null) {
-            item.setFechaAgregado(LocalDateTime.now());
-        }
+        long cantidad = carritoDTO.getCantidad() == null || carritoDTO.getCantidad() <= 0
+                ? 1L
+                : carritoDTO.getCantidad();
 
-        CarritoTemporal savedItem = carritoRepository.save(item);
-        return convertToDTO(savedItem);
+        carritoStore.fijar(idUsuario, idProducto, cantidad);
+        return convertToDTO(idUsuario, new Linea(null, idProducto, cantidad, LocalDateTime.now()), producto);
     }
 
     /**
@@ -173,14 +296,17 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
      */
     @Override
     public CarritoTemporalDto update(Long id, CarritoTemporalDto carritoDTO) {
+        carritoStore.persistirPendientes();
         CarritoTemporal existingItem = carritoRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException("Item de carrito no encontrado con ID: " + id));
         if (carritoDTO.getCantidad() != null && carritoDTO.getCantidad() > 0) {
             existingItem.setCantidad(carritoDTO.getCantidad());
         }
 
-        CarritoTemporal updatedItem = carritoRepository.save(existingItem);
-        return convertToDTO(updatedItem);
+        // El almacén es quien escribe CARRITO_TEMPORAL
+        carritoStore.fijar(existingItem.getIdUsuario().getIdUsuario(),
+                existingItem.getIdProducto().getIdProducto(), existingItem.getCantidad());
+        return convertToDTO(existingItem);
     }
 
     /**
@@ -188,10 +314,10 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
      */
     @Override
     public void deleteById(Long id) {
-        if (!carritoRepository.existsById(id)) {
-            throw new EntityNotFoundException("Item de carrito no encontrado con ID: " + id);
-        }
-        carritoRepository.deleteById(id);
+        carritoStore.persistirPendientes();
+        CarritoTemporal item = carritoRepository.findById(id)
+                .orElseThrow(() -> new EntityNotFoundException("Item de carrito no encontrado con ID: " + id));
+        carritoStore.quitar(item.getIdUsuario().getIdUsuario(), item.getIdProducto().getIdProducto());
     }
 
     /**
@@ -201,43 +327,41 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
     @Override
     @Transactional(readOnly = true)
     public List<CarritoTemporalDto> findByUsuario(String idUsuario) {
-        if (!usuarioRepository.existsById(idUsuario)) {
-            throw new EntityNotFoundException("Usuario no encontrado con ID: " + idUsuario);
+        List<Linea> lineas = obtenerLineas(idUsuario);
+        if (lineas.isEmpty()) {
+            return new ArrayList<>();
         }
 
-        List<CarritoTemporal> items = carritoRepository.findByIdUsuario_IdUsuario(idUsuario);
-        return convertToDTOList(items);
+        // Datos de todos los productos del carrito en una sola consulta
+        Map<String, Producto> productos = cargarProductos(lineas);
+
+        return lineas.stream()
+                .map(linea -> convertToDTO(idUsuario, linea, productos.get(linea.idProducto())))
+                .collect(Collectors.toList());
     }
 
     /**
      * Obtiene todos los items del carrito de un usuario con validación de stock.
-     * Limpia automáticamente los productos que no están disponibles.
+     * Quita los productos sin stock y reduce la cantidad de los que superan lo
+     * disponible.
      */
     @Transactional
     public List<CarritoTemporalDto> findByUsuarioConValidacion(String idUsuario) {
-        // Obtener carrito actual
-        List<CarritoTemporalDto> items = findByUsuario(idUsuario);
-
-        // Filtrar items que no tienen stock suficiente y eliminarlos
-        List<CarritoTemporalDto> itemsValidos = items.stream()
-                .filter(item -> {
-                    if (!tieneStockSuficiente(item.getIdProducto(), item.getCantidad())) {
-                        // Eliminar item sin stock
-                        try {
-                            eliminarProductoDelCarrito(idUsuario, item.getIdProducto());
-                            System.out.println(
-                                    "Producto eliminado del carrito por falta de stock: " + item.getIdProducto());
-                            return false;
-                        } catch (Exception e) {
-                            System.err.println("Error al eliminar producto del carrito: " + e.getMessage());
-                            return false;
-                        }
-                    }
-                    return true;
-                })
+        List<Linea> lineas = obtenerLineas(idUsuario);
+        Map<String, Producto> productos = cargarProductos(lineas);
+
+        Reparacion reparacion = reparar(idUsuario, lineas, stockDisponiblePorProducto(lineas, productos));
+        return reparacion.lineas().stream()
+                .map(linea -> convertToDTO(idUsuario, linea, productos.get(linea.idProducto())))
                 .collect(Collectors.toList());
+    }
 
-        return itemsValidos;
+    /**
+     * Ajusta el carrito al stock indicado con un solo lote de cambios.
+     */
+    @Override
+    public List<String> ajustarCarritoAStock(String idUsuario, Map<String, Long> stockDisponible) {
+        return reparar(idUsuario, obtenerLineas(idUsuario), stockDisponible).quitados();
     }
 
     /**
@@ -250,6 +374,8 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
             throw new EntityNotFoundException("Producto no encontrado con ID: " + idProducto);
         }
 
+        carritoStore.persistirPendientes();
+
         List<CarritoTemporal> items = carritoRepository.findByIdProducto_IdProducto(idProducto);
         return convertToDTOList(items);
     }
@@ -260,9 +386,9 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
     @Override
     @Transactional(readOnly = true)
     public CarritoTemporalDto findByUsuarioAndProducto(String idUsuario, String idProducto) {
-        CarritoTemporal item = carritoRepository.findByIdUsuario_IdUsuarioAndIdProducto_IdProducto(idUsuario,
-                idProducto);
-        return item != null ? convertToDTO(item) : null;
+        List<Linea> lineas = carritoStore.obtener(idUsuario);
+        Linea linea = lineas != null ? buscarLinea(lineas, idProducto) : null;
+        return linea != null ? convertToDTO(idUsuario, linea, buscarProducto(idProducto)) : null;
     }
 
     /**
@@ -271,30 +397,15 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
      */
     @Override
     public CarritoTemporalDto agregarProductoAlCarrito(String idUsuario, String idProducto, Long cantidad) {
-        boolean existe = carritoRepository.existsByIdUsuario_IdUsuarioAndIdProducto_IdProducto(idUsuario, idProducto);
-
-        if (existe) {
-            // Si ya existe, incrementar cantidad
-            CarritoTemporalDto itemExistente = findByUsuarioAndProducto(idUsuario, idProducto);
-            Long nuevaCantidad = itemExistente.getCantidad() + cantidad;
-
-            // Validar stock antes de actualizar
-            if (!tieneStockSuficiente(idProducto, nuevaCantidad)) {
-                throw new IllegalStateException("Stock insuficiente para el producto solicitado");
-            }
-
-            return actualizarCantidad(idUsuario, idProducto, nuevaCantidad);
-        } else {
-            // Validar stock antes de crear nuevo item
-            if (!tieneStockSuficiente(idProducto, cantidad)) {
-                throw new IllegalStateException("Stock insuficiente para el producto solicitado");
-            }
+        Producto producto = buscarProducto(idProducto);
 
-            // Si no existe, crear nuevo item
-            CarritoTemporalDto nuevoItem = new CarritoTemporalDto();
-            nuevoItem.setCantidad(cantidad);
-            return save(nuevoItem, idUsuario, idProducto);
+        // Incrementa (o agrega) y valida el stock en una sola operación del almacén
+        Linea linea = carritoStore.agregar(idUsuario, idProducto, cantidad, stockDisponible(producto));
+        if (linea == null) {
+            throw new IllegalStateException("Stock insuficiente para el producto solicitado");
         }
+
+        return convertToDTO(idUsuario, linea, producto);
     }
 
     /**
@@ -303,9 +414,9 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
      */
     @Override
     public CarritoTemporalDto actualizarCantidad(String idUsuario, String idProducto, Long nuevaCantidad) {
-        CarritoTemporalDto itemDTO = findByUsuarioAndProducto(idUsuario, idProducto);
+        Linea existente = buscarLinea(obtenerLineas(idUsuario), idProducto);
 
-        if (itemDTO == null) {
+        if (existente == null) {
             throw new EntityNotFoundException("No se encontró el producto en el carrito");
         }
 
@@ -314,12 +425,100 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
         }
 
         // Validar stock antes de actualizar
-        if (!tieneStockSuficiente(idProducto, nuevaCantidad)) {
+        Producto producto = buscarProducto(idProducto);
+        if (!tieneStockSuficiente(producto, nuevaCantidad)) {
             throw new IllegalStateException("Stock insuficiente para la cantidad solicitada");
         }
 
-        itemDTO.setCantidad(nuevaCantidad);
-        return update(itemDTO.getId(), itemDTO);
+        carritoStore.fijar(idUsuario, idProducto, nuevaCantidad);
+        return convertToDTO(idUsuario, conCantidad(existente, idProducto, nuevaCantidad), producto);
+    }
+
+    /**
+     * Aplica un lote de operaciones sobre el carrito.
+     *
+     * Las operaciones se simulan en orden sobre las cantidades actuales, los
+     * productos se cargan con una sola consulta y el stock se valida con la
+     * cantidad final de cada producto. Al almacén solo se envía el resultado
+     * neto de cada producto.
+     */
+    @Override
+    public CarritoResumenDTO aplicarOperaciones(String idUsuario, List<CarritoOperacionDTO> operaciones) {
+        Map<String, Long> actuales = new LinkedHashMap<>();
+        obtenerLineas(idUsuario).forEach(linea -> actuales.put(linea.idProducto(), linea.cantidad()));
+
+        Map<String, Long> finales = new LinkedHashMap<>(actuales);
+        Set<String> aumentados = new HashSet<>();
+        for (CarritoOperacionDTO operacion : operaciones) {
+            String idProducto = operacion.getIdProducto();
+            if (idProducto == null || operacion.getTipo() == null) {
+                throw new IllegalArgumentException("Cada operación requiere tipo e idProducto");
+            }
+
+            switch (operacion.getTipo()) {
+                case CarritoOperacionDTO.AGREGAR -> {
+                    long cantidad = cantidadPositiva(operacion);
+                    finales.merge(idProducto, cantidad, Long::sum);
+                    aumentados.add(idProducto);
+                }
+                case CarritoOperacionDTO.FIJAR -> {
+                    long cantidad = cantidadPositiva(operacion);
+                    if (finales.replace(idProducto, cantidad) == null) {
+                        throw new EntityNotFoundException("No se encontró el producto en el carrito");
+                    }
+                    aumentados.add(idProducto);
+                }
+                case CarritoOperacionDTO.ELIMINAR -> {
+                    if (finales.remove(idProducto) == null) {
+                        throw new EntityNotFoundException("No se encontró el producto en el carrito");
+                    }
+                }
+                default -> throw new IllegalArgumentException("Tipo de operación no válido: " + operacion.getTipo());
+            }
+        }
+
+        // Productos que terminan con más unidades, validados todos juntos
+        List<String> aValidar = aumentados.stream()
+                .filter(idProducto -> finales.getOrDefault(idProducto, 0L) > actuales.getOrDefault(idProducto, 0L))
+                .toList();
+        Map<String, Producto> productos = new HashMap<>();
+        productoRepository.findAllById(aValidar)
+                .forEach(producto -> productos.put(producto.getIdProducto(), producto));
+
+        List<String> sinStock = new ArrayList<>();
+        for (String idProducto : aValidar) {
+            Producto producto = productos.get(idProducto);
+            if (producto == null) {
+                throw new EntityNotFoundException("Producto no encontrado con ID: " + idProducto);
+            }
+            if (!tieneStockSuficiente(producto, finales.get(idProducto))) {
+                sinStock.add(idProducto);
+            }
+        }
+        if (!sinStock.isEmpty()) {
+            throw new IllegalStateException("Stock insuficiente para los productos: " + String.join(", ", sinStock));
+        }
+
+        // Escribir solo lo que cambió
+        actuales.keySet().stream()
+                .filter(idProducto -> !finales.containsKey(idProducto))
+                .forEach(idProducto -> carritoStore.quitar(idUsuario, idProducto));
+        finales.forEach((idProducto, cantidad) -> {
+            if (!cantidad.equals(actuales.get(idProducto))) {
+                carritoStore.fijar(idUsuario, idProducto, cantidad);
+            }
+        });
+
+        ResumenCarrito resumen = obtenerResumen(idUsuario);
+        return new CarritoResumenDTO(idUsuario, new ArrayList<>(resumen.items()), resumen.total(),
+                resumen.totalConDescuentos());
+    }
+
+    private long cantidadPositiva(CarritoOperacionDTO operacion) {
+        if (operacion.getCantidad() == null || operacion.getCantidad() <= 0) {
+            throw new IllegalArgumentException("La cantidad debe ser mayor a cero");
+        }
+        return operacion.getCantidad();
     }
 
     /**
@@ -327,13 +526,11 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
      */
     @Override
     public void eliminarProductoDelCarrito(String idUsuario, String idProducto) {
-        CarritoTemporalDto itemDTO = findByUsuarioAndProducto(idUsuario, idProducto);
+        obtenerLineas(idUsuario);
 
-        if (itemDTO == null) {
+        if (!carritoStore.quitar(idUsuario, idProducto)) {
             throw new EntityNotFoundException("No se encontró el producto en el carrito");
         }
-
-        deleteById(itemDTO.getId());
     }
 
     /**
@@ -341,11 +538,8 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
      */
     @Override
     public void vaciarCarrito(String idUsuario) {
-        if (!usuarioRepository.existsById(idUsuario)) {
-            throw new EntityNotFoundException("Usuario no encontrado con ID: " + idUsuario);
-        }
-
-        carritoRepository.deleteByIdUsuario_IdUsuario(idUsuario);
+        obtenerLineas(idUsuario);
+        carritoStore.vaciar(idUsuario);
     }
 
     /**
@@ -354,7 +548,28 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
     @Override
     @Transactional(readOnly = true)
     public Long countByUsuario(String idUsuario) {
-        return carritoRepository.countByIdUsuario_IdUsuario(idUsuario);
+        if (carritoStore.version(idUsuario) == null) {
+            return 0L;
+        }
+        return obtenerResumen(idUsuario).cantidadLineas();
+    }
+
+    /**
+     * La respuesta depende de las líneas y de los datos de los productos; la
+     * versión del carrito avanza con ambos. Sin almacén versionado no hay
+     * versión que ofrecer.
+     */
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public String versionCarrito(String idUsuario) {
+        if (!carritoStore.versionado()) {
+            return null;
+        }
+        Long versionCarrito = carritoStore.version(idUsuario);
+        if (versionCarrito == null) {
+            return null;
+        }
+        return VersionesPorClave.ARRANQUE + "-" + versionCarrito;
     }
 
     /**
@@ -363,7 +578,8 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
     @Override
     @Transactional(readOnly = true)
     public boolean existeProductoEnCarrito(String idUsuario, String idProducto) {
-        return carritoRepository.existsByIdUsuario_IdUsuarioAndIdProducto_IdProducto(idUsuario, idProducto);
+        List<Linea> lineas = carritoStore.obtener(idUsuario);
+        return lineas != null && buscarLinea(lineas, idProducto) != null;
     }
 
     /**
@@ -372,7 +588,8 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
     @Override
     @Transactional(readOnly = true)
     public boolean tieneCarrito(String idUsuario) {
-        return carritoRepository.existsByIdUsuario_IdUsuario(idUsuario);
+        List<Linea> lineas = carritoStore.obtener(idUsuario);
+        return lineas != null && !lineas.isEmpty();
     }
 
     /**
@@ -384,9 +601,83 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
      */
     @Transactional
     public Map<String, Long> validarYLimpiarCarrito(String idUsuario) {
-        // Esta funcionalidad se moverá al StockValidationService
-        // Por ahora retornamos un mapa vacío para evitar el ciclo
-        return new HashMap<>();
+        List<Linea> lineas = obtenerLineas(idUsuario);
+        Map<String, Long> disponibles = stockDisponiblePorProducto(lineas, cargarProductos(lineas));
+
+        Map<String, Long> problemas = new HashMap<>();
+        Reparacion reparacion = reparar(idUsuario, lineas, disponibles);
+        reparacion.quitados().forEach(idProducto -> problemas.put(idProducto, disponibles.get(idProducto)));
+        reparacion.ajustados().forEach(idProducto -> problemas.put(idProducto, disponibles.get(idProducto)));
+        return problemas;
+    }
+
+    /**
+     * Resultado de ajustar un carrito al stock.
+     *
+     * @param quitados  productos quitados por no tener stock
+     * @param ajustados productos cuya cantidad se redujo
+     * @param lineas    líneas que quedan en el carrito
+     */
+    private record Reparacion(List<String> quitados, List<String> ajustados, List<Linea> lineas) {
+    }
+
+    /**
+     * Compara cada línea con el stock disponible de su producto y aplica todas
+     * las correcciones juntas: las líneas sin stock se quitan y las que superan
+     * lo disponible se reducen. Con el almacén en base de datos esto es un
+     * DELETE y un UPDATE por lotes.
+     *
+     * @param disponibles idProducto -> stock disponible; las líneas de
+     *                    productos que no aparecen no se revisan
+     */
+    private Reparacion reparar(String idUsuario, List<Linea> lineas, Map<String, Long> disponibles) {
+        List<String> quitados = new ArrayList<>();
+        Map<String, Long> ajustados = new LinkedHashMap<>();
+        List<Linea> resultantes = new ArrayList<>(lineas.size());
+
+        for (Linea linea : lineas) {
+            Long disponible = disponibles.get(linea.idProducto());
+            if (disponible == null || linea.cantidad() <= disponible) {
+                resultantes.add(linea);
+            } else if (disponible <= 0) {
+                quitados.add(linea.idProducto());
+            } else {
+                ajustados.put(linea.idProducto(), disponible);
+                resultantes.add(conCantidad(linea, linea.idProducto(), disponible));
+            }
+        }
+
+        if (!quitados.isEmpty() || !ajustados.isEmpty()) {
+            carritoStore.ajustar(idUsuario, quitados, ajustados);
+            logger.info("Carrito de {} ajustado al stock. Quitados: {}, reducidos: {}", idUsuario, quitados,
+                    ajustados.keySet());
+        }
+        return new Reparacion(quitados, new ArrayList<>(ajustados.keySet()), resultantes);
+    }
+
+    /**
+     * Productos de las líneas indexados por ID, cargados con una sola consulta.
+     */
+    private Map<String, Producto> cargarProductos(List<Linea> lineas) {
+        Map<String, Producto> productos = new HashMap<>();
+        if (!lineas.isEmpty()) {
+            productoRepository.findAllById(lineas.stream().map(Linea::idProducto).toList())
+                    .forEach(producto -> productos.put(producto.getIdProducto(), producto));
+        }
+        return productos;
+    }
+
+    /**
+     * Stock disponible de cada producto de las líneas; un producto que ya no
+     * existe cuenta como sin stock.
+     */
+    private Map<String, Long> stockDisponiblePorProducto(List<Linea> lineas, Map<String, Producto> productos) {
+        Map<String, Long> disponibles = new HashMap<>();
+        for (Linea linea : lineas) {
+            Producto producto = productos.get(linea.idProducto());
+            disponibles.put(linea.idProducto(), producto != null ? stockDisponible(producto) : 0L);
+        }
+        return disponibles;
     }
 
     /**
@@ -398,8 +689,10 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
     @Override
     @Transactional(readOnly = true)
     public BigDecimal calcularTotalCarrito(String idUsuario) {
-        List<CarritoTemporalDto> items = findByUsuario(idUsuario);
+        return obtenerResumen(idUsuario).total();
+    }
 
+    private BigDecimal sumarSinDescuentos(List<CarritoTemporalDto> items) {
         return items.stream()
                 .map(item -> {
                     BigDecimal precio = BigDecimal.valueOf(item.getIdProductoPrecio());
@@ -425,14 +718,48 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
     }
 
     /**
-     * Convierte DTO a entidad CarritoTemporal.
+     * Convierte una línea del almacén de carritos a DTO.
      */
-    private CarritoTemporal convertToEntity(CarritoTemporalDto dto) {
-        CarritoTemporal item = new CarritoTemporal();
-        item.setId(dto.getId());
-        item.setCantidad(dto.getCantidad());
-        item.setFechaAgregado(dto.getFechaAgregado());
-        return item;
+    private CarritoTemporalDto convertToDTO(String idUsuario, Linea linea, Producto producto) {
+        return new CarritoTemporalDto(
+                linea.idCarrito(),
+                idUsuario,
+                linea.idProducto(),
+                producto != null ? producto.getNombre() : null,
+                producto != null ? producto.getPrecio() : null,
+                linea.cantidad(),
+                linea.fechaAgregado());
+    }
+
+    /**
+     * Obtiene las líneas del carrito validando que el usuario existe.
+     */
+    private List<Linea> obtenerLineas(String idUsuario) {
+        List<Linea> lineas = carritoStore.obtener(idUsuario);
+        if (lineas == null) {
+            throw new EntityNotFoundException("Usuario no encontrado con ID: " + idUsuario);
+        }
+        return lineas;
+    }
+
+    private Linea buscarLinea(List<Linea> lineas, String idProducto) {
+        for (Linea linea : lineas) {
+            if (linea.idProducto().equals(idProducto)) {
+                return linea;
+            }
+        }
+        return null;
+    }
+
+    private Linea conCantidad(Linea existente, String idProducto, long cantidad) {
+        return existente != null
+                ? new Linea(existente.idCarrito(), idProducto, cantidad, existente.fechaAgregado())
+                : new Linea(null, idProducto, cantidad, LocalDateTime.now());
+    }
+
+    private Producto buscarProducto(String idProducto) {
+        return productoRepository.findById(idProducto)
+                .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado con ID: " + idProducto));
     }
 
     /**
@@ -444,18 +771,20 @@ public class CarritoTemporalServiceImpl implements CarritoTemporalService {
                 .collect(Collectors.toList());
     }
 
+    private boolean tieneStockSuficiente(Producto producto, long cantidadSolicitada) {
+        return stockDisponible(producto) >= cantidadSolicitada;
+    }
+
     /**
-     * Verifica si un producto tiene stock suficiente.
-     * Método privado para evitar dependencia circular.
+     * Stock físico (ledger o PRODUCTOS.STOCK) menos lo reservado por pedidos
+     * vigentes.
      */
-    private boolean tieneStockSuficiente(String idProducto, Long cantidadSolicitada) {
-        Producto producto = productoRepository.findById(idProducto)
-                .orElse(null);
-
-        if (producto == null) {
-            return false;
+    private long stockDisponible(Producto producto) {
+        long reservado = stockReservaService.cantidadReservada(producto.getIdProducto());
+        Long stock = stockLedgerService.obtenerStock(producto.getIdProducto());
+        if (stock == null) {
+            stock = producto.getStock();
         }
-
-        return producto.getStock() >= cantidadSolicitada;
+        return stock - reservado;
     }
 }
\ No newline at end of file
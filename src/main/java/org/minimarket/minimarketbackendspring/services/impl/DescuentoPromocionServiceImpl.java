@@ -3,15 +3,25 @@ package org.minimarket.minimarketbackendspring.services.impl;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.minimarket.minimarketbackendspring.dtos.DescuentoPromocionDTO;
+import org.minimarket.minimarketbackendspring.dtos.PrecioEfectivoDTO;
+import org.minimarket.minimarketbackendspring.dtos.requests.PrecioConsultaDTO;
 import org.minimarket.minimarketbackendspring.entities.DescuentoPromocion;
-import org.minimarket.minimarketbackendspring.entities.Producto;
+import org.minimarket.minimarketbackendspring.repositories.CategoriaRepository;
 import org.minimarket.minimarketbackendspring.repositories.DescuentoPromocionRepository;
 import org.minimarket.minimarketbackendspring.repositories.ProductoRepository;
+import org.minimarket.minimarketbackendspring.repositories.ProveedorRepository;
 import org.minimarket.minimarketbackendspring.services.interfaces.DescuentoPromocionService;
+import org.minimarket.minimarketbackendspring.services.interfaces.TablaPreciosService;
+import org.minimarket.minimarketbackendspring.services.interfaces.TablaPreciosService.PrecioVigente;
+import org.minimarket.minimarketbackendspring.utils.PrecioUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -21,8 +31,10 @@ import jakarta.persistence.EntityNotFoundException;
 /**
  * Implementación del servicio de gestión de descuentos y promociones.
  * 
- * Maneja la lógica de aplicar descuentos por porcentaje a productos específicos,
- * validando fechas de vigencia y estados activos/inactivos.
+ * Maneja la lógica de aplicar descuentos por porcentaje a un producto, una
+ * categoría, un proveedor o todo el catálogo, validando fechas de vigencia y
+ * estados activos/inactivos. Las consultas de precios se resuelven con la
+ * tabla de precios en memoria.
  */
 @Service
 @Transactional
@@ -34,6 +46,15 @@ public class DescuentoPromocionServiceImpl implements DescuentoPromocionService
     @Autowired
     private ProductoRepository productoRepository;
 
+    @Autowired
+    private CategoriaRepository categoriaRepository;
+
+    @Autowired
+    private ProveedorRepository proveedorRepository;
+
+    @Autowired
+    private TablaPreciosService tablaPrecios;
+
     /**
      * Obtiene todos los descuentos del sistema.
      */
@@ -56,17 +77,47 @@ public class DescuentoPromocionServiceImpl implements DescuentoPromocionService
     }
 
     /**
-     * Crea un nuevo descuento asociado a un producto específico.
-     * Aplica valores por defecto y valida reglas de negocio.
+     * Crea un nuevo descuento. Su alcance es el producto indicado o, si no se
+     * indica, la categoría o el proveedor del DTO. Todo el catálogo solo se
+     * alcanza pidiéndolo explícitamente con alcance CATALOGO, para que omitir
+     * el producto no descuente todos los productos. Aplica valores por
+     * defecto y valida reglas de negocio.
      */
     @Override
     public DescuentoPromocionDTO save(DescuentoPromocionDTO descuentoDTO, String idProducto) {
-        // Validar que el producto existe
-        Producto producto = productoRepository.findById(idProducto)
-                .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado con ID: " + idProducto));
+        int alcances = (idProducto != null ? 1 : 0) + (descuentoDTO.getIdCategoriaId() != null ? 1 : 0)
+                + (descuentoDTO.getIdProveedorId() != null ? 1 : 0);
+        if (alcances > 1) {
+            throw new IllegalArgumentException("Un descuento solo puede aplicar a un producto, una categoría o un proveedor");
+        }
+
+        String alcance = idProducto != null ? DescuentoPromocionDTO.ALCANCE_PRODUCTO
+                : descuentoDTO.getIdCategoriaId() != null ? DescuentoPromocionDTO.ALCANCE_CATEGORIA
+                : descuentoDTO.getIdProveedorId() != null ? DescuentoPromocionDTO.ALCANCE_PROVEEDOR
+                : DescuentoPromocionDTO.ALCANCE_CATALOGO;
+        if (descuentoDTO.getAlcance() == null && alcance.equals(DescuentoPromocionDTO.ALCANCE_CATALOGO)) {
+            throw new IllegalArgumentException(
+                    "Indique el producto, la categoría o el proveedor, o alcance CATALOGO para todo el catálogo");
+        }
+        if (descuentoDTO.getAlcance() != null && !descuentoDTO.getAlcance().equalsIgnoreCase(alcance)) {
+            throw new IllegalArgumentException("El alcance " + descuentoDTO.getAlcance()
+                    + " no coincide con el producto, la categoría o el proveedor indicados");
+        }
 
         DescuentoPromocion descuento = convertToEntity(descuentoDTO);
-        descuento.setIdProducto(producto);
+        if (idProducto != null) {
+            // Validar que el producto existe
+            descuento.setIdProducto(productoRepository.findById(idProducto)
+                    .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado con ID: " + idProducto)));
+        } else if (descuentoDTO.getIdCategoriaId() != null) {
+            descuento.setIdCategoria(categoriaRepository.findById(descuentoDTO.getIdCategoriaId())
+                    .orElseThrow(() -> new EntityNotFoundException(
+                            "Categoría no encontrada con ID: " + descuentoDTO.getIdCategoriaId())));
+        } else if (descuentoDTO.getIdProveedorId() != null) {
+            descuento.setIdProveedor(proveedorRepository.findById(descuentoDTO.getIdProveedorId())
+                    .orElseThrow(() -> new EntityNotFoundException(
+                            "Proveedor no encontrado con ID: " + descuentoDTO.getIdProveedorId())));
+        }
 
         // Establecer valores por defecto si no se proporcionan
         if (descuento.getEstado() == null) {
@@ -94,11 +145,12 @@ public class DescuentoPromocionServiceImpl implements DescuentoPromocionService
         }
 
         DescuentoPromocion savedDescuento = descuentoRepository.save(descuento);
+        tablaPrecios.registrarCambioPromociones();
         return convertToDTO(savedDescuento);
     }
 
     /**
-     * Actualiza un descuento existente.
+     * Actualiza un descuento existente. El alcance no se modifica.
      */
     @Override
     public DescuentoPromocionDTO update(Long id, DescuentoPromocionDTO descuentoDTO) {
@@ -133,6 +185,7 @@ public class DescuentoPromocionServiceImpl implements DescuentoPromocionService
         }
 
         DescuentoPromocion updatedDescuento = descuentoRepository.save(existingDescuento);
+        tablaPrecios.registrarCambioPromociones();
         return convertToDTO(updatedDescuento);
     }
 
@@ -145,6 +198,7 @@ public class DescuentoPromocionServiceImpl implements DescuentoPromocionService
             throw new EntityNotFoundException("Descuento no encontrado con ID: " + id);
         }
         descuentoRepository.deleteById(id);
+        tablaPrecios.registrarCambioPromociones();
     }
 
     /**
@@ -178,15 +232,11 @@ public class DescuentoPromocionServiceImpl implements DescuentoPromocionService
     @Override
     @Transactional(readOnly = true)
     public List<DescuentoPromocionDTO> findDescuentosActivosParaProducto(String idProducto) {
-        if (!productoRepository.existsById(idProducto)) {
+        List<DescuentoPromocionDTO> vigentes = tablaPrecios.promocionesVigentes(idProducto);
+        if (vigentes == null) {
             throw new EntityNotFoundException("Producto no encontrado con ID: " + idProducto);
         }
-
-        LocalDate fechaActual = LocalDate.now();
-        List<DescuentoPromocion> descuentos = descuentoRepository
-                .findByIdProducto_IdProductoAndEstadoAndFechaInicioLessThanEqualAndFechaFinGreaterThanEqual(
-                        idProducto, "activo", fechaActual, fechaActual);
-        return convertToDTOList(descuentos);
+        return vigentes;
     }
 
     /**
@@ -196,11 +246,7 @@ public class DescuentoPromocionServiceImpl implements DescuentoPromocionService
     @Override
     @Transactional(readOnly = true)
     public List<DescuentoPromocionDTO> findDescuentosVigentes() {
-        LocalDate fechaActual = LocalDate.now();
-        List<DescuentoPromocion> descuentos = descuentoRepository
-                .findByEstadoAndFechaInicioLessThanEqualAndFechaFinGreaterThanEqual(
-                        "activo", fechaActual, fechaActual);
-        return convertToDTOList(descuentos);
+        return tablaPrecios.promocionesVigentes();
     }
 
     /**
@@ -210,20 +256,10 @@ public class DescuentoPromocionServiceImpl implements DescuentoPromocionService
     @Override
     @Transactional(readOnly = true)
     public DescuentoPromocionDTO findMejorDescuentoParaProducto(String idProducto) {
-        if (!productoRepository.existsById(idProducto)) {
+        if (tablaPrecios.obtener(idProducto) == null) {
             throw new EntityNotFoundException("Producto no encontrado con ID: " + idProducto);
         }
-
-        LocalDate fechaActual = LocalDate.now();
-        List<DescuentoPromocion> descuentos = descuentoRepository
-                .findByIdProducto_IdProductoAndEstadoAndFechaInicioLessThanEqualAndFechaFinGreaterThanEqualOrderByPorcentajeDesc(
-                        idProducto, "activo", fechaActual, fechaActual);
-
-        if (descuentos.isEmpty()) {
-            return null; // No hay descuentos disponibles
-        }
-
-        return convertToDTO(descuentos.get(0)); // El primero es el de mayor porcentaje
+        return tablaPrecios.promocionAplicada(idProducto); // null si no hay descuentos disponibles
     }
 
     /**
@@ -233,18 +269,75 @@ public class DescuentoPromocionServiceImpl implements DescuentoPromocionService
     @Override
     @Transactional(readOnly = true)
     public BigDecimal calcularPrecioConDescuento(String idProducto, BigDecimal precioOriginal) {
-        DescuentoPromocionDTO mejorDescuento = findMejorDescuentoParaProducto(idProducto);
+        PrecioVigente precio = tablaPrecios.obtener(idProducto);
+        BigDecimal porcentaje = precio != null ? precio.porcentaje() : null;
 
-        if (mejorDescuento == null) {
+        if (porcentaje == null) {
             return precioOriginal; // Sin descuentos aplicables
         }
 
-        // Calcular descuento: porcentaje / 100 * precio
-        BigDecimal porcentajeDescuento = mejorDescuento.getPorcentaje().divide(BigDecimal.valueOf(100));
-        BigDecimal descuentoAplicado = precioOriginal.multiply(porcentajeDescuento);
-        BigDecimal precioFinal = precioOriginal.subtract(descuentoAplicado);
+        return PrecioUtils.aplicarPorcentaje(precioOriginal, porcentaje);
+    }
 
-        return precioFinal.setScale(2, RoundingMode.HALF_UP);
+    /**
+     * Obtiene el mayor porcentaje aplicable por producto desde la tabla de
+     * precios (incluye promociones por categoría, proveedor y catálogo).
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Map<String, BigDecimal> findMejorPorcentajePorProducto(Collection<String> idsProductos, LocalDate fecha) {
+        return tablaPrecios.porcentajes(idsProductos, fecha);
+    }
+
+    /**
+     * Calcula el precio final de varios productos con una sola consulta de
+     * descuentos.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public Map<String, BigDecimal> calcularPreciosConDescuento(Map<String, BigDecimal> preciosOriginales,
+            LocalDate fecha) {
+        Map<String, BigDecimal> porcentajes = findMejorPorcentajePorProducto(preciosOriginales.keySet(), fecha);
+
+        Map<String, BigDecimal> preciosFinales = new HashMap<>();
+        preciosOriginales.forEach((idProducto, precioOriginal) -> {
+            BigDecimal porcentaje = porcentajes.get(idProducto);
+            preciosFinales.put(idProducto,
+                    porcentaje != null ? PrecioUtils.aplicarPorcentaje(precioOriginal, porcentaje) : precioOriginal);
+        });
+        return preciosFinales;
+    }
+
+    /**
+     * Lee precio de lista, descuento y precio final de la tabla de precios.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<PrecioEfectivoDTO> calcularPreciosEfectivos(List<PrecioConsultaDTO> consultas) {
+        for (PrecioConsultaDTO consulta : consultas) {
+            if (consulta.getIdProducto() == null) {
+                throw new IllegalArgumentException("El producto es obligatorio");
+            }
+            if (consulta.getCantidad() != null && consulta.getCantidad() <= 0) {
+                throw new IllegalArgumentException("La cantidad debe ser mayor a cero");
+            }
+        }
+
+        List<PrecioEfectivoDTO> precios = new ArrayList<>(consultas.size());
+        for (PrecioConsultaDTO consulta : consultas) {
+            PrecioVigente precio = tablaPrecios.obtener(consulta.getIdProducto());
+            if (precio == null || precio.precioOriginal() == null) {
+                continue;
+            }
+            long cantidad = consulta.getCantidad() != null ? consulta.getCantidad() : 1L;
+            BigDecimal ahorro = precio.precioOriginal().subtract(precio.precioFinal())
+                    .multiply(BigDecimal.valueOf(cantidad))
+                    .setScale(2, RoundingMode.HALF_UP);
+
+            precios.add(new PrecioEfectivoDTO(precio.idProducto(), cantidad, precio.precioOriginal(),
+                    precio.idDescuento(), precio.porcentaje(), precio.precioFinal(), ahorro));
+        }
+        return precios;
     }
 
     /**
@@ -257,6 +350,7 @@ public class DescuentoPromocionServiceImpl implements DescuentoPromocionService
 
         descuento.setEstado("activo");
         DescuentoPromocion updatedDescuento = descuentoRepository.save(descuento);
+        tablaPrecios.registrarCambioPromociones();
         return convertToDTO(updatedDescuento);
     }
 
@@ -270,6 +364,7 @@ public class DescuentoPromocionServiceImpl implements DescuentoPromocionService
 
         descuento.setEstado("inactivo");
         DescuentoPromocion updatedDescuento = descuentoRepository.save(descuento);
+        tablaPrecios.registrarCambioPromociones();
         return convertToDTO(updatedDescuento);
     }
 
@@ -288,7 +383,7 @@ public class DescuentoPromocionServiceImpl implements DescuentoPromocionService
     @Override
     @Transactional(readOnly = true)
     public boolean tieneDescuentosActivos(String idProducto) {
-        return descuentoRepository.existsByIdProducto_IdProductoAndEstado(idProducto, "activo");
+        return tablaPrecios.tienePromocionesActivas(idProducto);
     }
 
     /**
@@ -298,23 +393,14 @@ public class DescuentoPromocionServiceImpl implements DescuentoPromocionService
     @Override
     @Transactional(readOnly = true)
     public boolean isDescuentoVigente(Long idDescuento) {
-        DescuentoPromocion descuento = descuentoRepository.findById(idDescuento).orElse(null);
-        
-        if (descuento == null || !"activo".equals(descuento.getEstado())) {
-            return false;
-        }
-
-        LocalDate fechaActual = LocalDate.now();
-        // Verificar si la fecha actual está dentro del rango de fechas del descuento
-        return (fechaActual.isEqual(descuento.getFechaInicio()) || fechaActual.isAfter(descuento.getFechaInicio())) &&
-               (fechaActual.isEqual(descuento.getFechaFin()) || fechaActual.isBefore(descuento.getFechaFin()));
+        return tablaPrecios.esVigente(idDescuento);
     }
 
     /**
      * Convierte entidad DescuentoPromocion a DTO incluyendo datos del producto.
      */
     private DescuentoPromocionDTO convertToDTO(DescuentoPromocion descuento) {
-        return new DescuentoPromocionDTO(
+        DescuentoPromocionDTO dto = new DescuentoPromocionDTO(
                 descuento.getId(),
                 descuento.getIdProducto() != null ? descuento.getIdProducto().getIdProducto() : null,
                 descuento.getIdProducto() != null ? descuento.getIdProducto().getNombre() : null,
@@ -324,6 +410,13 @@ public class DescuentoPromocionServiceImpl implements DescuentoPromocionService
                 descuento.getFechaFin(),
                 descuento.getEstado()
         );
+        dto.setIdCategoriaId(descuento.getIdCategoria() != null ? descuento.getIdCategoria().getId() : null);
+        dto.setIdProveedorId(descuento.getIdProveedor() != null ? descuento.getIdProveedor().getId() : null);
+        dto.setAlcance(descuento.getIdProducto() != null ? DescuentoPromocionDTO.ALCANCE_PRODUCTO
+                : descuento.getIdCategoria() != null ? DescuentoPromocionDTO.ALCANCE_CATEGORIA
+                : descuento.getIdProveedor() != null ? DescuentoPromocionDTO.ALCANCE_PROVEEDOR
+                : DescuentoPromocionDTO.ALCANCE_CATALOGO);
+        return dto;
     }
 
     /**
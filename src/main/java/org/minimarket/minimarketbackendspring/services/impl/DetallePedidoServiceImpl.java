@@ -1,7 +1,13 @@
 package org.minimarket.minimarketbackendspring.services.impl;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.minimarket.minimarketbackendspring.dtos.DetallePedidoDTO;
@@ -12,6 +18,7 @@ import org.minimarket.minimarketbackendspring.repositories.DetallePedidoReposito
 import org.minimarket.minimarketbackendspring.repositories.PedidoRepository;
 import org.minimarket.minimarketbackendspring.repositories.ProductoRepository;
 import org.minimarket.minimarketbackendspring.services.interfaces.DetallePedidoService;
+import org.minimarket.minimarketbackendspring.services.interfaces.StockReservaService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Isolation;
@@ -32,6 +39,9 @@ public class DetallePedidoServiceImpl implements DetallePedidoService {
     @Autowired
     private ProductoRepository productoRepository;
 
+    @Autowired
+    private StockReservaService stockReservaService;
+
     @Override
     @Transactional(readOnly = true)
     public List<DetallePedidoDTO> findAll() {
@@ -50,7 +60,7 @@ public class DetallePedidoServiceImpl implements DetallePedidoService {
     @Override
     public DetallePedidoDTO save(DetallePedidoDTO detallePedidoDTO, Long idPedido, String idProducto) {
         // Validar que el pedido existe
-        Pedido pedido = pedidoRepository.findById(idPedido)
+        Pedido pedido = pedidoRepository.findParaModificarLineasById(idPedido)
                 .orElseThrow(() -> new EntityNotFoundException("Pedido no encontrado con ID: " + idPedido));
 
         // Validar que el producto existe
@@ -75,13 +85,52 @@ public class DetallePedidoServiceImpl implements DetallePedidoService {
         detalle.setSubtotal(subtotal);
 
         DetallePedido savedDetalle = detallePedidoRepository.save(detalle);
+        ajustarReserva(idPedido, List.of(idProducto));
         return convertToDTO(savedDetalle);
     }
 
+    @Override
+    public int saveAll(Long idPedido, List<DetallePedidoDTO> detallesPedido) {
+        // Referencias sin consulta: las claves foráneas validan pedido y productos
+        Pedido pedido = pedidoRepository.getReferenceById(idPedido);
+
+        List<DetallePedido> detalles = new ArrayList<>(detallesPedido.size());
+        for (DetallePedidoDTO dto : detallesPedido) {
+            DetallePedido detalle = convertToEntity(dto);
+            detalle.setIdPedido(pedido);
+
+            if (detalle.getCantidad() == null || detalle.getCantidad() <= 0) {
+                detalle.setCantidad(1L);
+            }
+            if (detalle.getPrecioUnitario() == null) {
+                // Solo se carga el producto si no viene el precio
+                Producto producto = productoRepository.findById(dto.getIdProducto())
+                        .orElseThrow(() -> new EntityNotFoundException(
+                                "Producto no encontrado con ID: " + dto.getIdProducto()));
+                detalle.setIdProducto(producto);
+                detalle.setPrecioUnitario(BigDecimal.valueOf(producto.getPrecio()));
+            } else {
+                detalle.setIdProducto(productoRepository.getReferenceById(dto.getIdProducto()));
+            }
+
+            detalle.setSubtotal(detalle.getPrecioUnitario().multiply(BigDecimal.valueOf(detalle.getCantidad())));
+            detalles.add(detalle);
+        }
+
+        // Con ids de secuencia e hibernate.jdbc.batch_size los INSERT van en lotes
+        detallePedidoRepository.saveAll(detalles);
+
+        Set<String> idsProductos = new LinkedHashSet<>();
+        detallesPedido.forEach(dto -> idsProductos.add(dto.getIdProducto()));
+        ajustarReserva(idPedido, idsProductos);
+        return detalles.size();
+    }
+
     @Override
     public DetallePedidoDTO update(Long id, DetallePedidoDTO detallePedidoDTO) {
         DetallePedido existingDetalle = detallePedidoRepository.findById(id)
                 .orElseThrow(() -> new EntityNotFoundException("DetallePedido no encontrado con ID: " + id));
+        bloquearPedido(existingDetalle.getIdPedido().getId());
 
         // Actualizar campos permitidos
         if (detallePedidoDTO.getCantidad() != null && detallePedidoDTO.getCantidad() > 0) {
@@ -97,15 +146,18 @@ public class DetallePedidoServiceImpl implements DetallePedidoService {
         existingDetalle.setSubtotal(subtotal);
 
         DetallePedido updatedDetalle = detallePedidoRepository.save(existingDetalle);
+        ajustarReserva(updatedDetalle.getIdPedido().getId(), List.of(updatedDetalle.getIdProducto().getIdProducto()));
         return convertToDTO(updatedDetalle);
     }
 
     @Override
     public void deleteById(Long id) {
-        if (!detallePedidoRepository.existsById(id)) {
-            throw new EntityNotFoundException("DetallePedido no encontrado con ID: " + id);
-        }
-        detallePedidoRepository.deleteById(id);
+        DetallePedido detalle = detallePedidoRepository.findById(id)
+                .orElseThrow(() -> new EntityNotFoundException("DetallePedido no encontrado con ID: " + id));
+        Long idPedido = detalle.getIdPedido().getId();
+        bloquearPedido(idPedido);
+        detallePedidoRepository.delete(detalle);
+        ajustarReserva(idPedido, List.of(detalle.getIdProducto().getIdProducto()));
     }
 
     @Override
@@ -147,14 +199,16 @@ public class DetallePedidoServiceImpl implements DetallePedidoService {
     }
 
     @Override
-    @Transactional(isolation = Isolation.SERIALIZABLE)
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public DetallePedidoDTO agregarProductoAPedido(Long idPedido, String idProducto, Long cantidad) {
         // Validar parámetros de entrada
         if (cantidad == null || cantidad <= 0) {
             throw new IllegalArgumentException("La cantidad debe ser mayor a cero");
         }
 
-        // Las operaciones son completamente atómicas
+        // La versión del pedido detecta otra transacción que agregue la misma línea;
+        // el conflicto se reintenta con ReintentoConcurrenciaService
+        bloquearPedido(idPedido);
         DetallePedido detalleExistente = detallePedidoRepository
                 .findByIdPedido_IdAndIdProducto_IdProducto(idPedido, idProducto);
 
@@ -169,6 +223,7 @@ public class DetallePedidoServiceImpl implements DetallePedidoService {
             detalleExistente.setSubtotal(subtotal);
 
             DetallePedido savedDetalle = detallePedidoRepository.save(detalleExistente);
+            ajustarReserva(idPedido, List.of(idProducto));
             return convertToDTO(savedDetalle);
         } else {
             // Crear nuevo detalle
@@ -178,7 +233,42 @@ public class DetallePedidoServiceImpl implements DetallePedidoService {
         }
     }
 
+    /**
+     * Lleva la reserva vigente del pedido a las cantidades que quedaron en sus
+     * líneas para los productos indicados, de modo que el pago pueda seguir
+     * confiando en ella. Sin reserva vigente no hace nada: el stock se valida
+     * al pagar.
+     */
+    private void ajustarReserva(Long idPedido, Collection<String> idsProductos) {
+        if (idsProductos.isEmpty() || !stockReservaService.tieneReservaVigente(idPedido)) {
+            return;
+        }
+
+        Map<String, Long> cantidades = new HashMap<>();
+        idsProductos.forEach(idProducto -> cantidades.put(idProducto, 0L));
+        for (DetallePedido detalle : detallePedidoRepository.findByIdPedido_Id(idPedido)) {
+            String idProducto = detalle.getIdProducto().getIdProducto();
+            if (cantidades.containsKey(idProducto)) {
+                cantidades.merge(idProducto, detalle.getCantidad(), Long::sum);
+            }
+        }
+
+        List<String> sinStock = stockReservaService.ajustar(idPedido, cantidades);
+        if (!sinStock.isEmpty()) {
+            throw new IllegalStateException("Stock insuficiente para reservar los productos: " + sinStock);
+        }
+    }
+
+    /**
+     * Marca el pedido para incrementar su versión al confirmar la transacción.
+     */
+    private Pedido bloquearPedido(Long idPedido) {
+        return pedidoRepository.findParaModificarLineasById(idPedido)
+                .orElseThrow(() -> new EntityNotFoundException("Pedido no encontrado con ID: " + idPedido));
+    }
+
     @Override
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public DetallePedidoDTO actualizarCantidad(Long idPedido, String idProducto, Long nuevaCantidad) {
         // Validar parámetros de entrada
         if (nuevaCantidad == null || nuevaCantidad <= 0) {
@@ -197,6 +287,7 @@ public class DetallePedidoServiceImpl implements DetallePedidoService {
     }
 
     @Override
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public void eliminarProductoDePedido(Long idPedido, String idProducto) {
         DetallePedidoDTO detalleDTO = findByPedidoAndProducto(idPedido, idProducto);
 
@@ -214,7 +305,14 @@ public class DetallePedidoServiceImpl implements DetallePedidoService {
             throw new EntityNotFoundException("Pedido no encontrado con ID: " + idPedido);
         }
 
+        Set<String> idsProductos = new LinkedHashSet<>();
+        if (stockReservaService.tieneReservaVigente(idPedido)) {
+            detallePedidoRepository.findByIdPedido_Id(idPedido)
+                    .forEach(detalle -> idsProductos.add(detalle.getIdProducto().getIdProducto()));
+        }
+
         detallePedidoRepository.deleteByIdPedido_Id(idPedido);
+        ajustarReserva(idPedido, idsProductos);
     }
 
     @Override
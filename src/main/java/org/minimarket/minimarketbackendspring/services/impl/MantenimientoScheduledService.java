@@ -2,19 +2,23 @@ package org.minimarket.minimarketbackendspring.services.impl;
 
 import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicLong;
 
-import org.minimarket.minimarketbackendspring.dtos.CarritoTemporalDto;
 import org.minimarket.minimarketbackendspring.dtos.PedidoDTO;
-import org.minimarket.minimarketbackendspring.services.interfaces.CarritoTemporalService;
+import org.minimarket.minimarketbackendspring.repositories.CarritoTemporalRepository;
+import org.minimarket.minimarketbackendspring.services.interfaces.CarritoStoreService;
 import org.minimarket.minimarketbackendspring.services.interfaces.PedidoService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
 /**
  * Servicio para tareas programadas (cron jobs) del sistema.
  * 
@@ -29,11 +33,40 @@ public class MantenimientoScheduledService {
   private static final Logger logger = LoggerFactory.getLogger(MantenimientoScheduledService.class);
 
   @Autowired
-  private CarritoTemporalService carritoService;
+  private CarritoStoreService carritoStore;
+
+  @Autowired
+  private CarritoTemporalRepository carritoRepository;
 
   @Autowired
   private PedidoService pedidoService;
 
+  @Autowired
+  private MeterRegistry meterRegistry;
+
+  @Value("${app.carrito.purga.horas-inactividad:24}")
+  private long horasInactividadCarrito;
+
+  // Limitado a 1000 por la lista IN del DELETE
+  @Value("${app.carrito.purga.bloque:500}")
+  private int tamanioBloquePurga;
+
+  // Carritos eliminados en la ejecución en curso (o la última)
+  private final AtomicLong purgaProgreso = new AtomicLong();
+
+  private Counter purgaBloques;
+  private Counter purgaCarritos;
+  private Counter purgaLineas;
+
+  @PostConstruct
+  public void registrarMetricas() {
+    tamanioBloquePurga = Math.min(Math.max(tamanioBloquePurga, 1), 1000);
+    meterRegistry.gauge("carrito.purga.progreso", purgaProgreso);
+    purgaBloques = meterRegistry.counter("carrito.purga.bloques");
+    purgaCarritos = meterRegistry.counter("carrito.purga.carritos");
+    purgaLineas = meterRegistry.counter("carrito.purga.lineas");
+  }
+
   /**
    * Limpia carritos abandonados cada 24 horas.
    * 
@@ -41,51 +74,49 @@ public class MantenimientoScheduledService {
    * modificado
    * en las últimas 24 horas. Esta tarea ayuda a mantener la base de datos limpia
    * y mejorar el rendimiento.
+   *
+   * La selección y el borrado se hacen en SQL por bloques de usuarios, cada uno
+   * en una transacción corta, sin cargar el carrito en memoria.
    */
   @Scheduled(cron = "0 0 0 * * *") // Cada 24 horas a medianoche
   public void limpiarCarritosAbandonados() {
     logger.info("Iniciando limpieza de carritos abandonados...");
 
-    try {
-      // Obtener todos los carritos
-      List<CarritoTemporalDto> todosLosCarritos = carritoService.findAll();
-      int carritosEliminados = 0;
-
-      LocalDateTime hace24Horas = LocalDateTime.now().minusHours(24);
-
-      // Agrupar por usuario para encontrar la fecha más reciente de cada carrito
-      Map<String, List<CarritoTemporalDto>> carritosPorUsuario = todosLosCarritos.stream()
-          .collect(Collectors.groupingBy(CarritoTemporalDto::getIdUsuario));
-
-      for (Map.Entry<String, List<CarritoTemporalDto>> entry : carritosPorUsuario.entrySet()) {
-        String idUsuario = entry.getKey();
-        List<CarritoTemporalDto> itemsDelUsuario = entry.getValue();
-
-        // Encontrar la fecha más reciente del carrito del usuario
-        LocalDateTime fechaMasReciente = itemsDelUsuario.stream()
-            .map(CarritoTemporalDto::getFechaAgregado)
-            .filter(fecha -> fecha != null)
-            .max(LocalDateTime::compareTo)
-            .orElse(null);
+    LocalDateTime corte = LocalDateTime.now().minusHours(horasInactividadCarrito);
+    int carritosEliminados = 0;
+    int lineasEliminadas = 0;
+    purgaProgreso.set(0);
 
-        // Si la fecha más reciente es anterior a 24 horas, eliminar todo el carrito
-        if (fechaMasReciente != null && fechaMasReciente.isBefore(hace24Horas)) {
-          try {
-            carritoService.vaciarCarrito(idUsuario);
-            carritosEliminados++;
-            logger.debug("Carrito completo eliminado para usuario: {} (último item: {})",
-                idUsuario, fechaMasReciente);
-          } catch (Exception e) {
-            logger.warn("Error al eliminar carrito abandonado del usuario {}: {}",
-                idUsuario, e.getMessage());
-          }
+    try {
+      // Los cambios en memoria deben estar en la tabla antes de evaluarla
+      carritoStore.persistirPendientes();
+
+      String ultimoUsuario = null;
+      while (true) {
+        CarritoStoreService.ResultadoPurga bloque = carritoStore.purgarAbandonados(corte, ultimoUsuario,
+            tamanioBloquePurga);
+        if (bloque.ultimoUsuario() == null) {
+          break;
         }
+
+        ultimoUsuario = bloque.ultimoUsuario();
+        carritosEliminados += bloque.usuarios();
+        lineasEliminadas += bloque.lineas();
+        purgaProgreso.set(carritosEliminados);
+        purgaBloques.increment();
+        purgaCarritos.increment(bloque.usuarios());
+        purgaLineas.increment(bloque.lineas());
+        logger.debug("Bloque de carritos abandonados purgado hasta {}: {} carritos, {} líneas",
+            ultimoUsuario, bloque.usuarios(), bloque.lineas());
       }
 
-      logger.info("Limpieza completada. {} carritos abandonados eliminados", carritosEliminados);
+      logger.info("Limpieza completada. {} carritos abandonados eliminados ({} líneas)", carritosEliminados,
+          lineasEliminadas);
 
     } catch (Exception e) {
-      logger.error("Error durante la limpieza de carritos abandonados: {}", e.getMessage());
+      // Los bloques ya confirmados se conservan; el resto se purga en la siguiente ejecución
+      logger.error("Error durante la limpieza de carritos abandonados tras {} carritos: {}", carritosEliminados,
+          e.getMessage(), e);
     }
   }
 
@@ -141,9 +172,9 @@ public class MantenimientoScheduledService {
     logger.info("Generando reporte de estado del sistema...");
 
     try {
-      // Contar carritos activos
-      List<CarritoTemporalDto> carritosActivos = carritoService.findAll();
-      int totalCarritos = carritosActivos.size();
+      // Contar carritos activos (líneas en CARRITO_TEMPORAL)
+      carritoStore.persistirPendientes();
+      long totalCarritos = carritoRepository.count();
 
       // Contar pedidos por estado
       long pedidosSolicitados = pedidoService.countByEstado("solicitado");
@@ -0,0 +1,107 @@
+package org.minimarket.minimarketbackendspring.services.impl;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.minimarket.minimarketbackendspring.repositories.PedidoRepository;
+import org.minimarket.minimarketbackendspring.services.interfaces.PedidoActivoIndexService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.google.common.cache.CacheBuilder;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Implementación del índice de pedidos activos por usuario.
+ *
+ * Los usuarios se guardan en un LRU acotado y se cargan sin tomar locks
+ * mientras se consulta la base de datos. Para no perder un cambio confirmado
+ * durante la carga, cada cambio avanza primero un contador de su franja de
+ * usuarios y después se aplica a lo cargado; la carga lee el contador antes
+ * de consultar y, tras guardar su resultado, lo descarta si el contador
+ * cambió. Así el cambio se aplica sobre lo guardado o la próxima consulta
+ * vuelve a leer el estado confirmado.
+ */
+@Service
+public class PedidoActivoIndexServiceImpl implements PedidoActivoIndexService {
+
+    private static final int NUMERO_FRANJAS = 64;
+
+    @Autowired
+    private PedidoRepository pedidoRepository;
+
+    @Value("${app.pedido.activos.cache-max:10000}")
+    private long maximoUsuarios;
+
+    // idUsuario -> ids de sus pedidos activos (vacío si no tiene)
+    private ConcurrentMap<String, Set<Long>> activosPorUsuario;
+
+    // Cambios registrados por franja de usuarios
+    private final AtomicLongArray cambios = new AtomicLongArray(NUMERO_FRANJAS);
+
+    @PostConstruct
+    public void inicializar() {
+        activosPorUsuario = CacheBuilder.newBuilder()
+                .maximumSize(maximoUsuarios)
+                .<String, Set<Long>>build()
+                .asMap();
+    }
+
+    @Override
+    public boolean tienePedidoActivo(String idUsuario) {
+        Set<Long> activos = activosPorUsuario.get(idUsuario);
+        if (activos != null) {
+            return !activos.isEmpty();
+        }
+
+        int franja = franja(idUsuario);
+        long cambiosAntes = cambios.get(franja);
+        Set<Long> cargados = ConcurrentHashMap.newKeySet();
+        cargados.addAll(pedidoRepository.findIdsByUsuarioAndEstadoIn(idUsuario, ESTADOS_ACTIVOS));
+
+        Set<Long> existentes = activosPorUsuario.putIfAbsent(idUsuario, cargados);
+        if (existentes != null) {
+            return !existentes.isEmpty();
+        }
+        if (cambios.get(franja) != cambiosAntes) {
+            // Un cambio pudo confirmarse después de la consulta sin llegar a lo guardado
+            activosPorUsuario.remove(idUsuario, cargados);
+        }
+        return !cargados.isEmpty();
+    }
+
+    @Override
+    public void registrarEstado(String idUsuario, Long idPedido, String estado) {
+        if (idUsuario == null || idPedido == null) {
+            return;
+        }
+
+        cambios.incrementAndGet(franja(idUsuario));
+        // Si el usuario no está cargado, la próxima consulta leerá el estado confirmado
+        activosPorUsuario.computeIfPresent(idUsuario, (id, activos) -> {
+            if (ESTADOS_ACTIVOS.contains(estado)) {
+                activos.add(idPedido);
+            } else {
+                activos.remove(idPedido);
+            }
+            return activos;
+        });
+    }
+
+    @Override
+    public void quitarPedido(Long idPedido) {
+        // No se sabe de qué usuario es: cualquier carga en curso se descarta
+        for (int franja = 0; franja < NUMERO_FRANJAS; franja++) {
+            cambios.incrementAndGet(franja);
+        }
+        activosPorUsuario.values().forEach(activos -> activos.remove(idPedido));
+    }
+
+    private int franja(String idUsuario) {
+        return Math.floorMod(idUsuario.hashCode(), NUMERO_FRANJAS);
+    }
+}
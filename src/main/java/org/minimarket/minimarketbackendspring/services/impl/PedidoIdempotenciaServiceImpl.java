@@ -0,0 +1,282 @@
+package org.minimarket.minimarketbackendspring.services.impl;
+
+import java.time.Duration;
+import java.time.OffsetDateTime;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+import org.minimarket.minimarketbackendspring.dtos.PedidoDTO;
+import org.minimarket.minimarketbackendspring.entities.PedidoIdempotencia;
+import org.minimarket.minimarketbackendspring.repositories.PedidoIdempotenciaRepository;
+import org.minimarket.minimarketbackendspring.services.interfaces.PedidoIdempotenciaService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.UnexpectedRollbackException;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Implementación de la idempotencia de creación de pedidos.
+ *
+ * Se resuelve en tres niveles: un LRU acotado con las respuestas recientes,
+ * un mapa de solicitudes en curso en esta instancia (los duplicados esperan
+ * el mismo {@link CompletableFuture}) y la tabla PEDIDO_IDEMPOTENCIA, donde
+ * la primera inserción de la clave gana entre instancias.
+ *
+ * Un reclamo sin respuesta (la instancia murió a mitad de la solicitud) se
+ * puede tomar cuando vence. La respuesta solo se guarda si el reclamo sigue
+ * siendo del mismo intento, así que el intento desplazado se revierte en vez
+ * de crear un segundo pedido. La clave solo se libera si la transacción
+ * seguro no se confirmó; si el commit falla con resultado desconocido queda
+ * reclamada hasta que venza.
+ */
+@Service
+public class PedidoIdempotenciaServiceImpl implements PedidoIdempotenciaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(PedidoIdempotenciaServiceImpl.class);
+
+    private static final int LONGITUD_MAXIMA_CLAVE = 100;
+
+    @Autowired
+    private PedidoIdempotenciaRepository pedidoIdempotenciaRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.pedido.idempotencia.ttl-horas:24}")
+    private long ttlHoras;
+
+    @Value("${app.pedido.idempotencia.cache-max:10000}")
+    private long maximoEnCache;
+
+    @Value("${app.pedido.idempotencia.reclamo-vence-segundos:120}")
+    private long reclamoVenceSegundos;
+
+    // Solicitudes que se están procesando en esta instancia
+    private final Map<String, CompletableFuture<RespuestaGuardada>> enCurso = new ConcurrentHashMap<>();
+
+    private Cache<String, RespuestaGuardada> recientes;
+
+    private TransactionTemplate transaccion;
+
+    // Transacción independiente para reclamar y liberar la clave
+    private TransactionTemplate transaccionNueva;
+
+    private Counter repeticiones;
+
+    private record RespuestaGuardada(String idUsuario, PedidoDTO pedido) {
+    }
+
+    @PostConstruct
+    public void inicializar() {
+        recientes = CacheBuilder.newBuilder()
+                .maximumSize(maximoEnCache)
+                .expireAfterWrite(Duration.ofHours(ttlHoras))
+                .build();
+
+        transaccion = new TransactionTemplate(transactionManager);
+        transaccion.setIsolationLevel(TransactionDefinition.ISOLATION_READ_COMMITTED);
+        transaccionNueva = new TransactionTemplate(transactionManager);
+        transaccionNueva.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+        meterRegistry.gauge("pedido.idempotencia.en_curso", enCurso, Map::size);
+        repeticiones = meterRegistry.counter("pedido.idempotencia.repeticiones");
+    }
+
+    @Override
+    public PedidoDTO ejecutar(String clave, String idUsuario, Supplier<PedidoDTO> operacion) {
+        if (clave == null || clave.isBlank() || clave.length() > LONGITUD_MAXIMA_CLAVE) {
+            throw new IllegalArgumentException(
+                    "La clave de idempotencia debe tener entre 1 y " + LONGITUD_MAXIMA_CLAVE + " caracteres");
+        }
+
+        RespuestaGuardada guardada = recientes.getIfPresent(clave);
+        if (guardada != null) {
+            repeticiones.increment();
+            return verificarUsuario(guardada, idUsuario);
+        }
+
+        CompletableFuture<RespuestaGuardada> propia = new CompletableFuture<>();
+        CompletableFuture<RespuestaGuardada> existente = enCurso.putIfAbsent(clave, propia);
+        if (existente != null) {
+            repeticiones.increment();
+            return verificarUsuario(esperar(existente), idUsuario);
+        }
+
+        try {
+            RespuestaGuardada resultado = procesar(clave, idUsuario, operacion);
+            // Guardar antes de quitarla de en curso para que no haya hueco entre ambos
+            recientes.put(clave, resultado);
+            propia.complete(resultado);
+            return verificarUsuario(resultado, idUsuario);
+        } catch (RuntimeException e) {
+            propia.completeExceptionally(e);
+            throw e;
+        } finally {
+            enCurso.remove(clave, propia);
+        }
+    }
+
+    /**
+     * Elimina las claves vencidas de la tabla.
+     */
+    @Scheduled(fixedDelayString = "${app.pedido.idempotencia.purga-ms:3600000}")
+    public void purgarVencidas() {
+        OffsetDateTime limite = OffsetDateTime.now().minusHours(ttlHoras);
+        Integer eliminadas = transaccion.execute(
+                status -> pedidoIdempotenciaRepository.deleteByCreatedAtBefore(limite));
+        if (eliminadas != null && eliminadas > 0) {
+            logger.info("Claves de idempotencia vencidas eliminadas: {}", eliminadas);
+        }
+    }
+
+    private RespuestaGuardada procesar(String clave, String idUsuario, Supplier<PedidoDTO> operacion) {
+        String propietario = UUID.randomUUID().toString();
+        if (!reclamar(clave, idUsuario, propietario)) {
+            // Otra solicitud (de esta u otra instancia) insertó la clave primero
+            PedidoIdempotencia registro = pedidoIdempotenciaRepository.findById(clave).orElse(null);
+            if (registro == null) {
+                // La otra solicitud falló y liberó la clave entretanto
+                if (!reclamar(clave, idUsuario, propietario)) {
+                    throw new IllegalStateException("La solicitud con esta clave de idempotencia aún se está procesando");
+                }
+            } else if (registro.getRespuesta() != null) {
+                repeticiones.increment();
+                return new RespuestaGuardada(registro.getIdUsuario(), leer(registro.getRespuesta()));
+            } else if (!registro.getIdUsuario().equals(idUsuario)) {
+                throw new IllegalArgumentException("La clave de idempotencia ya fue usada por otro usuario");
+            } else if (!tomarReclamoVencido(clave, propietario)) {
+                throw new IllegalStateException("La solicitud con esta clave de idempotencia aún se está procesando");
+            }
+        }
+
+        AtomicBoolean operacionTerminada = new AtomicBoolean(false);
+        try {
+            // El pedido y su respuesta se confirman juntos
+            return transaccion.execute(status -> {
+                PedidoDTO pedido = operacion.get();
+                if (pedidoIdempotenciaRepository.guardarRespuesta(clave, propietario, pedido.getId(),
+                        escribir(pedido)) == 0) {
+                    throw new IllegalStateException(
+                            "Otra solicitud tomó la clave de idempotencia por vencimiento del reclamo");
+                }
+                operacionTerminada.set(true);
+                return new RespuestaGuardada(idUsuario, pedido);
+            });
+        } catch (RuntimeException e) {
+            if (!operacionTerminada.get() || revertidaConCerteza(e)) {
+                // Liberar la clave para que un reintento pueda procesarse
+                transaccionNueva.executeWithoutResult(
+                        status -> pedidoIdempotenciaRepository.liberar(clave, propietario));
+            } else {
+                logger.warn("Resultado incierto al confirmar el pedido con clave {}; queda reclamada hasta que venza",
+                        clave);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Inserta la clave en su propia transacción.
+     *
+     * @return true si esta solicitud insertó la clave
+     */
+    private boolean reclamar(String clave, String idUsuario, String propietario) {
+        try {
+            transaccionNueva.executeWithoutResult(status -> pedidoIdempotenciaRepository
+                    .saveAndFlush(new PedidoIdempotencia(clave, idUsuario, propietario, OffsetDateTime.now())));
+            return true;
+        } catch (DataIntegrityViolationException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Toma en su propia transacción un reclamo sin respuesta que ya venció.
+     *
+     * @return true si esta solicitud tomó el reclamo
+     */
+    private boolean tomarReclamoVencido(String clave, String propietario) {
+        OffsetDateTime ahora = OffsetDateTime.now();
+        Integer tomados = transaccionNueva.execute(status -> pedidoIdempotenciaRepository
+                .tomarReclamoVencido(clave, propietario, ahora, ahora.minusSeconds(reclamoVenceSegundos)));
+        if (tomados != null && tomados > 0) {
+            logger.warn("Reclamo vencido de la clave de idempotencia {} tomado por un reintento", clave);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Indica si una falla al confirmar implica que la transacción no se
+     * confirmó: el flush previo al commit falló o estaba marcada para revertir.
+     * Cualquier otra falla del commit (p. ej. conexión perdida) es incierta.
+     */
+    private boolean revertidaConCerteza(RuntimeException e) {
+        return e instanceof UnexpectedRollbackException
+                || e instanceof OptimisticLockingFailureException
+                || e instanceof DataIntegrityViolationException;
+    }
+
+    private PedidoDTO verificarUsuario(RespuestaGuardada guardada, String idUsuario) {
+        if (!guardada.idUsuario().equals(idUsuario)) {
+            throw new IllegalArgumentException("La clave de idempotencia ya fue usada por otro usuario");
+        }
+        return guardada.pedido();
+    }
+
+    private RespuestaGuardada esperar(CompletableFuture<RespuestaGuardada> enProceso) {
+        try {
+            return enProceso.join();
+        } catch (CompletionException e) {
+            // Propagar el mismo error que recibió la solicitud original
+            if (e.getCause() instanceof RuntimeException causa) {
+                throw causa;
+            }
+            throw e;
+        }
+    }
+
+    private String escribir(PedidoDTO pedido) {
+        try {
+            return objectMapper.writeValueAsString(pedido);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo guardar la respuesta del pedido " + pedido.getId(), e);
+        }
+    }
+
+    private PedidoDTO leer(String respuesta) {
+        try {
+            return objectMapper.readValue(respuesta, PedidoDTO.class);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("No se pudo leer la respuesta guardada del pedido", e);
+        }
+    }
+}
@@ -2,7 +2,11 @@ package org.minimarket.minimarketbackendspring.services.impl;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.time.LocalDate;
 import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -11,20 +15,27 @@ import org.minimarket.minimarketbackendspring.dtos.CarritoTemporalDto;
 import org.minimarket.minimarketbackendspring.dtos.DetallePedidoDTO;
 import org.minimarket.minimarketbackendspring.dtos.PedidoDTO;
 import org.minimarket.minimarketbackendspring.entities.Pedido;
-import org.minimarket.minimarketbackendspring.entities.Producto;
 import org.minimarket.minimarketbackendspring.entities.Usuario;
+import org.minimarket.minimarketbackendspring.repositories.DetallePedidoRepository;
 import org.minimarket.minimarketbackendspring.repositories.PedidoRepository;
-import org.minimarket.minimarketbackendspring.repositories.ProductoRepository;
 import org.minimarket.minimarketbackendspring.repositories.UsuarioRepository;
 import org.minimarket.minimarketbackendspring.services.interfaces.CarritoTemporalService;
 import org.minimarket.minimarketbackendspring.services.interfaces.DescuentoPromocionService;
 import org.minimarket.minimarketbackendspring.services.interfaces.DetallePedidoService;
+import org.minimarket.minimarketbackendspring.services.interfaces.PedidoActivoIndexService;
 import org.minimarket.minimarketbackendspring.services.interfaces.PedidoService;
+import org.minimarket.minimarketbackendspring.services.interfaces.StockReservaService;
 import org.minimarket.minimarketbackendspring.services.interfaces.StockValidationService;
+import org.minimarket.minimarketbackendspring.utils.TransaccionUtils;
+import org.minimarket.minimarketbackendspring.utils.VersionesPorClave;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.annotation.PostConstruct;
 import jakarta.persistence.EntityNotFoundException;
 
 /**
@@ -43,7 +54,7 @@ public class PedidoServiceImpl implements PedidoService {
     private UsuarioRepository usuarioRepository;
 
     @Autowired
-    private ProductoRepository productoRepository;
+    private DetallePedidoRepository detallePedidoRepository;
 
     @Autowired
     private DetallePedidoService detallePedidoService;
@@ -57,6 +68,23 @@ public class PedidoServiceImpl implements PedidoService {
     @Autowired
     private StockValidationService stockValidationService;
 
+    @Autowired
+    private StockReservaService stockReservaService;
+
+    @Autowired
+    private PedidoActivoIndexService pedidoActivoIndexService;
+
+    @Value("${app.pedido.versiones.max-usuarios:100000}")
+    private long maximoUsuariosVersionados;
+
+    // Versión de los pedidos de cada usuario, para respuestas condicionales
+    private VersionesPorClave versionesPedidos;
+
+    @PostConstruct
+    public void inicializar() {
+        versionesPedidos = new VersionesPorClave(maximoUsuariosVersionados);
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<PedidoDTO> findAll() {
@@ -106,6 +134,7 @@ public class PedidoServiceImpl implements PedidoService {
         pedido.setUpdatedBy(usuario);
 
         Pedido savedPedido = pedidoRepository.save(pedido);
+        registrarEstadoEnIndice(savedPedido);
         return convertToDTO(savedPedido);
     }
 
@@ -132,19 +161,24 @@ public class PedidoServiceImpl implements PedidoService {
         Usuario updatedByUser = usuarioRepository.findById(idUsuario).orElse(null);
         existingPedido.setUpdatedBy(updatedByUser);
 
-        Pedido updatedPedido = pedidoRepository.save(existingPedido);
-
-        actualizarTotalesPedido(id);
+        aplicarTotales(existingPedido, detallePedidoRepository.sumSubtotalByPedidoId(id));
 
-        return convertToDTO(pedidoRepository.findById(id).orElse(updatedPedido));
+        Pedido updatedPedido = pedidoRepository.save(existingPedido);
+        registrarEstadoEnIndice(updatedPedido);
+        return convertToDTO(updatedPedido);
     }
 
     @Override
     public void deleteById(Long id) {
-        if (!pedidoRepository.existsById(id)) {
-            throw new EntityNotFoundException("Pedido no encontrado con ID: " + id);
+        Pedido pedido = pedidoRepository.findById(id)
+                .orElseThrow(() -> new EntityNotFoundException("Pedido no encontrado con ID: " + id));
+        pedidoRepository.delete(pedido);
+        TransaccionUtils.despuesDeCommit(() -> pedidoActivoIndexService.quitarPedido(id));
+        // Un pedido eliminado no debe seguir reteniendo stock hasta que venza su reserva
+        TransaccionUtils.despuesDeCommit(() -> stockReservaService.liberar(id));
+        if (pedido.getIdUsuario() != null) {
+            registrarCambioPedidos(pedido.getIdUsuario().getIdUsuario());
         }
-        pedidoRepository.deleteById(id);
     }
 
     @Override
@@ -158,6 +192,17 @@ public class PedidoServiceImpl implements PedidoService {
         return convertToDTOList(pedidos);
     }
 
+    @Override
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
+    public String versionPedidos(String idUsuario) {
+        return VersionesPorClave.ARRANQUE + "-" + versionesPedidos.obtener(idUsuario);
+    }
+
+    @Override
+    public void registrarCambioPedidos(String idUsuario) {
+        TransaccionUtils.despuesDeCommit(() -> versionesPedidos.avanzar(idUsuario));
+    }
+
     @Override
     @Transactional(readOnly = true)
     public List<PedidoDTO> findByEstado(String estado) {
@@ -195,20 +240,31 @@ public class PedidoServiceImpl implements PedidoService {
         // Validar que la transición de estado sea permitida según reglas de negocio
         validarTransicionEstado(pedido.getEstado(), nuevoEstado);
 
-        // **VALIDACIÓN CRÍTICA**: Verificar stock antes de marcar como pagado
-        if ("pagado".equals(nuevoEstado) && !"pagado".equals(pedido.getEstado())) {
+        // **VALIDACIÓN CRÍTICA**: Verificar stock antes de marcar como pagado.
+        // Un pedido con reserva vigente ya tiene su stock apartado: la reserva
+        // sigue a las líneas del pedido y el descuento no toma unidades
+        // reservadas por otros pedidos.
+        if ("pagado".equals(nuevoEstado) && !"pagado".equals(pedido.getEstado())
+                && !stockReservaService.tieneReservaVigente(id)) {
             validarStockAntesDePago(id);
         }
 
         // **PUNTO CRÍTICO**: Actualizar stock cuando el pedido se marca como pagado
         if ("pagado".equals(nuevoEstado) && !"pagado".equals(pedido.getEstado())) {
             actualizarStockPorPagoDePedido(id);
+            // El stock ya se descontó: la reserva deja de contarse al confirmar
+            TransaccionUtils.despuesDeCommit(() -> stockReservaService.confirmar(id));
+        }
+
+        if ("cancelado".equals(nuevoEstado)) {
+            TransaccionUtils.despuesDeCommit(() -> stockReservaService.liberar(id));
         }
 
         pedido.setEstado(nuevoEstado);
         pedido.setUpdatedAt(OffsetDateTime.now());
 
         Pedido updatedPedido = pedidoRepository.save(pedido);
+        registrarEstadoEnIndice(updatedPedido);
         return convertToDTO(updatedPedido);
     }
 
@@ -218,6 +274,7 @@ public class PedidoServiceImpl implements PedidoService {
      * Este es el método principal para el flujo de compra del usuario.
      */
     @Override
+    @Transactional(isolation = Isolation.READ_COMMITTED)
     public PedidoDTO crearPedidoDesdeCarrito(String idUsuario, String createdBy) {
         Usuario usuario = usuarioRepository.findById(idUsuario)
                 .orElseThrow(() -> new EntityNotFoundException("Usuario no encontrado con ID: " + idUsuario));
@@ -235,7 +292,7 @@ public class PedidoServiceImpl implements PedidoService {
 
         // **VALIDACIÓN CRÍTICA**: Verificar que hay stock suficiente antes de crear el
         // pedido
-        Map<String, Long> problemasStock = stockValidationService.validarStockCarrito(idUsuario);
+        Map<String, Long> problemasStock = stockValidationService.validarStockItemsCarrito(itemsCarrito);
         if (!problemasStock.isEmpty()) {
             // Limpiar carrito de productos sin stock
             stockValidationService.limpiarCarritoPorStockInsuficiente(idUsuario, problemasStock);
@@ -274,16 +331,23 @@ public class PedidoServiceImpl implements PedidoService {
         // PROCESO PRINCIPAL: Crear detalles del pedido aplicando descuentos
         // automáticamente
         BigDecimal totalDescuentosAplicados = BigDecimal.ZERO;
+        List<DetallePedidoDTO> detalles = new ArrayList<>(itemsCarrito.size());
 
+        // Resolver descuentos vigentes de todo el carrito en una sola consulta
+        Map<String, BigDecimal> preciosOriginales = new HashMap<>();
         for (CarritoTemporalDto item : itemsCarrito) {
-            DetallePedidoDTO detalle = new DetallePedidoDTO();
+            preciosOriginales.put(item.getIdProducto(), BigDecimal.valueOf(item.getIdProductoPrecio()));
+        }
+        Map<String, BigDecimal> preciosConDescuento = descuentoService.calcularPreciosConDescuento(
+                preciosOriginales, LocalDate.now());
 
-            // Obtener precio original del producto
-            BigDecimal precioOriginal = BigDecimal.valueOf(item.getIdProductoPrecio());
+        for (CarritoTemporalDto item : itemsCarrito) {
+            DetallePedidoDTO detalle = new DetallePedidoDTO();
+            detalle.setIdProducto(item.getIdProducto());
 
-            // Aplicar descuentos vigentes para este producto (si existen)
-            BigDecimal precioConDescuento = descuentoService.calcularPrecioConDescuento(
-                    item.getIdProducto(), precioOriginal);
+            // Precio original y precio con el mejor descuento vigente (si existe)
+            BigDecimal precioOriginal = preciosOriginales.get(item.getIdProducto());
+            BigDecimal precioConDescuento = preciosConDescuento.getOrDefault(item.getIdProducto(), precioOriginal);
 
             // Calcular y acumular descuentos aplicados para auditoria
             BigDecimal descuentoItem = precioOriginal.subtract(precioConDescuento);
@@ -295,21 +359,36 @@ public class PedidoServiceImpl implements PedidoService {
             detalle.setCantidad(item.getCantidad());
             detalle.setSubtotal(precioConDescuento.multiply(cantidadBD).setScale(2, RoundingMode.HALF_UP));
 
-            // Guardar detalle en la base de datos
-            detallePedidoService.save(detalle, savedPedido.getId(), item.getIdProducto());
+            detalles.add(detalle);
+        }
+
+        // Guardar todos los detalles en un solo lote
+        detallePedidoService.saveAll(savedPedido.getId(), detalles);
+
+        // Reservar el stock del pedido hasta que se pague o venza la reserva
+        Map<String, Long> cantidadesPorProducto = new LinkedHashMap<>();
+        for (CarritoTemporalDto item : itemsCarrito) {
+            cantidadesPorProducto.merge(item.getIdProducto(), item.getCantidad(), Long::sum);
+        }
+        List<String> sinReserva = stockReservaService.reservar(savedPedido.getId(), cantidadesPorProducto);
+        if (!sinReserva.isEmpty()) {
+            throw new IllegalStateException("Stock insuficiente para reservar los productos: " + sinReserva);
         }
 
-        // Actualizar pedido con total de descuentos aplicados
+        // Actualizar pedido con total de descuentos aplicados y totales finales
+        // (subtotal + impuesto del 18%) a partir de los detalles recién armados.
+        // savedPedido está gestionado: los cambios se escriben al confirmar.
+        BigDecimal subtotal = detalles.stream()
+                .map(DetallePedidoDTO::getSubtotal)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
         savedPedido.setDescuentoAplicado(totalDescuentosAplicados.setScale(2, RoundingMode.HALF_UP));
-        pedidoRepository.save(savedPedido);
+        aplicarTotales(savedPedido, subtotal);
 
         // Vaciar carrito SOLO después de crear detalles exitosamente
         carritoService.vaciarCarrito(idUsuario);
 
-        // Calcular totales finales (subtotal + impuesto del 18%)
-        actualizarTotalesPedido(savedPedido.getId());
-
-        return convertToDTO(pedidoRepository.findById(savedPedido.getId()).orElse(savedPedido));
+        registrarEstadoEnIndice(savedPedido);
+        return convertToDTO(savedPedido);
     }
 
     /**
@@ -321,26 +400,28 @@ public class PedidoServiceImpl implements PedidoService {
         Pedido pedido = pedidoRepository.findById(idPedido)
                 .orElseThrow(() -> new EntityNotFoundException("Pedido no encontrado con ID: " + idPedido));
 
-        // Obtener todos los detalles del pedido
-        List<DetallePedidoDTO> detalles = detallePedidoService.findByPedidoId(idPedido);
+        // Subtotal calculado por la base de datos con una sola consulta SUM
+        aplicarTotales(pedido, detallePedidoRepository.sumSubtotalByPedidoId(idPedido));
 
-        // Calcular subtotal sumando todos los subtotales de detalles (ya incluyen IGV)
-        BigDecimal subtotal = detalles.stream()
-                .map(DetallePedidoDTO::getSubtotal)
-                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        pedidoRepository.save(pedido);
+        if (pedido.getIdUsuario() != null) {
+            registrarCambioPedidos(pedido.getIdUsuario().getIdUsuario());
+        }
+    }
 
-        // Extraer IGV incluido: IGV = subtotal * 0.18 / 1.18
+    /**
+     * Asigna total e impuesto al pedido a partir del subtotal de sus detalles.
+     * Los subtotales ya incluyen IGV: se extrae como subtotal * 0.18 / 1.18.
+     */
+    private void aplicarTotales(Pedido pedido, BigDecimal subtotal) {
         BigDecimal impuesto = subtotal.multiply(BigDecimal.valueOf(0.18))
                 .divide(BigDecimal.valueOf(1.18), 2, RoundingMode.HALF_UP);
         // El total es igual al subtotal (ya incluye IGV)
         BigDecimal total = subtotal.setScale(2, RoundingMode.HALF_UP);
 
-        // Actualizar campos calculados
         pedido.setTotal(total);
         pedido.setImpuesto(impuesto);
         pedido.setUpdatedAt(OffsetDateTime.now());
-
-        pedidoRepository.save(pedido);
     }
 
     @Override
@@ -360,6 +441,7 @@ public class PedidoServiceImpl implements PedidoService {
 
         pedido.setEstado("cancelado");
         pedido.setUpdatedAt(OffsetDateTime.now());
+        TransaccionUtils.despuesDeCommit(() -> stockReservaService.liberar(idPedido));
 
         // Registrar quien realizó la cancelación
         if (updatedBy != null) {
@@ -368,6 +450,7 @@ public class PedidoServiceImpl implements PedidoService {
         }
 
         pedidoRepository.save(pedido);
+        registrarEstadoEnIndice(pedido);
     }
 
     @Override
@@ -398,11 +481,10 @@ public class PedidoServiceImpl implements PedidoService {
      * completado).
      */
     @Override
-    @Transactional(readOnly = true)
+    @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
     public boolean existePedidoActivoParaUsuario(String idUsuario) {
-        return pedidoRepository.existsByIdUsuario_IdUsuarioAndEstado(idUsuario, "solicitado")
-                || pedidoRepository.existsByIdUsuario_IdUsuarioAndEstado(idUsuario, "pendiente_pago")
-                || pedidoRepository.existsByIdUsuario_IdUsuarioAndEstado(idUsuario, "pagado");
+        // Se resuelve en memoria; solo la primera consulta del usuario va a la BD
+        return pedidoActivoIndexService.tienePedidoActivo(idUsuario);
     }
 
     /**
@@ -429,9 +511,24 @@ public class PedidoServiceImpl implements PedidoService {
         }
 
         Pedido updatedPedido = pedidoRepository.save(pedido);
+        registrarEstadoEnIndice(updatedPedido);
         return convertToDTO(updatedPedido);
     }
 
+    /**
+     * Actualiza el índice de pedidos activos y la versión de los pedidos del
+     * usuario cuando la transacción se confirme.
+     */
+    private void registrarEstadoEnIndice(Pedido pedido) {
+        String idUsuario = pedido.getIdUsuario() != null ? pedido.getIdUsuario().getIdUsuario() : null;
+        Long idPedido = pedido.getId();
+        String estado = pedido.getEstado();
+        TransaccionUtils.despuesDeCommit(() -> pedidoActivoIndexService.registrarEstado(idUsuario, idPedido, estado));
+        if (idUsuario != null) {
+            registrarCambioPedidos(idUsuario);
+        }
+    }
+
     /**
      * Convierte entidad Pedido a DTO incluyendo datos del usuario.
      */
@@ -583,9 +680,11 @@ public class PedidoServiceImpl implements PedidoService {
                 return;
             }
 
-            // Devolver stock sumando las cantidades de vuelta
-            for (DetallePedidoDTO detalle : detallesPedido) {
-                devolverStockProducto(detalle.getIdProducto(), detalle.getCantidad());
+            // Devolver stock sumando las cantidades de vuelta (un solo lote)
+            List<String> noRepuestos = stockValidationService.reponerStock(detallesPedido);
+            if (!noRepuestos.isEmpty()) {
+                System.err.println("Productos no encontrados al devolver stock del pedido " + idPedido + ": "
+                        + noRepuestos);
             }
 
             System.out.println("Stock devuelto exitosamente para el pedido cancelado: " + idPedido);
@@ -596,25 +695,4 @@ public class PedidoServiceImpl implements PedidoService {
             // No lanzar excepción para que la cancelación continúe
         }
     }
-
-    /**
-     * Devuelve stock de un producto específico.
-     */
-    private void devolverStockProducto(String idProducto, Long cantidadADevolver) {
-        try {
-            // Usar el ProductoRepository directamente para devolver stock
-            Producto producto = productoRepository.findById(idProducto)
-                    .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado: " + idProducto));
-
-            Long nuevoStock = producto.getStock() + cantidadADevolver;
-            producto.setStock(nuevoStock);
-            productoRepository.save(producto);
-
-            System.out.println("Stock devuelto para producto " + idProducto + ": +" + cantidadADevolver
-                    + " (nuevo stock: " + nuevoStock + ")");
-
-        } catch (Exception e) {
-            System.err.println("Error al devolver stock del producto " + idProducto + ": " + e.getMessage());
-        }
-    }
 }
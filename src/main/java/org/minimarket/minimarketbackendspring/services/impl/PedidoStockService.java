@@ -1,5 +1,6 @@
 package org.minimarket.minimarketbackendspring.services.impl;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -48,7 +49,7 @@ public class PedidoStockService {
       }
 
       // 2. Validar stock para todos los productos
-      Map<String, Long> problemasStock = stockValidationService.validarStockCarrito(idUsuario);
+      Map<String, Long> problemasStock = stockValidationService.validarStockItemsCarrito(itemsCarrito);
 
       if (!problemasStock.isEmpty()) {
         StringBuilder mensaje = new StringBuilder("Stock insuficiente para: ");
@@ -58,14 +59,16 @@ public class PedidoStockService {
         throw new IllegalStateException(mensaje.toString());
       }
 
-      // 3. Crear detalles del pedido
+      // 3. Crear detalles del pedido en un solo lote
+      List<DetallePedidoDTO> detalles = new ArrayList<>(itemsCarrito.size());
       for (CarritoTemporalDto item : itemsCarrito) {
         DetallePedidoDTO detalleDTO = new DetallePedidoDTO();
+        detalleDTO.setIdProducto(item.getIdProducto());
         detalleDTO.setCantidad(item.getCantidad());
         // El precio se establecerá automáticamente desde el producto
-
-        detallePedidoService.save(detalleDTO, idPedido, item.getIdProducto());
+        detalles.add(detalleDTO);
       }
+      detallePedidoService.saveAll(idPedido, detalles);
 
       // 4. Limpiar carrito temporal
       carritoService.vaciarCarrito(idUsuario);
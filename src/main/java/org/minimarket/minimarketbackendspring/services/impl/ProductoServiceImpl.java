@@ -1,7 +1,9 @@
 package org.minimarket.minimarketbackendspring.services.impl;
 
 import java.util.List;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -12,7 +14,12 @@ import org.minimarket.minimarketbackendspring.entities.Proveedor;
 import org.minimarket.minimarketbackendspring.repositories.CategoriaRepository;
 import org.minimarket.minimarketbackendspring.repositories.ProductoRepository;
 import org.minimarket.minimarketbackendspring.repositories.ProveedorRepository;
+import org.minimarket.minimarketbackendspring.services.interfaces.CarritoStoreService;
 import org.minimarket.minimarketbackendspring.services.interfaces.ProductoService;
+import org.minimarket.minimarketbackendspring.services.interfaces.StockLedgerService;
+import org.minimarket.minimarketbackendspring.services.interfaces.TablaPreciosService;
+import org.minimarket.minimarketbackendspring.services.interfaces.TablaPreciosService.PrecioVigente;
+import org.minimarket.minimarketbackendspring.utils.TransaccionUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
@@ -33,14 +40,24 @@ public class ProductoServiceImpl implements ProductoService {
     @Autowired
     private ProveedorRepository proveedorRepository;
 
+    @Autowired
+    private StockLedgerService stockLedgerService;
+
+    @Autowired
+    private TablaPreciosService tablaPrecios;
+
+    @Autowired
+    private CarritoStoreService carritoStore;
+
     /**
-     * Convierte una entidad Producto a ProductoDTO.
+     * Convierte una entidad Producto a ProductoDTO, con el precio vigente de la
+     * tabla de precios.
      *
      * @param p la entidad Producto
      * @return
      */
     public ProductoDTO convertToDTO(Producto p) {
-        return new ProductoDTO(
+        ProductoDTO dto = new ProductoDTO(
                 p.getIdProducto(),
                 p.getNombre(),
                 p.getDescripcion(),
@@ -57,6 +74,13 @@ public class ProductoServiceImpl implements ProductoService {
                 p.getIdCategoria() != null ? p.getIdCategoria().getId() : null, // ID para inserción
                 p.getIdProveedor() != null ? p.getIdProveedor().getId() : null // ID para inserción
         );
+
+        PrecioVigente precio = tablaPrecios.obtener(p.getIdProducto());
+        if (precio != null) {
+            dto.setPrecioConDescuento(precio.precioFinal());
+            dto.setPorcentajeDescuento(precio.porcentaje());
+        }
+        return dto;
     }
 
     /**
@@ -166,6 +190,8 @@ public class ProductoServiceImpl implements ProductoService {
         }
 
         productoRepository.save(p);
+        tablaPrecios.registrarCambioProducto(p.getIdProducto());
+        TransaccionUtils.despuesDeCommit(() -> stockLedgerService.sincronizarProducto(p.getIdProducto()));
     }
 
     /**
@@ -179,6 +205,7 @@ public class ProductoServiceImpl implements ProductoService {
                 .orElseThrow(() -> new EntityNotFoundException(
                         "Producto no encontrado con ID: " + producto.getIdProducto()));
 
+        boolean cambioNombre = !Objects.equals(p.getNombre(), producto.getNombre());
         p.setNombre(producto.getNombre());
         p.setDescripcion(producto.getDescripcion());
         p.setPrecio(producto.getPrecio());
@@ -205,6 +232,12 @@ public class ProductoServiceImpl implements ProductoService {
         p.setIdProveedor(proveedor);
 
         productoRepository.save(p);
+        tablaPrecios.registrarCambioProducto(p.getIdProducto());
+        TransaccionUtils.despuesDeCommit(() -> stockLedgerService.sincronizarProducto(p.getIdProducto()));
+        if (cambioNombre) {
+            // Los carritos muestran el nombre; los cambios de precio llegan por la tabla de precios
+            TransaccionUtils.despuesDeCommit(() -> carritoStore.avanzarVersiones(Set.of(p.getIdProducto())));
+        }
     }
 
     /**
@@ -218,6 +251,7 @@ public class ProductoServiceImpl implements ProductoService {
                 .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado con ID: " + id));
         producto.setEstado("inactivo");
         productoRepository.save(producto);
+        tablaPrecios.registrarCambioProducto(id);
     }
 
     /**
@@ -0,0 +1,83 @@
+package org.minimarket.minimarketbackendspring.services.impl;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import org.minimarket.minimarketbackendspring.services.interfaces.ReintentoConcurrenciaService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/**
+ * Implementación del ejecutor con reintentos.
+ *
+ * La espera entre intentos crece de forma exponencial y se le suma un valor
+ * aleatorio para que las solicitudes en conflicto no vuelvan a chocar al mismo
+ * tiempo. Se publican por operación las ejecuciones, los conflictos, los
+ * reintentos y los reintentos agotados.
+ */
+@Service
+public class ReintentoConcurrenciaServiceImpl implements ReintentoConcurrenciaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReintentoConcurrenciaServiceImpl.class);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.concurrencia.reintentos.max-intentos:3}")
+    private int maxIntentos;
+
+    @Value("${app.concurrencia.reintentos.espera-ms:25}")
+    private long esperaBaseMs;
+
+    @Override
+    public <T> T ejecutar(String operacion, Supplier<T> accion) {
+        meterRegistry.counter("concurrencia.ejecuciones", "operacion", operacion).increment();
+
+        // Dentro de una transacción ajena reintentar no sirve: ya quedó marcada para revertir
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return accion.get();
+        }
+
+        for (int intento = 1;; intento++) {
+            try {
+                return accion.get();
+            } catch (OptimisticLockingFailureException e) {
+                meterRegistry.counter("concurrencia.conflictos", "operacion", operacion).increment();
+                if (intento >= maxIntentos) {
+                    meterRegistry.counter("concurrencia.reintentos.agotados", "operacion", operacion).increment();
+                    logger.warn("Conflicto de concurrencia en {} tras {} intentos", operacion, intento);
+                    throw e;
+                }
+
+                meterRegistry.counter("concurrencia.reintentos", "operacion", operacion).increment();
+                esperar(intento, e);
+            }
+        }
+    }
+
+    @Override
+    public void ejecutar(String operacion, Runnable accion) {
+        ejecutar(operacion, () -> {
+            accion.run();
+            return null;
+        });
+    }
+
+    private void esperar(int intento, OptimisticLockingFailureException conflicto) {
+        long espera = esperaBaseMs * (1L << (intento - 1));
+        espera += ThreadLocalRandom.current().nextLong(esperaBaseMs + 1);
+        try {
+            Thread.sleep(espera);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw conflicto;
+        }
+    }
+}
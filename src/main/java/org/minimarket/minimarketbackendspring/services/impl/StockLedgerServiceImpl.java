@@ -0,0 +1,373 @@
+package org.minimarket.minimarketbackendspring.services.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+import org.minimarket.minimarketbackendspring.daos.interfaces.StockDAO;
+import org.minimarket.minimarketbackendspring.services.interfaces.StockLedgerService;
+import org.minimarket.minimarketbackendspring.utils.TransaccionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.util.concurrent.Striped;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+
+/**
+ * Implementación del ledger de stock en memoria.
+ *
+ * Las lecturas son lecturas directas de un {@link AtomicLong}, sin bloqueo.
+ * Los descuentos toman los locks de sus productos (agrupados en franjas) para
+ * validar y aplicar todo el pedido de forma atómica. Mientras su transacción
+ * sigue abierta una variación queda "en curso"; al confirmarse pasa a
+ * pendiente y un proceso programado escribe las pendientes en PRODUCTOS en un
+ * solo lote; al apagar la aplicación se escribe lo pendiente.
+ */
+@Service
+public class StockLedgerServiceImpl implements StockLedgerService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockLedgerServiceImpl.class);
+
+    private static final int NUMERO_FRANJAS = 64;
+
+    @Autowired
+    private StockDAO stockDAO;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.stock.ledger.enabled:true}")
+    private boolean habilitado;
+
+    // Stock disponible según el ledger (incluye variaciones aún no persistidas)
+    private final Map<String, AtomicLong> stockPorProducto = new ConcurrentHashMap<>();
+
+    // Variaciones confirmadas pendientes de escribir en PRODUCTOS
+    private final Map<String, AtomicLong> variacionesPendientes = new ConcurrentHashMap<>();
+
+    // Variaciones aplicadas al ledger cuya transacción aún no termina
+    private final Map<String, AtomicLong> variacionesEnCurso = new ConcurrentHashMap<>();
+
+    private final Striped<Lock> locks = Striped.lock(NUMERO_FRANJAS);
+
+    // Serializa la escritura de pendientes con la sincronización y la revisión de drift
+    private final Object lockPersistencia = new Object();
+
+    private final AtomicLong productosConDrift = new AtomicLong();
+    private final AtomicLong unidadesDrift = new AtomicLong();
+
+    private volatile boolean cargado = false;
+
+    private Counter erroresPersistencia;
+
+    @PostConstruct
+    public void registrarMetricas() {
+        meterRegistry.gauge("stock.ledger.productos", stockPorProducto, Map::size);
+        meterRegistry.gauge("stock.ledger.pendientes", variacionesPendientes,
+                pendientes -> pendientes.values().stream().filter(v -> v.get() != 0).count());
+        meterRegistry.gauge("stock.ledger.drift.productos", productosConDrift);
+        meterRegistry.gauge("stock.ledger.drift.unidades", unidadesDrift);
+        erroresPersistencia = meterRegistry.counter("stock.ledger.persistencia.errores");
+    }
+
+    /**
+     * Carga el stock de todos los productos una vez iniciada la aplicación.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargar() {
+        if (!habilitado) {
+            logger.info("Ledger de stock deshabilitado; se consultará la base de datos");
+            return;
+        }
+
+        Map<String, Long> stockActual = stockDAO.findAllStock();
+        stockActual.forEach((idProducto, stock) -> stockPorProducto.put(idProducto, new AtomicLong(stock)));
+        cargado = true;
+
+        logger.info("Ledger de stock cargado con {} productos", stockActual.size());
+    }
+
+    @Override
+    public boolean estaCargado() {
+        return cargado;
+    }
+
+    @Override
+    public Long obtenerStock(String idProducto) {
+        if (!cargado || idProducto == null) {
+            return null;
+        }
+        AtomicLong stock = stockPorProducto.get(idProducto);
+        return stock != null ? stock.get() : null;
+    }
+
+    @Override
+    public List<String> descontar(Map<String, Long> cantidadesPorProducto, Map<String, Long> reservadoPorProducto) {
+        verificarCargado();
+
+        List<String> rechazados = new ArrayList<>();
+        Iterable<Lock> locksProductos = locks.bulkGet(cantidadesPorProducto.keySet());
+        bloquear(locksProductos);
+        try {
+            for (Map.Entry<String, Long> entry : cantidadesPorProducto.entrySet()) {
+                AtomicLong stock = stockPorProducto.get(entry.getKey());
+                long reservado = reservadoPorProducto.getOrDefault(entry.getKey(), 0L);
+                if (stock == null || stock.get() - reservado < entry.getValue()) {
+                    rechazados.add(entry.getKey());
+                }
+            }
+
+            if (!rechazados.isEmpty()) {
+                return rechazados;
+            }
+
+            cantidadesPorProducto.forEach((idProducto, cantidad) -> {
+                stockPorProducto.get(idProducto).addAndGet(-cantidad);
+                acumular(variacionesEnCurso, idProducto, -cantidad);
+            });
+        } finally {
+            desbloquear(locksProductos);
+        }
+
+        Map<String, Long> variaciones = new HashMap<>();
+        cantidadesPorProducto.forEach((idProducto, cantidad) -> variaciones.put(idProducto, -cantidad));
+        registrarVariaciones(variaciones);
+
+        return rechazados;
+    }
+
+    @Override
+    public List<String> reponer(Map<String, Long> cantidadesPorProducto) {
+        verificarCargado();
+
+        List<String> desconocidos = new ArrayList<>();
+        Map<String, Long> variaciones = new HashMap<>();
+
+        // Sumar stock nunca invalida un descuento en curso; el lock solo hace
+        // atómico el paso por las variaciones en curso frente a una sincronización
+        cantidadesPorProducto.forEach((idProducto, cantidad) -> {
+            AtomicLong stock = stockPorProducto.get(idProducto);
+            if (stock == null) {
+                desconocidos.add(idProducto);
+            } else {
+                conLock(idProducto, () -> {
+                    stock.addAndGet(cantidad);
+                    acumular(variacionesEnCurso, idProducto, cantidad);
+                });
+                variaciones.put(idProducto, cantidad);
+            }
+        });
+
+        registrarVariaciones(variaciones);
+        return desconocidos;
+    }
+
+    @Override
+    public void sincronizarProducto(String idProducto) {
+        if (!cargado || idProducto == null) {
+            return;
+        }
+
+        synchronized (lockPersistencia) {
+            // Se lee bajo lockPersistencia: lo ya escrito de las pendientes está
+            // en la base de datos y lo que queda en el mapa todavía no
+            Long stockPersistido = stockDAO.findStockByIds(List.of(idProducto)).get(idProducto);
+            if (stockPersistido == null) {
+                return;
+            }
+
+            Lock lock = locks.get(idProducto);
+            lock.lock();
+            try {
+                // Las variaciones pendientes y las que están en curso (si se
+                // confirman) se aplicarán sobre el valor persistido
+                long valor = stockPersistido + valor(variacionesPendientes, idProducto)
+                        + valor(variacionesEnCurso, idProducto);
+                stockPorProducto.computeIfAbsent(idProducto, id -> new AtomicLong()).set(valor);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    @Override
+    public int persistirPendientes() {
+        synchronized (lockPersistencia) {
+            Map<String, Long> lote = new HashMap<>();
+            variacionesPendientes.forEach((idProducto, variacion) -> {
+                long valor = variacion.getAndSet(0L);
+                if (valor != 0L) {
+                    lote.put(idProducto, valor);
+                }
+            });
+
+            if (lote.isEmpty()) {
+                return 0;
+            }
+
+            try {
+                List<String> inexistentes = transactionTemplate.execute(status -> stockDAO.ajustarStock(lote));
+                if (inexistentes != null && !inexistentes.isEmpty()) {
+                    logger.warn("Productos inexistentes al persistir stock, se descartan: {}", inexistentes);
+                    inexistentes.forEach(stockPorProducto::remove);
+                    return lote.size() - inexistentes.size();
+                }
+                return lote.size();
+            } catch (RuntimeException e) {
+                // Se reintentará en la siguiente ejecución
+                lote.forEach((idProducto, variacion) -> acumular(variacionesPendientes, idProducto, variacion));
+                erroresPersistencia.increment();
+                logger.error("Error al persistir stock del ledger: {}", e.getMessage(), e);
+                return 0;
+            }
+        }
+    }
+
+    /**
+     * Escribe las variaciones pendientes en PRODUCTOS periódicamente.
+     */
+    @Scheduled(fixedDelayString = "${app.stock.ledger.flush-ms:1000}")
+    public void persistirPendientesProgramado() {
+        if (cargado) {
+            persistirPendientes();
+        }
+    }
+
+    /**
+     * Compara el ledger contra PRODUCTOS y publica la diferencia como métricas.
+     *
+     * Los pedidos que se están pagando en ese momento pueden aparecer como drift
+     * transitorio. Los productos creados fuera de la aplicación se incorporan al
+     * ledger.
+     */
+    @Scheduled(fixedDelayString = "${app.stock.ledger.drift-ms:300000}")
+    public void revisarDrift() {
+        if (!cargado) {
+            return;
+        }
+
+        synchronized (lockPersistencia) {
+            Map<String, Long> stockBaseDatos = stockDAO.findAllStock();
+            long productos = 0;
+            long unidades = 0;
+
+            for (Map.Entry<String, Long> entry : stockBaseDatos.entrySet()) {
+                AtomicLong stock = stockPorProducto.putIfAbsent(entry.getKey(), new AtomicLong(entry.getValue()));
+                if (stock == null) {
+                    continue;
+                }
+
+                long esperado = entry.getValue() + valor(variacionesPendientes, entry.getKey())
+                        + valor(variacionesEnCurso, entry.getKey());
+                long diferencia = stock.get() - esperado;
+                if (diferencia != 0) {
+                    productos++;
+                    unidades += Math.abs(diferencia);
+                }
+            }
+
+            productosConDrift.set(productos);
+            unidadesDrift.set(unidades);
+
+            if (productos > 0) {
+                logger.warn("Ledger de stock con drift en {} productos ({} unidades)", productos, unidades);
+            }
+        }
+    }
+
+    /**
+     * Escribe lo pendiente antes de apagar la aplicación.
+     */
+    @PreDestroy
+    public void alApagar() {
+        if (cargado) {
+            int productos = persistirPendientes();
+            logger.info("Ledger de stock persistido al apagar: {} productos", productos);
+        }
+    }
+
+    /**
+     * Al terminar la transacción saca las variaciones de las que están en
+     * curso y las acumula como pendientes si se confirma, o las deshace en
+     * memoria si se revierte. Cada producto se mueve bajo su lock para que una
+     * sincronización no lo vea en los dos mapas ni en ninguno.
+     */
+    private void registrarVariaciones(Map<String, Long> variaciones) {
+        if (variaciones.isEmpty()) {
+            return;
+        }
+
+        TransaccionUtils.alFinalizar(
+                () -> variaciones.forEach((idProducto, variacion) -> conLock(idProducto, () -> {
+                    acumular(variacionesEnCurso, idProducto, -variacion);
+                    acumular(variacionesPendientes, idProducto, variacion);
+                })),
+                () -> variaciones.forEach((idProducto, variacion) -> conLock(idProducto, () -> {
+                    acumular(variacionesEnCurso, idProducto, -variacion);
+                    AtomicLong stock = stockPorProducto.get(idProducto);
+                    if (stock != null) {
+                        stock.addAndGet(-variacion);
+                    }
+                })));
+    }
+
+    private void conLock(String idProducto, Runnable accion) {
+        Lock lock = locks.get(idProducto);
+        lock.lock();
+        try {
+            accion.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static void acumular(Map<String, AtomicLong> variaciones, String idProducto, long variacion) {
+        variaciones.computeIfAbsent(idProducto, id -> new AtomicLong()).addAndGet(variacion);
+    }
+
+    private static long valor(Map<String, AtomicLong> variaciones, String idProducto) {
+        AtomicLong variacion = variaciones.get(idProducto);
+        return variacion != null ? variacion.get() : 0L;
+    }
+
+    private void verificarCargado() {
+        if (!cargado) {
+            throw new IllegalStateException("El ledger de stock no está cargado");
+        }
+    }
+
+    private void bloquear(Iterable<Lock> locksProductos) {
+        // bulkGet devuelve los locks en un orden fijo, lo que evita interbloqueos
+        for (Lock lock : locksProductos) {
+            lock.lock();
+        }
+    }
+
+    private void desbloquear(Iterable<Lock> locksProductos) {
+        List<Lock> inverso = new ArrayList<>();
+        locksProductos.forEach(inverso::add);
+        Collections.reverse(inverso);
+        for (Lock lock : inverso) {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package org.minimarket.minimarketbackendspring.services.impl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.minimarket.minimarketbackendspring.daos.interfaces.StockDAO;
+import org.minimarket.minimarketbackendspring.services.interfaces.StockLedgerService;
+import org.minimarket.minimarketbackendspring.services.interfaces.StockReservaService;
+import org.minimarket.minimarketbackendspring.utils.RuedaExpiracion;
+import org.minimarket.minimarketbackendspring.utils.TransaccionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Implementación de las reservas temporales de stock.
+ *
+ * Los vencimientos se controlan con una {@link RuedaExpiracion} que avanza
+ * cada segundo; no se recorre la lista de reservas ni la base de datos.
+ */
+@Service
+public class StockReservaServiceImpl implements StockReservaService {
+
+    private static final Logger logger = LoggerFactory.getLogger(StockReservaServiceImpl.class);
+
+    private static final int NUMERO_RANURAS = 1024;
+    private static final long DURACION_TICK_MS = 1000L;
+
+    @Autowired
+    private StockLedgerService stockLedgerService;
+
+    @Autowired
+    private StockDAO stockDAO;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${app.stock.reserva.ttl-minutos:15}")
+    private long ttlMinutos;
+
+    // Reservas vigentes: idPedido -> (idProducto -> cantidad)
+    private final Map<Long, Map<String, Long>> reservasPorPedido = new ConcurrentHashMap<>();
+
+    // Total reservado por producto, leído sin bloqueo en las validaciones
+    private final Map<String, AtomicLong> reservadoPorProducto = new ConcurrentHashMap<>();
+
+    private final RuedaExpiracion<Long> rueda = new RuedaExpiracion<>(NUMERO_RANURAS, DURACION_TICK_MS,
+            System.currentTimeMillis());
+
+    @PostConstruct
+    public void registrarMetricas() {
+        meterRegistry.gauge("stock.reservas.activas", reservasPorPedido, Map::size);
+    }
+
+    @Override
+    public synchronized List<String> reservar(Long idPedido, Map<String, Long> cantidadesPorProducto) {
+        Map<String, Long> stockFisico = obtenerStockFisico(cantidadesPorProducto.keySet());
+
+        List<String> rechazados = new ArrayList<>();
+        cantidadesPorProducto.forEach((idProducto, cantidad) -> {
+            Long stock = stockFisico.get(idProducto);
+            if (stock == null || stock - cantidadReservada(idProducto) < cantidad) {
+                rechazados.add(idProducto);
+            }
+        });
+
+        if (!rechazados.isEmpty()) {
+            return rechazados;
+        }
+
+        Map<String, Long> reserva = new HashMap<>(cantidadesPorProducto);
+        reserva.forEach(this::sumarReservado);
+        reservasPorPedido.put(idPedido, reserva);
+        rueda.programar(idPedido, System.currentTimeMillis() + Duration.ofMinutes(ttlMinutos).toMillis());
+
+        // Si el pedido no llega a crearse, la reserva no debe quedar colgada
+        TransaccionUtils.alFinalizar(() -> {
+        }, () -> liberar(idPedido));
+
+        return rechazados;
+    }
+
+    @Override
+    public synchronized List<String> ajustar(Long idPedido, Map<String, Long> cantidadesPorProducto) {
+        List<String> rechazados = new ArrayList<>();
+        Map<String, Long> reserva = reservasPorPedido.get(idPedido);
+        if (reserva == null) {
+            return rechazados;
+        }
+
+        // Solo los aumentos necesitan stock disponible
+        Map<String, Long> aumentos = new HashMap<>();
+        cantidadesPorProducto.forEach((idProducto, cantidad) -> {
+            long aumento = cantidad - reserva.getOrDefault(idProducto, 0L);
+            if (aumento > 0) {
+                aumentos.put(idProducto, aumento);
+            }
+        });
+
+        if (!aumentos.isEmpty()) {
+            Map<String, Long> stockFisico = obtenerStockFisico(aumentos.keySet());
+            aumentos.forEach((idProducto, aumento) -> {
+                Long stock = stockFisico.get(idProducto);
+                if (stock == null || stock - cantidadReservada(idProducto) < aumento) {
+                    rechazados.add(idProducto);
+                }
+            });
+            if (!rechazados.isEmpty()) {
+                return rechazados;
+            }
+        }
+
+        Map<String, Long> anteriores = new HashMap<>();
+        cantidadesPorProducto.forEach((idProducto, cantidad) -> {
+            anteriores.put(idProducto, reserva.getOrDefault(idProducto, 0L));
+            fijarCantidad(reserva, idProducto, cantidad);
+        });
+
+        // Si las líneas no llegan a cambiar, la reserva vuelve a las cantidades anteriores
+        TransaccionUtils.alFinalizar(() -> {
+        }, () -> restaurar(idPedido, reserva, anteriores));
+
+        return rechazados;
+    }
+
+    @Override
+    public boolean tieneReservaVigente(Long idPedido) {
+        return reservasPorPedido.containsKey(idPedido);
+    }
+
+    @Override
+    public void confirmar(Long idPedido) {
+        quitarReserva(idPedido);
+    }
+
+    @Override
+    public void liberar(Long idPedido) {
+        if (quitarReserva(idPedido)) {
+            logger.info("Reserva de stock liberada para el pedido {}", idPedido);
+        }
+    }
+
+    @Override
+    public long cantidadReservada(String idProducto) {
+        AtomicLong reservado = reservadoPorProducto.get(idProducto);
+        return reservado != null ? reservado.get() : 0L;
+    }
+
+    @Override
+    public synchronized Map<String, Long> cantidadesReservadasPorOtros(Long idPedido,
+            Collection<String> idsProductos) {
+        Map<String, Long> propia = idPedido != null ? reservasPorPedido.get(idPedido) : null;
+        Map<String, Long> reservadoPorOtros = new HashMap<>();
+        for (String idProducto : idsProductos) {
+            long reservado = cantidadReservada(idProducto)
+                    - (propia != null ? propia.getOrDefault(idProducto, 0L) : 0L);
+            if (reservado > 0) {
+                reservadoPorOtros.put(idProducto, reservado);
+            }
+        }
+        return reservadoPorOtros;
+    }
+
+    /**
+     * Libera las reservas vencidas.
+     */
+    @Scheduled(fixedRate = DURACION_TICK_MS)
+    public void liberarVencidas() {
+        liberarVencidas(System.currentTimeMillis());
+    }
+
+    /**
+     * Libera las reservas vencidas hasta el instante indicado.
+     *
+     * @param ahoraMs instante actual en milisegundos
+     */
+    public void liberarVencidas(long ahoraMs) {
+        for (Long idPedido : rueda.avanzar(ahoraMs)) {
+            if (quitarReserva(idPedido)) {
+                logger.info("Reserva de stock vencida para el pedido {}", idPedido);
+            }
+        }
+    }
+
+    private synchronized boolean quitarReserva(Long idPedido) {
+        Map<String, Long> reserva = reservasPorPedido.remove(idPedido);
+        rueda.cancelar(idPedido);
+        if (reserva == null) {
+            return false;
+        }
+
+        reserva.forEach((idProducto, cantidad) -> sumarReservado(idProducto, -cantidad));
+        return true;
+    }
+
+    /**
+     * Vuelve a las cantidades anteriores a un ajuste revertido, salvo que la
+     * reserva ya se haya liberado o reemplazado.
+     */
+    private synchronized void restaurar(Long idPedido, Map<String, Long> reserva, Map<String, Long> anteriores) {
+        if (reservasPorPedido.get(idPedido) != reserva) {
+            return;
+        }
+        anteriores.forEach((idProducto, cantidad) -> fijarCantidad(reserva, idProducto, cantidad));
+    }
+
+    /**
+     * Fija la cantidad reservada de un producto en la reserva de un pedido y
+     * refleja la diferencia en el total del producto. Requiere el monitor.
+     */
+    private void fijarCantidad(Map<String, Long> reserva, String idProducto, long cantidad) {
+        Long anterior = cantidad > 0 ? reserva.put(idProducto, cantidad) : reserva.remove(idProducto);
+        sumarReservado(idProducto, cantidad - (anterior != null ? anterior : 0L));
+    }
+
+    /**
+     * Suma (o resta) unidades al total reservado de un producto. Requiere el
+     * monitor.
+     */
+    private void sumarReservado(String idProducto, long unidades) {
+        if (unidades == 0) {
+            return;
+        }
+        AtomicLong reservado = reservadoPorProducto.computeIfAbsent(idProducto, id -> new AtomicLong());
+        if (reservado.addAndGet(unidades) <= 0) {
+            reservadoPorProducto.remove(idProducto);
+        }
+    }
+
+    /**
+     * Stock físico desde el ledger, consultando la base de datos solo por los
+     * productos que éste no conoce.
+     */
+    private Map<String, Long> obtenerStockFisico(Collection<String> idsProductos) {
+        Map<String, Long> stock = new HashMap<>();
+        List<String> sinLedger = new ArrayList<>();
+        for (String idProducto : idsProductos) {
+            Long valor = stockLedgerService.obtenerStock(idProducto);
+            if (valor != null) {
+                stock.put(idProducto, valor);
+            } else {
+                sinLedger.add(idProducto);
+            }
+        }
+
+        if (!sinLedger.isEmpty()) {
+            stock.putAll(stockDAO.findStockByIds(sinLedger));
+        }
+        return stock;
+    }
+}
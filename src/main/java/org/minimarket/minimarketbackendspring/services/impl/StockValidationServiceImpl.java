@@ -1,22 +1,35 @@
 package org.minimarket.minimarketbackendspring.services.impl;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
+import org.minimarket.minimarketbackendspring.daos.interfaces.StockDAO;
 import org.minimarket.minimarketbackendspring.dtos.CarritoTemporalDto;
 import org.minimarket.minimarketbackendspring.dtos.DetallePedidoDTO;
 import org.minimarket.minimarketbackendspring.entities.Producto;
 import org.minimarket.minimarketbackendspring.repositories.ProductoRepository;
+import org.minimarket.minimarketbackendspring.services.interfaces.CarritoStoreService;
 import org.minimarket.minimarketbackendspring.services.interfaces.CarritoTemporalService;
+import org.minimarket.minimarketbackendspring.services.interfaces.StockLedgerService;
+import org.minimarket.minimarketbackendspring.services.interfaces.StockReservaService;
 import org.minimarket.minimarketbackendspring.services.interfaces.StockValidationService;
+import org.minimarket.minimarketbackendspring.utils.TransaccionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.core.task.TaskExecutor;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
-import jakarta.persistence.EntityNotFoundException;
-
 /**
  * Implementación del servicio de validación de stock.
  * 
@@ -27,96 +40,113 @@ import jakarta.persistence.EntityNotFoundException;
 @Transactional
 public class StockValidationServiceImpl implements StockValidationService {
 
+  private static final Logger logger = LoggerFactory.getLogger(StockValidationServiceImpl.class);
+
   @Autowired
   private ProductoRepository productoRepository;
 
   @Autowired
   private CarritoTemporalService carritoService;
 
+  @Autowired
+  private StockDAO stockDAO;
+
+  @Autowired
+  private StockLedgerService stockLedgerService;
+
+  @Autowired
+  private StockReservaService stockReservaService;
+
+  @Autowired
+  private CarritoStoreService carritoStore;
+
+  // Ejecutor de tareas de Spring Boot (spring.task.execution.*)
+  @Autowired
+  @Qualifier("applicationTaskExecutor")
+  private TaskExecutor tareasExecutor;
+
   @Override
   @Transactional(readOnly = true)
   public Map<String, Long> validarStockCarrito(String idUsuario) {
-    Map<String, Long> problemasStock = new HashMap<>();
-
-    List<CarritoTemporalDto> items = carritoService.findByUsuario(idUsuario);
+    return validarStockItemsCarrito(carritoService.findByUsuario(idUsuario));
+  }
 
+  @Override
+  @Transactional(readOnly = true)
+  public Map<String, Long> validarStockItemsCarrito(List<CarritoTemporalDto> items) {
+    Map<String, Long> cantidades = new LinkedHashMap<>();
     for (CarritoTemporalDto item : items) {
-      if (!tieneStockSuficiente(item.getIdProducto(), item.getCantidad())) {
-        Producto producto = productoRepository.findById(item.getIdProducto())
-            .orElse(null);
-
-        if (producto != null) {
-          problemasStock.put(item.getIdProducto(), producto.getStock());
-        } else {
-          problemasStock.put(item.getIdProducto(), 0L);
-        }
+      cantidades.merge(item.getIdProducto(), item.getCantidad(), Long::sum);
+    }
+    return validarStock(cantidades);
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public Map<String, Long> validarStockPedido(List<DetallePedidoDTO> detallesPedido) {
+    return validarStock(agruparCantidadesPorProducto(detallesPedido));
+  }
+
+  @Override
+  @Transactional(readOnly = true)
+  public Map<String, Long> obtenerStockActual(Collection<String> idsProductos) {
+    Map<String, Long> stockActual = new HashMap<>();
+    List<String> sinLedger = new ArrayList<>();
+
+    // Lo que conoce el ledger se resuelve en memoria; el resto, en una consulta
+    for (String idProducto : idsProductos) {
+      Long stock = stockLedgerService.obtenerStock(idProducto);
+      if (stock != null) {
+        stockActual.put(idProducto, stock);
+      } else {
+        sinLedger.add(idProducto);
       }
     }
 
-    return problemasStock;
+    if (!sinLedger.isEmpty()) {
+      stockActual.putAll(stockDAO.findStockByIds(sinLedger));
+    }
+
+    // Disponible = stock físico menos lo reservado por pedidos vigentes
+    stockActual.replaceAll((idProducto, stock) -> stock - stockReservaService.cantidadReservada(idProducto));
+    return stockActual;
   }
 
   @Override
   @Transactional(readOnly = true)
-  public Map<String, Long> validarStockPedido(List<DetallePedidoDTO> detallesPedido) {
+  public Map<String, Long> validarStock(Map<String, Long> cantidadesPorProducto) {
     Map<String, Long> problemasStock = new HashMap<>();
 
-    for (DetallePedidoDTO detalle : detallesPedido) {
-      if (!tieneStockSuficiente(detalle.getIdProducto(), detalle.getCantidad())) {
-        Producto producto = productoRepository.findById(detalle.getIdProducto())
-            .orElse(null);
-
-        if (producto != null) {
-          problemasStock.put(detalle.getIdProducto(), producto.getStock());
-        } else {
-          problemasStock.put(detalle.getIdProducto(), 0L);
-        }
+    // Una sola consulta para todos los productos, luego se valida en memoria
+    Map<String, Long> stockActual = obtenerStockActual(cantidadesPorProducto.keySet());
+
+    cantidadesPorProducto.forEach((idProducto, cantidad) -> {
+      Long stock = stockActual.get(idProducto);
+      long disponible = stock != null ? stock : 0L;
+
+      if (stock == null || disponible < cantidad) {
+        problemasStock.put(idProducto, disponible);
       }
-    }
+    });
 
     return problemasStock;
   }
 
   @Override
   public int limpiarProductoDeCarritos(String idProducto) {
-    // Obtener todos los carritos que contienen este producto
-    List<CarritoTemporalDto> carritosAfectados = carritoService.findByProducto(idProducto);
-
-    // Eliminar el producto de todos los carritos
-    for (CarritoTemporalDto item : carritosAfectados) {
-      carritoService.eliminarProductoDelCarrito(item.getIdUsuario(), idProducto);
+    // Un solo DELETE por producto; se obtienen los usuarios para notificarlos
+    Set<String> usuariosAfectados = carritoStore.quitarProducto(idProducto);
+    if (!usuariosAfectados.isEmpty()) {
+      logger.info("Producto {} retirado por falta de stock de {} carritos: {}", idProducto,
+          usuariosAfectados.size(), usuariosAfectados);
     }
-
-    return carritosAfectados.size();
+    return usuariosAfectados.size();
   }
 
   @Override
   public List<String> limpiarCarritoPorStockInsuficiente(String idUsuario, Map<String, Long> stockInsuficiente) {
-    List<String> productosEliminados = stockInsuficiente.entrySet().stream()
-        .map(entry -> {
-          String idProducto = entry.getKey();
-          Long stockDisponible = entry.getValue();
-
-          // Si no hay stock disponible, eliminar completamente
-          if (stockDisponible <= 0) {
-            carritoService.eliminarProductoDelCarrito(idUsuario, idProducto);
-            return idProducto;
-          } else {
-            // Si hay stock pero insuficiente, ajustar cantidad
-            try {
-              carritoService.actualizarCantidad(idUsuario, idProducto, stockDisponible);
-              return null; // No eliminado, solo ajustado
-            } catch (Exception e) {
-              // Si hay error al ajustar, eliminar
-              carritoService.eliminarProductoDelCarrito(idUsuario, idProducto);
-              return idProducto;
-            }
-          }
-        })
-        .filter(idProducto -> idProducto != null)
-        .collect(Collectors.toList());
-
-    return productosEliminados;
+    // Quitados y reducidos se calculan en memoria y se aplican en un solo lote
+    return carritoService.ajustarCarritoAStock(idUsuario, stockInsuficiente);
   }
 
   @Override
@@ -129,44 +159,84 @@ public class StockValidationServiceImpl implements StockValidationService {
 
   @Override
   public boolean procesarVentaYActualizarStock(List<DetallePedidoDTO> detallesPedido) {
-    // 1. Validar que todos los productos tengan stock suficiente
-    Map<String, Long> problemasStock = validarStockPedido(detallesPedido);
-
-    if (!problemasStock.isEmpty()) {
+    // 1. Agrupar cantidades por producto (un pedido puede repetir producto)
+    Map<String, Long> cantidadesPorProducto = agruparCantidadesPorProducto(detallesPedido);
+
+    // 2. Descontar stock sin tomar las unidades reservadas por otros pedidos;
+    // la reserva propia sí se consume. Con el ledger cargado se valida y
+    // descuenta en memoria de forma atómica y la escritura en PRODUCTOS se
+    // difiere hasta el commit. Sin ledger se usan actualizaciones condicionales
+    // (STOCK >= cantidad + reservado) en un solo lote, por lo que dos pagos
+    // concurrentes no pueden sobrevender.
+    Long idPedido = detallesPedido.isEmpty() ? null : detallesPedido.get(0).getIdPedidoId();
+    Map<String, Long> reservadoPorOtros = stockReservaService.cantidadesReservadasPorOtros(idPedido,
+        cantidadesPorProducto.keySet());
+    boolean usarLedger = stockLedgerService.estaCargado();
+    List<String> rechazados = usarLedger
+        ? stockLedgerService.descontar(cantidadesPorProducto, reservadoPorOtros)
+        : stockDAO.descontarStock(cantidadesPorProducto, reservadoPorOtros);
+
+    if (!rechazados.isEmpty()) {
+      // La excepción revierte también los descuentos que sí se aplicaron
+      Map<String, Long> stockActual = obtenerStockActual(rechazados);
       StringBuilder mensaje = new StringBuilder("Stock insuficiente para: ");
-      problemasStock.forEach((idProducto, stockDisponible) -> {
-        mensaje.append(idProducto).append(" (disponible: ").append(stockDisponible).append("), ");
-      });
+      for (String idProducto : rechazados) {
+        mensaje.append(idProducto).append(" (disponible: ")
+            .append(stockActual.getOrDefault(idProducto, 0L)).append("), ");
+      }
       throw new IllegalStateException(mensaje.toString());
     }
 
-    // 2. Actualizar stock de todos los productos
-    try {
-      for (DetallePedidoDTO detalle : detallesPedido) {
-        actualizarStockProducto(detalle.getIdProducto(), detalle.getCantidad());
-      }
+    // 3. Limpiar carritos de los productos que se agotaron. Se hace después del
+    // commit y fuera del hilo del cliente que paga: si la venta se revierte no
+    // hay nada que limpiar y la limpieza no alarga su transacción.
+    Set<String> vendidos = new HashSet<>(cantidadesPorProducto.keySet());
+    TransaccionUtils.despuesDeCommit(() -> tareasExecutor.execute(() -> limpiarAgotados(vendidos, usarLedger)));
 
-      // 3. Limpiar carritos afectados por productos que se agotaron
-      for (DetallePedidoDTO detalle : detallesPedido) {
-        Producto producto = productoRepository.findById(detalle.getIdProducto())
-            .orElse(null);
+    return true;
+  }
 
-        if (producto != null && producto.getStock() <= 0) {
-          limpiarProductoDeCarritos(detalle.getIdProducto());
-        }
+  /**
+   * Retira de los carritos los productos vendidos que quedaron sin stock.
+   */
+  private void limpiarAgotados(Set<String> vendidos, boolean usarLedger) {
+    try {
+      List<String> agotados = usarLedger
+          ? vendidos.stream()
+              .filter(idProducto -> {
+                Long stock = stockLedgerService.obtenerStock(idProducto);
+                return stock != null && stock <= 0;
+              })
+              .collect(Collectors.toList())
+          : stockDAO.findProductosAgotados(vendidos);
+
+      for (String idProducto : agotados) {
+        limpiarProductoDeCarritos(idProducto);
       }
+    } catch (RuntimeException e) {
+      // La venta ya se confirmó; los carritos se validan igual al agregar o pagar
+      logger.error("Error al limpiar carritos de productos agotados {}: {}", vendidos, e.getMessage(), e);
+    }
+  }
 
-      return true;
-
-    } catch (Exception e) {
-      // Si hay error, la transacción se revierte automáticamente
-      throw new IllegalStateException("Error al procesar la venta: " + e.getMessage(), e);
+  @Override
+  public List<String> reponerStock(List<DetallePedidoDTO> detallesPedido) {
+    Map<String, Long> cantidadesPorProducto = agruparCantidadesPorProducto(detallesPedido);
+    if (stockLedgerService.estaCargado()) {
+      return stockLedgerService.reponer(cantidadesPorProducto);
     }
+    return stockDAO.reponerStock(cantidadesPorProducto);
   }
 
   @Override
-  @Transactional(readOnly = true)
+  @Transactional(propagation = Propagation.SUPPORTS, readOnly = true)
   public boolean tieneStockSuficiente(String idProducto, Long cantidadSolicitada) {
+    long reservado = stockReservaService.cantidadReservada(idProducto);
+    Long stock = stockLedgerService.obtenerStock(idProducto);
+    if (stock != null) {
+      return stock - reservado >= cantidadSolicitada;
+    }
+
     Producto producto = productoRepository.findById(idProducto)
         .orElse(null);
 
@@ -174,26 +244,23 @@ public class StockValidationServiceImpl implements StockValidationService {
       return false;
     }
 
-    return producto.getStock() >= cantidadSolicitada;
+    return producto.getStock() - reservado >= cantidadSolicitada;
   }
 
   /**
-   * Método privado para actualizar el stock de un producto.
+   * Suma las cantidades de los detalles por producto, conservando el orden.
    * 
-   * @param idProducto      ID del producto
-   * @param cantidadVendida Cantidad a descontar del stock
+   * @param detallesPedido Lista de detalles del pedido
+   * @return Map con idProducto -> cantidad total
    */
-  private void actualizarStockProducto(String idProducto, Long cantidadVendida) {
-    Producto producto = productoRepository.findById(idProducto)
-        .orElseThrow(() -> new EntityNotFoundException("Producto no encontrado: " + idProducto));
-
-    Long nuevoStock = producto.getStock() - cantidadVendida;
-
-    if (nuevoStock < 0) {
-      throw new IllegalStateException("Stock insuficiente para producto: " + idProducto);
+  private Map<String, Long> agruparCantidadesPorProducto(List<DetallePedidoDTO> detallesPedido) {
+    Map<String, Long> cantidades = new LinkedHashMap<>();
+    for (DetallePedidoDTO detalle : detallesPedido) {
+      if (detalle.getCantidad() == null || detalle.getCantidad() <= 0) {
+        throw new IllegalArgumentException("Cantidad inválida para el producto: " + detalle.getIdProducto());
+      }
+      cantidades.merge(detalle.getIdProducto(), detalle.getCantidad(), Long::sum);
     }
-
-    producto.setStock(nuevoStock);
-    productoRepository.save(producto);
+    return cantidades;
   }
 }
@@ -0,0 +1,575 @@
+package org.minimarket.minimarketbackendspring.services.impl;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.minimarket.minimarketbackendspring.dtos.DescuentoPromocionDTO;
+import org.minimarket.minimarketbackendspring.entities.DescuentoPromocion;
+import org.minimarket.minimarketbackendspring.repositories.DescuentoPromocionRepository;
+import org.minimarket.minimarketbackendspring.repositories.ProductoRepository;
+import org.minimarket.minimarketbackendspring.services.interfaces.TablaPreciosService;
+import org.minimarket.minimarketbackendspring.utils.PrecioUtils;
+import org.minimarket.minimarketbackendspring.utils.TransaccionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.common.collect.Lists;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Implementación de la tabla de precios efectivos.
+ *
+ * Todo el estado (promociones activas, alcance y precio de cada producto y la
+ * tabla resultante) es un objeto inmutable que se reemplaza entero, así que
+ * las lecturas no toman locks ni crean objetos. Los cambios confirmados se
+ * numeran en una secuencia y se aplican sobre el estado anterior fuera del
+ * camino de las peticiones: tras el commit en el executor de tareas, en la
+ * tarea de medianoche o al arrancar. Mientras tanto las lecturas siguen
+ * sirviendo la última tabla publicada; nunca esperan una actualización
+ * reteniendo su conexión. La base de datos se lee en una transacción propia de
+ * solo lectura, así que la tabla refleja solo lo confirmado.
+ */
+@Service
+public class TablaPreciosServiceImpl implements TablaPreciosService {
+
+    private static final Logger logger = LoggerFactory.getLogger(TablaPreciosServiceImpl.class);
+
+    @Autowired
+    private DescuentoPromocionRepository descuentoRepository;
+
+    @Autowired
+    private ProductoRepository productoRepository;
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    @Qualifier("applicationTaskExecutor")
+    private TaskExecutor tareasExecutor;
+
+    // Oracle no admite más de 1000 expresiones en una lista IN
+    private static final int MAX_PARAMETROS_IN = 1000;
+
+    // Niveles de alcance, en orden de precedencia
+    private static final int PRODUCTO = 0;
+    private static final int CATEGORIA = 1;
+    private static final int PROVEEDOR = 2;
+    private static final int CATALOGO = 3;
+
+    private record Alcance(int nivel, String id) {
+    }
+
+    private static final Alcance TODO_EL_CATALOGO = new Alcance(CATALOGO, "");
+
+    /**
+     * Promoción en estado activo, con los datos que se devuelven como DTO.
+     */
+    private record Promocion(Long id, Alcance alcance, String idProducto, String nombreProducto, Long idCategoria,
+            Long idProveedor, String descripcion, BigDecimal porcentaje, LocalDate fechaInicio, LocalDate fechaFin) {
+
+        private boolean vigenteEn(LocalDate fecha) {
+            return fechaInicio != null && fechaFin != null
+                    && !fecha.isBefore(fechaInicio) && !fecha.isAfter(fechaFin);
+        }
+
+        private DescuentoPromocionDTO aDTO() {
+            DescuentoPromocionDTO dto = new DescuentoPromocionDTO(id, idProducto, nombreProducto, descripcion,
+                    porcentaje, fechaInicio, fechaFin, "activo");
+            dto.setIdCategoriaId(idCategoria);
+            dto.setIdProveedorId(idProveedor);
+            dto.setAlcance(switch (alcance.nivel()) {
+                case PRODUCTO -> DescuentoPromocionDTO.ALCANCE_PRODUCTO;
+                case CATEGORIA -> DescuentoPromocionDTO.ALCANCE_CATEGORIA;
+                case PROVEEDOR -> DescuentoPromocionDTO.ALCANCE_PROVEEDOR;
+                default -> DescuentoPromocionDTO.ALCANCE_CATALOGO;
+            });
+            return dto;
+        }
+    }
+
+    /**
+     * Datos de un producto que deciden su precio efectivo.
+     */
+    private record ProductoAlcance(String idProducto, Long idCategoria, Long idProveedor, BigDecimal precio) {
+
+        // Alcances que lo incluyen, en orden de precedencia
+        private List<Alcance> alcances() {
+            List<Alcance> alcances = new ArrayList<>(4);
+            alcances.add(new Alcance(PRODUCTO, idProducto));
+            if (idCategoria != null) {
+                alcances.add(new Alcance(CATEGORIA, idCategoria.toString()));
+            }
+            if (idProveedor != null) {
+                alcances.add(new Alcance(PROVEEDOR, idProveedor.toString()));
+            }
+            alcances.add(TODO_EL_CATALOGO);
+            return alcances;
+        }
+    }
+
+    /**
+     * Promociones compiladas para una fecha. El próximo cambio es la fecha más
+     * cercana en que alguna empieza o termina (null si ninguna).
+     */
+    private record Reglas(Map<Alcance, List<Promocion>> vigentesPorAlcance, Set<Alcance> alcancesConActivas,
+            Set<Long> vigentes, LocalDate proximoCambio) {
+    }
+
+    /**
+     * Fila de la tabla con la promoción de la que sale.
+     */
+    private record Fila(PrecioVigente precio, Promocion promocion, boolean conActivas) {
+    }
+
+    private record Tabla(long version, LocalDate fecha, long venceEnMillis, List<Promocion> promociones,
+            Reglas reglas, Map<String, ProductoAlcance> productos, Map<String, Fila> filas) {
+
+        private boolean vigente(long versionActual, long ahoraMillis) {
+            return version == versionActual && ahoraMillis < venceEnMillis;
+        }
+    }
+
+    private final AtomicReference<Tabla> tabla = new AtomicReference<>();
+
+    // Serializa las actualizaciones; lo toman solo hilos sin conexión retenida
+    private final Object lockTabla = new Object();
+
+    private final AtomicBoolean actualizacionProgramada = new AtomicBoolean();
+
+    // Número del último cambio confirmado; es la versión de la tabla
+    private final AtomicLong secuencia = new AtomicLong();
+
+    // Número de cambio -> producto modificado, hasta que la tabla lo aplica
+    private final ConcurrentSkipListMap<Long, String> cambiosProductos = new ConcurrentSkipListMap<>();
+
+    private volatile long ultimoCambioPromociones;
+
+    private final Object lockCambios = new Object();
+
+    // Transacción independiente para leer el estado confirmado
+    private TransactionTemplate transaccionLectura;
+
+    @PostConstruct
+    public void inicializar() {
+        transaccionLectura = new TransactionTemplate(transactionManager);
+        transaccionLectura.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        transaccionLectura.setReadOnly(true);
+    }
+
+    /**
+     * Arma la tabla una vez iniciada la aplicación, antes de la primera lectura.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void cargar() {
+        actualizarTabla();
+    }
+
+    @Override
+    public PrecioVigente obtener(String idProducto) {
+        Fila fila = tabla().filas().get(idProducto);
+        return fila != null ? fila.precio() : null;
+    }
+
+    @Override
+    public Map<String, BigDecimal> porcentajes(Collection<String> idsProductos, LocalDate fecha) {
+        Tabla actual = tabla();
+        Reglas reglas = actual.fecha().equals(fecha) ? null : compilarReglas(actual.promociones(), fecha);
+
+        Map<String, BigDecimal> porcentajes = new HashMap<>();
+        for (String idProducto : idsProductos) {
+            Promocion promocion;
+            if (reglas == null) {
+                Fila fila = actual.filas().get(idProducto);
+                promocion = fila != null ? fila.promocion() : null;
+            } else {
+                ProductoAlcance producto = actual.productos().get(idProducto);
+                promocion = producto != null ? resolver(producto, reglas).promocion() : null;
+            }
+            if (promocion != null) {
+                porcentajes.put(idProducto, promocion.porcentaje());
+            }
+        }
+        return porcentajes;
+    }
+
+    @Override
+    public DescuentoPromocionDTO promocionAplicada(String idProducto) {
+        Fila fila = tabla().filas().get(idProducto);
+        return fila != null && fila.promocion() != null ? fila.promocion().aDTO() : null;
+    }
+
+    @Override
+    public List<DescuentoPromocionDTO> promocionesVigentes(String idProducto) {
+        Tabla actual = tabla();
+        ProductoAlcance producto = actual.productos().get(idProducto);
+        if (producto == null) {
+            return null;
+        }
+
+        List<DescuentoPromocionDTO> vigentes = new ArrayList<>();
+        for (Alcance alcance : producto.alcances()) {
+            actual.reglas().vigentesPorAlcance().getOrDefault(alcance, List.of())
+                    .forEach(promocion -> vigentes.add(promocion.aDTO()));
+        }
+        return vigentes;
+    }
+
+    @Override
+    public List<DescuentoPromocionDTO> promocionesVigentes() {
+        List<DescuentoPromocionDTO> vigentes = new ArrayList<>();
+        tabla().reglas().vigentesPorAlcance().values()
+                .forEach(promociones -> promociones.forEach(promocion -> vigentes.add(promocion.aDTO())));
+        return vigentes;
+    }
+
+    @Override
+    public boolean tienePromocionesActivas(String idProducto) {
+        Fila fila = tabla().filas().get(idProducto);
+        return fila != null && fila.conActivas();
+    }
+
+    @Override
+    public boolean esVigente(Long idDescuento) {
+        return tabla().reglas().vigentes().contains(idDescuento);
+    }
+
+    @Override
+    public long version() {
+        return secuencia.get();
+    }
+
+    @Override
+    public void registrarCambioPromociones() {
+        TransaccionUtils.despuesDeCommit(() -> {
+            synchronized (lockCambios) {
+                long numero = secuencia.get() + 1;
+                ultimoCambioPromociones = numero;
+                secuencia.set(numero);
+            }
+            programarActualizacion();
+        });
+    }
+
+    @Override
+    public void registrarCambioProducto(String idProducto) {
+        TransaccionUtils.despuesDeCommit(() -> {
+            synchronized (lockCambios) {
+                // El cambio se anota antes de publicar su número
+                long numero = secuencia.get() + 1;
+                cambiosProductos.put(numero, idProducto);
+                secuencia.set(numero);
+            }
+            programarActualizacion();
+        });
+    }
+
+    /**
+     * Las fechas de las promociones no tienen hora, así que empiezan y terminan
+     * siempre a medianoche: revisar la tabla a esa hora aplica los cambios en
+     * el momento exacto. Si ese día no empieza ni termina ninguna, no se
+     * invalida nada.
+     */
+    @Scheduled(cron = "0 0 0 * * *")
+    public void procesarLineaTiempo() {
+        actualizarTabla();
+    }
+
+    /**
+     * Última tabla publicada. Si hay cambios sin aplicar, o llegó la fecha de
+     * inicio o fin de una promoción, programa la actualización y devuelve la
+     * tabla actual sin esperarla.
+     *
+     * Solo antes de la primera publicación (al arrancar) la lectura arma la
+     * tabla ella misma; la publica únicamente si nadie lo hizo antes.
+     */
+    private Tabla tabla() {
+        Tabla actual = tabla.get();
+        if (actual == null) {
+            long version = secuencia.get();
+            Tabla nueva = transaccionLectura.execute(status -> compilar(version));
+            return tabla.compareAndSet(null, nueva) ? nueva : tabla.get();
+        }
+
+        if (!actual.vigente(secuencia.get(), System.currentTimeMillis())) {
+            programarActualizacion();
+        }
+        return actual;
+    }
+
+    /**
+     * Encarga la actualización al executor de tareas, una sola vez aunque la
+     * pidan varias lecturas.
+     */
+    private void programarActualizacion() {
+        if (!actualizacionProgramada.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            tareasExecutor.execute(() -> {
+                try {
+                    actualizarTabla();
+                } catch (RuntimeException e) {
+                    logger.error("Error al actualizar la tabla de precios: {}", e.getMessage(), e);
+                }
+            });
+        } catch (RuntimeException e) {
+            actualizacionProgramada.set(false);
+            logger.warn("No se pudo programar la actualización de la tabla de precios: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Aplica los cambios pendientes y publica la tabla nueva. El fin o inicio
+     * de una promoción avanza la versión como cualquier otro cambio de precios,
+     * una sola vez.
+     *
+     * La versión se lee antes que la base de datos: una tabla armada con datos
+     * más nuevos que su versión solo se actualiza de nuevo antes de tiempo.
+     * Una lectura que llega durante la actualización programa otra, que
+     * esperará a esta en el executor.
+     */
+    private void actualizarTabla() {
+        actualizacionProgramada.set(false);
+
+        Set<String> cambiados = new HashSet<>();
+        synchronized (lockTabla) {
+            Tabla actual = tabla.get();
+            long ahoraMillis = System.currentTimeMillis();
+            if (actual != null && ahoraMillis >= actual.venceEnMillis()) {
+                synchronized (lockCambios) {
+                    secuencia.compareAndSet(actual.version(), actual.version() + 1);
+                }
+            }
+
+            long version = secuencia.get();
+            if (actual != null && actual.vigente(version, ahoraMillis)) {
+                return;
+            }
+
+            Set<String> afectados = new HashSet<>();
+            Tabla nueva = transaccionLectura.execute(status -> actual != null
+                    ? actualizar(actual, version, afectados)
+                    : compilar(version));
+
+            for (String idProducto : afectados) {
+                Fila anterior = actual.filas().get(idProducto);
+                Fila nuevaFila = nueva.filas().get(idProducto);
+                if (!Objects.equals(anterior != null ? anterior.precio() : null,
+                        nuevaFila != null ? nuevaFila.precio() : null)) {
+                    cambiados.add(idProducto);
+                }
+            }
+            tabla.set(nueva);
+            cambiosProductos.headMap(version, true).clear();
+        }
+
+        if (!cambiados.isEmpty()) {
+            eventPublisher.publishEvent(new CambioPrecios(cambiados));
+        }
+    }
+
+    private Tabla compilar(long version) {
+        LocalDate hoy = LocalDate.now();
+        List<Promocion> promociones = cargarPromociones();
+        Map<String, ProductoAlcance> productos = new HashMap<>();
+        for (Object[] fila : productoRepository.findAlcancesYPrecios()) {
+            ProductoAlcance producto = aProducto(fila);
+            productos.put(producto.idProducto(), producto);
+        }
+
+        Reglas reglas = compilarReglas(promociones, hoy);
+        Map<String, Fila> filas = new HashMap<>();
+        productos.values().forEach(producto -> filas.put(producto.idProducto(), resolver(producto, reglas)));
+        return nuevaTabla(version, hoy, promociones, reglas, productos, filas);
+    }
+
+    /**
+     * Aplica sobre la tabla anterior los cambios hasta {@code version} y el
+     * cambio de fecha, si lo hubo. Deja en {@code afectados} los productos
+     * recalculados.
+     */
+    private Tabla actualizar(Tabla anterior, long version, Set<String> afectados) {
+        LocalDate hoy = LocalDate.now();
+        List<Promocion> promociones = ultimoCambioPromociones > anterior.version()
+                ? cargarPromociones()
+                : anterior.promociones();
+
+        Set<String> idsCambiados = new HashSet<>(
+                cambiosProductos.subMap(anterior.version(), false, version, true).values());
+        Map<String, ProductoAlcance> productos = anterior.productos();
+        if (!idsCambiados.isEmpty()) {
+            productos = new HashMap<>(productos);
+            idsCambiados.forEach(productos::remove);
+            for (List<String> bloque : Lists.partition(new ArrayList<>(idsCambiados), MAX_PARAMETROS_IN)) {
+                for (Object[] fila : productoRepository.findAlcancesYPrecios(bloque)) {
+                    ProductoAlcance producto = aProducto(fila);
+                    productos.put(producto.idProducto(), producto);
+                }
+            }
+        }
+
+        // Las reglas se recompilan siempre (son pocas); solo se recalculan los
+        // productos de los alcances cuyo resultado cambió
+        Reglas reglas = compilarReglas(promociones, hoy);
+        Set<Alcance> alcances = new HashSet<>();
+        Set<Alcance> todos = new HashSet<>(anterior.reglas().vigentesPorAlcance().keySet());
+        todos.addAll(reglas.vigentesPorAlcance().keySet());
+        todos.addAll(anterior.reglas().alcancesConActivas());
+        todos.addAll(reglas.alcancesConActivas());
+        for (Alcance alcance : todos) {
+            if (!Objects.equals(anterior.reglas().vigentesPorAlcance().get(alcance),
+                    reglas.vigentesPorAlcance().get(alcance))
+                    || anterior.reglas().alcancesConActivas().contains(alcance)
+                            != reglas.alcancesConActivas().contains(alcance)) {
+                alcances.add(alcance);
+            }
+        }
+
+        afectados.addAll(idsCambiados);
+        if (!alcances.isEmpty()) {
+            for (ProductoAlcance producto : productos.values()) {
+                if (alcances.contains(TODO_EL_CATALOGO)
+                        || producto.alcances().stream().anyMatch(alcances::contains)) {
+                    afectados.add(producto.idProducto());
+                }
+            }
+        }
+
+        Map<String, Fila> filas = anterior.filas();
+        if (!afectados.isEmpty()) {
+            filas = new HashMap<>(filas);
+            for (String idProducto : afectados) {
+                ProductoAlcance producto = productos.get(idProducto);
+                if (producto != null) {
+                    filas.put(idProducto, resolver(producto, reglas));
+                } else {
+                    filas.remove(idProducto);
+                }
+            }
+        }
+        return nuevaTabla(version, hoy, promociones, reglas, productos, filas);
+    }
+
+    private Tabla nuevaTabla(long version, LocalDate hoy, List<Promocion> promociones, Reglas reglas,
+            Map<String, ProductoAlcance> productos, Map<String, Fila> filas) {
+        long venceEnMillis = reglas.proximoCambio() != null
+                ? reglas.proximoCambio().atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli()
+                : Long.MAX_VALUE;
+        return new Tabla(version, hoy, venceEnMillis, promociones, reglas,
+                Collections.unmodifiableMap(productos), Collections.unmodifiableMap(filas));
+    }
+
+    private Reglas compilarReglas(List<Promocion> promociones, LocalDate fecha) {
+        Map<Alcance, List<Promocion>> vigentesPorAlcance = new HashMap<>();
+        Set<Alcance> alcancesConActivas = new HashSet<>();
+        Set<Long> vigentes = new HashSet<>();
+        LocalDate proximoCambio = null;
+        for (Promocion promocion : promociones) {
+            alcancesConActivas.add(promocion.alcance());
+            if (promocion.fechaInicio() == null || promocion.fechaFin() == null) {
+                continue;
+            }
+
+            // Empieza al comenzar la fecha de inicio y termina al acabar la fecha de fin
+            for (LocalDate limite : List.of(promocion.fechaInicio(), promocion.fechaFin().plusDays(1))) {
+                if (limite.isAfter(fecha) && (proximoCambio == null || limite.isBefore(proximoCambio))) {
+                    proximoCambio = limite;
+                }
+            }
+            if (promocion.vigenteEn(fecha)) {
+                vigentes.add(promocion.id());
+                vigentesPorAlcance.computeIfAbsent(promocion.alcance(), alcance -> new ArrayList<>()).add(promocion);
+            }
+        }
+
+        vigentesPorAlcance.replaceAll((alcance, lista) -> {
+            lista.sort(Comparator.comparing(Promocion::porcentaje).reversed().thenComparing(Promocion::id));
+            return List.copyOf(lista);
+        });
+        return new Reglas(Map.copyOf(vigentesPorAlcance), Set.copyOf(alcancesConActivas), Set.copyOf(vigentes),
+                proximoCambio);
+    }
+
+    private Fila resolver(ProductoAlcance producto, Reglas reglas) {
+        Promocion aplicada = null;
+        boolean conActivas = false;
+        for (Alcance alcance : producto.alcances()) {
+            conActivas |= reglas.alcancesConActivas().contains(alcance);
+            List<Promocion> vigentes = reglas.vigentesPorAlcance().get(alcance);
+            if (aplicada == null && vigentes != null) {
+                aplicada = vigentes.get(0); // Mayor porcentaje del alcance más específico
+            }
+        }
+
+        BigDecimal precioFinal = aplicada != null && producto.precio() != null
+                ? PrecioUtils.aplicarPorcentaje(producto.precio(), aplicada.porcentaje())
+                : producto.precio();
+        PrecioVigente precio = new PrecioVigente(producto.idProducto(), producto.precio(),
+                aplicada != null ? aplicada.id() : null, aplicada != null ? aplicada.porcentaje() : null,
+                precioFinal);
+        return new Fila(precio, aplicada, conActivas);
+    }
+
+    private List<Promocion> cargarPromociones() {
+        List<Promocion> promociones = new ArrayList<>();
+        for (DescuentoPromocion descuento : descuentoRepository.findByEstadoConAlcance("activo")) {
+            String idProducto = descuento.getIdProducto() != null ? descuento.getIdProducto().getIdProducto() : null;
+            Long idCategoria = descuento.getIdCategoria() != null ? descuento.getIdCategoria().getId() : null;
+            Long idProveedor = descuento.getIdProveedor() != null ? descuento.getIdProveedor().getId() : null;
+
+            Alcance alcance;
+            if (idProducto != null) {
+                alcance = new Alcance(PRODUCTO, idProducto);
+            } else if (idCategoria != null) {
+                alcance = new Alcance(CATEGORIA, idCategoria.toString());
+            } else if (idProveedor != null) {
+                alcance = new Alcance(PROVEEDOR, idProveedor.toString());
+            } else {
+                alcance = TODO_EL_CATALOGO;
+            }
+
+            promociones.add(new Promocion(descuento.getId(), alcance, idProducto,
+                    descuento.getIdProducto() != null ? descuento.getIdProducto().getNombre() : null,
+                    idCategoria, idProveedor, descuento.getDescripcion(),
+                    descuento.getPorcentaje() != null ? descuento.getPorcentaje() : BigDecimal.ZERO,
+                    descuento.getFechaInicio(), descuento.getFechaFin()));
+        }
+        return List.copyOf(promociones);
+    }
+
+    private ProductoAlcance aProducto(Object[] fila) {
+        Double precio = (Double) fila[3];
+        return new ProductoAlcance((String) fila[0], (Long) fila[1], (Long) fila[2],
+                precio != null ? BigDecimal.valueOf(precio) : null);
+    }
+}
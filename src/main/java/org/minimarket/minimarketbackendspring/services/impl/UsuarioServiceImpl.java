@@ -11,6 +11,7 @@ import org.minimarket.minimarketbackendspring.entities.Distrito;
 import org.minimarket.minimarketbackendspring.entities.Usuario;
 import org.minimarket.minimarketbackendspring.repositories.DistritoRepository;
 import org.minimarket.minimarketbackendspring.repositories.UsuarioRepository;
+import org.minimarket.minimarketbackendspring.services.interfaces.PedidoService;
 import org.minimarket.minimarketbackendspring.services.interfaces.UsuarioService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.annotation.Lazy;
@@ -34,6 +35,9 @@ public class UsuarioServiceImpl implements UsuarioService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private PedidoService pedidoService;
+
     @Autowired
     @Lazy
     private AuthServiceImpl authService;
@@ -251,6 +255,8 @@ public class UsuarioServiceImpl implements UsuarioService {
         }
 
         usuarioRepository.save(u);
+        // Los pedidos muestran el nombre del usuario
+        pedidoService.registrarCambioPedidos(u.getIdUsuario());
     }
 
     /**
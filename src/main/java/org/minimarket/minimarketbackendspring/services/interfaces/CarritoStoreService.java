@@ -0,0 +1,167 @@
+package org.minimarket.minimarketbackendspring.services.interfaces;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO.Linea;
+
+/**
+ * Almacén de las líneas de carrito usado por CarritoTemporalService.
+ *
+ * Se elige con {@code app.carrito.store.tipo}:
+ * <ul>
+ * <li>{@code memoria} (por defecto): los carritos viven en memoria y se
+ * escriben en CARRITO_TEMPORAL por lotes cada
+ * {@code app.carrito.store.flush-ms}. Una caída pierde como máximo los cambios
+ * de esa ventana.</li>
+ * <li>{@code base-datos}: cada operación se escribe en la transacción en
+ * curso.</li>
+ * </ul>
+ *
+ * <p><strong>IMPORTANTE:</strong> El almacén no valida stock ni productos; eso
+ * corresponde a CarritoTemporalService. Con el almacén en memoria, la
+ * aplicación debe ser la única que escribe en CARRITO_TEMPORAL (o llamar a
+ * {@link #descartar(Collection)} tras modificarla directamente).</p>
+ */
+public interface CarritoStoreService {
+
+    /**
+     * Resultado de purgar un bloque de carritos abandonados.
+     *
+     * @param ultimoUsuario último ID revisado, desde donde sigue el próximo
+     *                      bloque (null si no quedan candidatos)
+     * @param usuarios      usuarios cuyo carrito se eliminó
+     * @param lineas        filas eliminadas
+     */
+    record ResultadoPurga(String ultimoUsuario, int usuarios, int lineas) {
+    }
+
+    /**
+     * Obtiene las líneas del carrito de un usuario.
+     *
+     * @param idUsuario ID del usuario
+     * @return copia de las líneas en orden de inserción, o null si el usuario
+     *         no existe
+     */
+    List<Linea> obtener(String idUsuario);
+
+    /**
+     * Versión actual del carrito de un usuario. Cambia cada vez que cambian sus
+     * líneas y nunca vuelve a un valor anterior, por lo que sirve como clave
+     * para reutilizar cálculos hechos sobre el carrito. Debe leerse antes que
+     * las líneas.
+     *
+     * @param idUsuario ID del usuario
+     * @return versión del carrito, o null si el usuario no existe
+     */
+    Long version(String idUsuario);
+
+    /**
+     * Indica si {@link #version(String)} refleja los cambios del carrito. Un
+     * almacén no versionado devuelve una versión nueva en cada llamada, por lo
+     * que no admite ETag ni reutilizar cálculos hechos sobre el carrito.
+     */
+    default boolean versionado() {
+        return true;
+    }
+
+    /**
+     * Fija la cantidad de un producto, agregándolo si no estaba.
+     *
+     * @param idUsuario  ID de un usuario existente
+     * @param idProducto ID de un producto existente
+     * @param cantidad   cantidad (mayor a cero)
+     */
+    void fijar(String idUsuario, String idProducto, long cantidad);
+
+    /**
+     * Suma una cantidad al producto (agregándolo si no estaba) solo si el
+     * resultado no supera el máximo. La validación y la escritura son una sola
+     * operación, sin leer la línea antes.
+     *
+     * @param idUsuario  ID del usuario
+     * @param idProducto ID de un producto existente
+     * @param cantidad   cantidad a sumar (mayor a cero)
+     * @param maximo     cantidad máxima que puede quedar en el carrito
+     * @return la línea resultante, o null si se superaría el máximo
+     * @throws jakarta.persistence.EntityNotFoundException si el usuario no
+     *                                                     existe
+     */
+    Linea agregar(String idUsuario, String idProducto, long cantidad, long maximo);
+
+    /**
+     * Quita un producto del carrito.
+     *
+     * @param idUsuario  ID del usuario
+     * @param idProducto ID del producto
+     * @return true si el producto estaba en el carrito
+     */
+    boolean quitar(String idUsuario, String idProducto);
+
+    /**
+     * Quita varios productos y reduce la cantidad de otros en una sola
+     * operación. Las cantidades solo se aplican a productos que siguen en el
+     * carrito.
+     *
+     * @param idUsuario  ID del usuario
+     * @param quitar     ids de productos a quitar
+     * @param cantidades idProducto -> nueva cantidad (mayor a cero)
+     */
+    void ajustar(String idUsuario, Collection<String> quitar, Map<String, Long> cantidades);
+
+    /**
+     * Quita un producto de todos los carritos (memoria y tabla) con una
+     * operación por conjunto. Se ejecuta en su propia transacción.
+     *
+     * @param idProducto ID del producto
+     * @return ids de los usuarios cuyo carrito tenía el producto
+     */
+    Set<String> quitarProducto(String idProducto);
+
+    /**
+     * Da una versión nueva a los carritos que contienen alguno de los
+     * productos, para que no se reutilice lo calculado con sus datos
+     * anteriores (por ejemplo, tras un cambio de precio).
+     *
+     * @param idsProductos ids de los productos que cambiaron
+     */
+    void avanzarVersiones(Collection<String> idsProductos);
+
+    /**
+     * Elimina, en una transacción corta, un bloque de carritos cuya línea más
+     * reciente es anterior al corte. Los carritos que están en uso en memoria
+     * no se eliminan.
+     *
+     * @param corte     fecha límite de la última línea agregada
+     * @param despuesDe último ID del bloque anterior (null para el primero)
+     * @param limite    tamaño del bloque (máximo 1000)
+     * @return resultado del bloque
+     */
+    ResultadoPurga purgarAbandonados(LocalDateTime corte, String despuesDe, int limite);
+
+    /**
+     * Quita todos los productos del carrito.
+     *
+     * @param idUsuario ID del usuario
+     */
+    void vaciar(String idUsuario);
+
+    /**
+     * Escribe en CARRITO_TEMPORAL los cambios pendientes. Se llama antes de
+     * consultar la tabla directamente.
+     *
+     * @return cantidad de carritos escritos
+     */
+    int persistirPendientes();
+
+    /**
+     * Descarta los carritos en memoria de los usuarios indicados para que se
+     * vuelvan a leer de la tabla. Se usa tras modificarla directamente.
+     *
+     * @param idsUsuarios ids de los usuarios
+     */
+    void descartar(Collection<String> idsUsuarios);
+}
@@ -2,8 +2,11 @@ package org.minimarket.minimarketbackendspring.services.interfaces;
 
 import java.math.BigDecimal;
 import java.util.List;
+import java.util.Map;
 
+import org.minimarket.minimarketbackendspring.dtos.CarritoResumenDTO;
 import org.minimarket.minimarketbackendspring.dtos.CarritoTemporalDto;
+import org.minimarket.minimarketbackendspring.dtos.requests.CarritoOperacionDTO;
 
 public interface CarritoTemporalService {
     
@@ -67,11 +70,29 @@ public interface CarritoTemporalService {
      */
     void vaciarCarrito(String idUsuario);
     
+    /**
+     * Ajusta el carrito al stock disponible en una sola operación: quita los
+     * productos sin stock y reduce la cantidad de los que superan lo disponible.
+     * Los productos que no están en el mapa no se revisan.
+     *
+     * @param stockDisponible idProducto -> stock disponible
+     * @return productos quitados del carrito
+     */
+    List<String> ajustarCarritoAStock(String idUsuario, Map<String, Long> stockDisponible);
+    
     /**
      * Cuenta items en el carrito del usuario
      */
     Long countByUsuario(String idUsuario);
     
+    /**
+     * Versión del carrito del usuario para respuestas condicionales (ETag).
+     * Con el almacén en memoria no consulta la base de datos si el carrito ya
+     * está cargado. Retorna null si el usuario no existe o si el almacén no
+     * está versionado.
+     */
+    String versionCarrito(String idUsuario);
+    
     /**
      * Verifica si existe producto en el carrito del usuario
      */
@@ -96,5 +117,12 @@ public interface CarritoTemporalService {
      * Obtiene items del carrito con precios y descuentos aplicados
      */
     List<CarritoTemporalDto> findByUsuarioConDescuentos(String idUsuario);
+
+    /**
+     * Aplica varias operaciones sobre el carrito en una sola transacción. El
+     * stock de todos los productos se valida junto antes de escribir; si alguna
+     * operación falla no se aplica ninguna.
+     */
+    CarritoResumenDTO aplicarOperaciones(String idUsuario, List<CarritoOperacionDTO> operaciones);
     
 }
\ No newline at end of file
@@ -1,9 +1,14 @@
 package org.minimarket.minimarketbackendspring.services.interfaces;
 
 import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.minimarket.minimarketbackendspring.dtos.DescuentoPromocionDTO;
+import org.minimarket.minimarketbackendspring.dtos.PrecioEfectivoDTO;
+import org.minimarket.minimarketbackendspring.dtos.requests.PrecioConsultaDTO;
 
 public interface DescuentoPromocionService {
     
@@ -18,7 +23,12 @@ public interface DescuentoPromocionService {
     DescuentoPromocionDTO findById(Long id);
     
     /**
-     * Crea un nuevo descuento
+     * Crea un nuevo descuento para un producto o, con idProducto null, para la
+     * categoría o el proveedor del DTO, o para todo el catálogo si el DTO lo
+     * pide con alcance CATALOGO
+     *
+     * @throws IllegalArgumentException si no se indica ningún alcance, se
+     *                                  indica más de uno o no coinciden
      */
     DescuentoPromocionDTO save(DescuentoPromocionDTO descuentoDTO, String idProducto);
     
@@ -62,6 +72,25 @@ public interface DescuentoPromocionService {
      */
     BigDecimal calcularPrecioConDescuento(String idProducto, BigDecimal precioOriginal);
     
+    /**
+     * Obtiene el mayor porcentaje aplicable en una fecha para varios productos,
+     * según la precedencia de alcances. Los productos sin descuento no aparecen.
+     */
+    Map<String, BigDecimal> findMejorPorcentajePorProducto(Collection<String> idsProductos, LocalDate fecha);
+    
+    /**
+     * Calcula el precio con descuento de varios productos a la vez.
+     * Recibe idProducto -> precio original y retorna idProducto -> precio final.
+     */
+    Map<String, BigDecimal> calcularPreciosConDescuento(Map<String, BigDecimal> preciosOriginales, LocalDate fecha);
+
+    /**
+     * Precio original, mejor descuento vigente, precio final y ahorro de varios
+     * productos, en el orden de la consulta. Los productos que no existen se
+     * omiten.
+     */
+    List<PrecioEfectivoDTO> calcularPreciosEfectivos(List<PrecioConsultaDTO> consultas);
+    
     /**
      * Activa un descuento
      */
@@ -20,6 +20,14 @@ public interface DetallePedidoService {
      * Crea un nuevo detalle de pedido
      */
     DetallePedidoDTO save(DetallePedidoDTO detallePedidoDTO, Long idPedido, String idProducto);
+
+    /**
+     * Crea en lote los detalles de un pedido (cada DTO indica su idProducto).
+     * Usa referencias al pedido y a los productos sin cargarlos.
+     *
+     * @return número de detalles creados
+     */
+    int saveAll(Long idPedido, List<DetallePedidoDTO> detallesPedido);
     
     /**
      * Actualiza un detalle existente
@@ -0,0 +1,44 @@
+package org.minimarket.minimarketbackendspring.services.interfaces;
+
+import java.util.List;
+
+/**
+ * Índice en memoria de los pedidos activos de cada usuario.
+ *
+ * Estados activos: solicitado, pendiente_pago y pagado. El índice se carga por
+ * usuario la primera vez que se consulta y luego se mantiene con los cambios
+ * de estado confirmados, por lo que las consultas repetidas (polling del
+ * frontend) no llegan a la base de datos.
+ */
+public interface PedidoActivoIndexService {
+
+    /**
+     * Estados en los que un pedido se considera activo.
+     */
+    List<String> ESTADOS_ACTIVOS = List.of("solicitado", "pendiente_pago", "pagado");
+
+    /**
+     * Indica si el usuario tiene al menos un pedido activo.
+     *
+     * @param idUsuario ID del usuario
+     * @return true si tiene algún pedido activo
+     */
+    boolean tienePedidoActivo(String idUsuario);
+
+    /**
+     * Registra el estado actual de un pedido. Debe llamarse después de que el
+     * cambio se confirme en la base de datos.
+     *
+     * @param idUsuario ID del usuario dueño del pedido
+     * @param idPedido  ID del pedido
+     * @param estado    estado actual del pedido
+     */
+    void registrarEstado(String idUsuario, Long idPedido, String estado);
+
+    /**
+     * Quita un pedido eliminado del índice.
+     *
+     * @param idPedido ID del pedido
+     */
+    void quitarPedido(Long idPedido);
+}
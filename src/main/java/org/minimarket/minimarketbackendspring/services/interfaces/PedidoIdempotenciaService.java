@@ -0,0 +1,35 @@
+package org.minimarket.minimarketbackendspring.services.interfaces;
+
+import java.util.function.Supplier;
+
+import org.minimarket.minimarketbackendspring.dtos.PedidoDTO;
+
+/**
+ * Servicio de idempotencia para la creación de pedidos.
+ *
+ * Una solicitud repetida con la misma {@code Idempotency-Key} devuelve el
+ * pedido creado por la primera, sin volver a validar stock, calcular
+ * descuentos ni insertar registros.
+ */
+public interface PedidoIdempotenciaService {
+
+    /**
+     * Ejecuta la creación de un pedido una sola vez por clave.
+     *
+     * Si la clave ya tiene respuesta, se devuelve la respuesta guardada. Si otra
+     * solicitud con la misma clave se está procesando en esta instancia, se
+     * espera su resultado. Si la operación falla, la clave se libera para que
+     * un reintento pueda procesarse; si el commit falla con resultado
+     * desconocido, la clave queda reclamada hasta que venza el reclamo.
+     *
+     * @param clave     valor del header {@code Idempotency-Key}
+     * @param idUsuario ID del usuario que crea el pedido
+     * @param operacion creación del pedido
+     * @return pedido creado por la primera solicitud con esa clave
+     * @throws IllegalArgumentException si la clave es inválida o pertenece a
+     *                                  otro usuario
+     * @throws IllegalStateException    si la clave se está procesando en otra
+     *                                  instancia y su reclamo no ha vencido
+     */
+    PedidoDTO ejecutar(String clave, String idUsuario, Supplier<PedidoDTO> operacion);
+}
@@ -37,6 +37,18 @@ public interface PedidoService {
      */
     List<PedidoDTO> findByUsuario(String idUsuario);
     
+    /**
+     * Versión de los pedidos del usuario para respuestas condicionales (ETag).
+     * Se resuelve en memoria, sin consultar la base de datos.
+     */
+    String versionPedidos(String idUsuario);
+    
+    /**
+     * Registra que cambiaron los pedidos del usuario; la versión avanza cuando
+     * se confirma la transacción en curso.
+     */
+    void registrarCambioPedidos(String idUsuario);
+    
     /**
      * Busca pedidos por estado
      */
@@ -0,0 +1,35 @@
+package org.minimarket.minimarketbackendspring.services.interfaces;
+
+import java.util.function.Supplier;
+
+/**
+ * Ejecutor de operaciones transaccionales con reintentos ante conflictos de
+ * concurrencia optimista.
+ *
+ * Cada intento debe abrir y confirmar su propia transacción, por lo que la
+ * operación se llama desde fuera de la capa transaccional (controladores). Si
+ * ya hay una transacción activa, la operación se ejecuta una sola vez y el
+ * conflicto se propaga a quien controla esa transacción.
+ */
+public interface ReintentoConcurrenciaService {
+
+    /**
+     * Ejecuta la operación reintentando con espera exponencial si otra
+     * transacción modificó las mismas filas.
+     *
+     * @param operacion nombre de la operación, usado como etiqueta en métricas
+     * @param accion    operación a ejecutar
+     * @return resultado de la operación
+     * @throws org.springframework.dao.OptimisticLockingFailureException si se
+     *         agotan los intentos
+     */
+    <T> T ejecutar(String operacion, Supplier<T> accion);
+
+    /**
+     * Variante sin resultado de {@link #ejecutar(String, Supplier)}.
+     *
+     * @param operacion nombre de la operación
+     * @param accion    operación a ejecutar
+     */
+    void ejecutar(String operacion, Runnable accion);
+}
@@ -0,0 +1,77 @@
+package org.minimarket.minimarketbackendspring.services.interfaces;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Servicio de ledger de stock en memoria.
+ *
+ * Mantiene un contador por producto cargado desde PRODUCTOS al iniciar la
+ * aplicación. Las consultas de disponibilidad se resuelven en memoria y los
+ * cambios confirmados se escriben en la base de datos por lotes (write-behind).
+ *
+ * <p><strong>IMPORTANTE:</strong> El ledger asume una sola instancia de la
+ * aplicación escribiendo el stock. Con varias instancias debe desactivarse con
+ * {@code app.stock.ledger.enabled=false}; en ese caso, y mientras no esté
+ * cargado, los servicios consultan directamente la base de datos.</p>
+ */
+public interface StockLedgerService {
+
+    /**
+     * Indica si el ledger está habilitado y ya fue cargado.
+     *
+     * @return true si las consultas pueden resolverse en memoria
+     */
+    boolean estaCargado();
+
+    /**
+     * Obtiene el stock de un producto sin acceder a la base de datos.
+     *
+     * @param idProducto ID del producto
+     * @return stock actual, o null si el ledger no está cargado o no conoce el
+     *         producto
+     */
+    Long obtenerStock(String idProducto);
+
+    /**
+     * Descuenta stock de varios productos de forma atómica: se aplican todos
+     * los descuentos o ninguno.
+     *
+     * Si hay una transacción activa, el descuento se persiste solo si ésta se
+     * confirma y se revierte en memoria si falla.
+     *
+     * @param cantidadesPorProducto idProducto -> cantidad a descontar
+     * @param reservadoPorProducto  idProducto -> unidades reservadas por otros
+     *                              pedidos, que el descuento no puede tomar
+     *                              (los productos ausentes no tienen reservas)
+     * @return ids rechazados por stock insuficiente o inexistencia (lista vacía
+     *         si se aplicó el descuento)
+     */
+    List<String> descontar(Map<String, Long> cantidadesPorProducto, Map<String, Long> reservadoPorProducto);
+
+    /**
+     * Repone stock de varios productos, con la misma semántica transaccional
+     * que {@link #descontar(Map, Map)}.
+     *
+     * @param cantidadesPorProducto idProducto -> cantidad a devolver
+     * @return ids de productos que el ledger no conoce (no se reponen)
+     */
+    List<String> reponer(Map<String, Long> cantidadesPorProducto);
+
+    /**
+     * Actualiza el ledger tras escribir el stock de un producto directamente en
+     * la base de datos (alta o edición del producto). Debe llamarse después del
+     * commit: el stock se vuelve a leer de PRODUCTOS, porque la escritura de
+     * pendientes pudo aplicarse sobre lo guardado.
+     *
+     * @param idProducto ID del producto
+     */
+    void sincronizarProducto(String idProducto);
+
+    /**
+     * Escribe en PRODUCTOS las variaciones confirmadas pendientes.
+     *
+     * @return número de productos actualizados
+     */
+    int persistirPendientes();
+}
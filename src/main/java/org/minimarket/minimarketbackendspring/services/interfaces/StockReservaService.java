@@ -0,0 +1,91 @@
+package org.minimarket.minimarketbackendspring.services.interfaces;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Servicio de reservas temporales de stock para pedidos.
+ *
+ * Un pedido recién creado reserva sus cantidades durante un tiempo limitado.
+ * El stock disponible para otros usuarios es el stock físico menos las
+ * reservas vigentes, por lo que un pedido con reserva vigente no necesita
+ * volver a validar stock al pagarse: la reserva acompaña a las líneas del
+ * pedido mientras éstas cambian.
+ *
+ * <p><strong>IMPORTANTE:</strong> Las reservas viven en memoria. Si la
+ * aplicación se reinicia, los pedidos pendientes pierden su reserva y su stock
+ * se valida al momento del pago.</p>
+ */
+public interface StockReservaService {
+
+    /**
+     * Reserva stock para un pedido. Se reserva todo o nada.
+     *
+     * Si hay una transacción activa y se revierte, la reserva se libera.
+     *
+     * @param idPedido              ID del pedido
+     * @param cantidadesPorProducto idProducto -> cantidad a reservar
+     * @return ids de productos sin stock disponible suficiente (lista vacía si
+     *         se reservó)
+     */
+    List<String> reservar(Long idPedido, Map<String, Long> cantidadesPorProducto);
+
+    /**
+     * Ajusta la reserva vigente de un pedido a las nuevas cantidades de sus
+     * líneas. Los aumentos se reservan todo o nada; las disminuciones (cantidad
+     * 0 para una línea eliminada) liberan la diferencia.
+     *
+     * Si el pedido no tiene reserva vigente no se hace nada. Si hay una
+     * transacción activa y se revierte, se restauran las cantidades anteriores.
+     *
+     * @param idPedido              ID del pedido
+     * @param cantidadesPorProducto idProducto -> nueva cantidad total del
+     *                              producto en el pedido
+     * @return ids de productos sin stock disponible para el aumento (lista
+     *         vacía si se ajustó)
+     */
+    List<String> ajustar(Long idPedido, Map<String, Long> cantidadesPorProducto);
+
+    /**
+     * Indica si el pedido tiene una reserva que aún no vence.
+     *
+     * @param idPedido ID del pedido
+     * @return true si la reserva está vigente
+     */
+    boolean tieneReservaVigente(Long idPedido);
+
+    /**
+     * Convierte la reserva de un pedido pagado: el stock ya se descontó, por lo
+     * que la reserva deja de contarse.
+     *
+     * @param idPedido ID del pedido
+     */
+    void confirmar(Long idPedido);
+
+    /**
+     * Libera la reserva de un pedido (cancelación o vencimiento).
+     *
+     * @param idPedido ID del pedido
+     */
+    void liberar(Long idPedido);
+
+    /**
+     * Obtiene la cantidad reservada de un producto por pedidos vigentes.
+     *
+     * @param idProducto ID del producto
+     * @return unidades reservadas (0 si no hay reservas)
+     */
+    long cantidadReservada(String idProducto);
+
+    /**
+     * Obtiene las unidades de cada producto reservadas por pedidos distintos
+     * del indicado. Es lo que un pago no puede tomar del stock físico.
+     *
+     * @param idPedido     ID del pedido que se paga (null si no hay pedido)
+     * @param idsProductos ids de los productos
+     * @return idProducto -> unidades reservadas por otros pedidos (solo los
+     *         productos con reservas)
+     */
+    Map<String, Long> cantidadesReservadasPorOtros(Long idPedido, Collection<String> idsProductos);
+}
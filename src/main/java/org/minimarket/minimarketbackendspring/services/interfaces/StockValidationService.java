@@ -1,8 +1,10 @@
 package org.minimarket.minimarketbackendspring.services.interfaces;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
+import org.minimarket.minimarketbackendspring.dtos.CarritoTemporalDto;
 import org.minimarket.minimarketbackendspring.dtos.DetallePedidoDTO;
 
 /**
@@ -24,6 +26,15 @@ public interface StockValidationService {
    */
   Map<String, Long> validarStockCarrito(String idUsuario);
 
+  /**
+   * Valida stock de items de carrito ya cargados, sin volver a leer el carrito.
+   * 
+   * @param items Items del carrito
+   * @return Map con idProducto -> cantidad disponible (solo productos con
+   *         problemas)
+   */
+  Map<String, Long> validarStockItemsCarrito(List<CarritoTemporalDto> items);
+
   /**
    * Valida que todos los productos en el pedido tengan stock disponible.
    * 
@@ -33,6 +44,24 @@ public interface StockValidationService {
    */
   Map<String, Long> validarStockPedido(List<DetallePedidoDTO> detallesPedido);
 
+  /**
+   * Obtiene el stock actual de varios productos con una sola consulta.
+   * 
+   * @param idsProductos IDs de los productos
+   * @return Map con idProducto -> stock (los productos inexistentes no aparecen)
+   */
+  Map<String, Long> obtenerStockActual(Collection<String> idsProductos);
+
+  /**
+   * Valida cantidades solicitadas contra una única lectura del stock de todos
+   * los productos involucrados.
+   * 
+   * @param cantidadesPorProducto Map con idProducto -> cantidad solicitada
+   * @return Map con idProducto -> cantidad disponible (solo productos con
+   *         problemas)
+   */
+  Map<String, Long> validarStock(Map<String, Long> cantidadesPorProducto);
+
   /**
    * Limpia productos sin stock de todos los carritos.
    * 
@@ -60,7 +89,10 @@ public interface StockValidationService {
 
   /**
    * Procesa la venta y actualiza el stock.
-   * Valida stock -> Actualiza stock -> Limpia carritos afectados.
+   * Descuenta stock de forma condicional (en un solo lote) -> Limpia carritos
+   * afectados. Las unidades reservadas por otros pedidos no se pueden vender;
+   * la reserva del propio pedido sí. Si algún producto no tiene stock
+   * suficiente no se descuenta nada.
    * 
    * @param detallesPedido Lista de detalles del pedido
    * @return true si la venta se procesó exitosamente
@@ -68,6 +100,15 @@ public interface StockValidationService {
    */
   boolean procesarVentaYActualizarStock(List<DetallePedidoDTO> detallesPedido);
 
+  /**
+   * Devuelve al stock las cantidades de un pedido (por ejemplo, al cancelar un
+   * pedido pagado) en un solo lote.
+   * 
+   * @param detallesPedido Lista de detalles del pedido
+   * @return Lista de productos que ya no existen y no pudieron reponerse
+   */
+  List<String> reponerStock(List<DetallePedidoDTO> detallesPedido);
+
   /**
    * Verifica si un producto tiene stock suficiente.
    * 
@@ -0,0 +1,117 @@
+package org.minimarket.minimarketbackendspring.services.interfaces;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.minimarket.minimarketbackendspring.dtos.DescuentoPromocionDTO;
+
+/**
+ * Tabla en memoria con el precio efectivo de cada producto para el día de hoy:
+ * precio de lista, promoción aplicada y precio final.
+ *
+ * Una promoción puede apuntar a un producto, a una categoría, a un proveedor o
+ * a todo el catálogo. A cada producto le aplica la promoción vigente del
+ * alcance más específico (producto, categoría, proveedor y por último
+ * catálogo) y, dentro de ese alcance, la de mayor porcentaje.
+ *
+ * La tabla se recalcula por partes: un cambio de producto solo recalcula ese
+ * producto, y un cambio de promociones (o el inicio o fin de una) solo los
+ * productos de los alcances cuyo resultado cambió. Hasta que se publica la
+ * tabla recalculada, las lecturas siguen viendo la anterior.
+ */
+public interface TablaPreciosService {
+
+    /**
+     * Evento publicado cuando cambia el precio final de los productos
+     * indicados, ya sea por un cambio de promociones o de productos, o porque
+     * una promoción empezó o terminó. Se publica después de la tabla nueva;
+     * los carritos lo usan para invalidar solo los que tienen esos productos.
+     */
+    record CambioPrecios(Set<String> idsProductos) {
+    }
+
+    /**
+     * Fila de la tabla. Sin promoción, el descuento va en null y el precio
+     * final es el de lista.
+     *
+     * @param idProducto     ID del producto
+     * @param precioOriginal precio de lista
+     * @param idDescuento    promoción aplicada
+     * @param porcentaje     porcentaje de la promoción aplicada
+     * @param precioFinal    precio con la promoción aplicada
+     */
+    record PrecioVigente(String idProducto, BigDecimal precioOriginal, Long idDescuento, BigDecimal porcentaje,
+            BigDecimal precioFinal) {
+    }
+
+    /**
+     * Precio efectivo de un producto.
+     *
+     * @param idProducto ID del producto
+     * @return la fila del producto, o null si el producto no existe
+     */
+    PrecioVigente obtener(String idProducto);
+
+    /**
+     * Mayor descuento aplicable a cada producto en una fecha. Para hoy se lee
+     * de la tabla; para otras fechas se evalúan en memoria las mismas reglas.
+     *
+     * @param idsProductos ids de los productos
+     * @param fecha        fecha en la que deben estar vigentes las promociones
+     * @return idProducto -> porcentaje (solo productos con promoción)
+     */
+    Map<String, BigDecimal> porcentajes(Collection<String> idsProductos, LocalDate fecha);
+
+    /**
+     * Promoción aplicada a un producto.
+     *
+     * @return la promoción, o null si no tiene o el producto no existe
+     */
+    DescuentoPromocionDTO promocionAplicada(String idProducto);
+
+    /**
+     * Promociones vigentes que alcanzan a un producto, empezando por la que se
+     * aplica.
+     *
+     * @return las promociones, o null si el producto no existe
+     */
+    List<DescuentoPromocionDTO> promocionesVigentes(String idProducto);
+
+    /**
+     * Todas las promociones vigentes hoy.
+     */
+    List<DescuentoPromocionDTO> promocionesVigentes();
+
+    /**
+     * Indica si alguna promoción en estado activo (vigente o no) alcanza al
+     * producto.
+     */
+    boolean tienePromocionesActivas(String idProducto);
+
+    /**
+     * Indica si una promoción está activa y vigente hoy.
+     */
+    boolean esVigente(Long idDescuento);
+
+    /**
+     * Versión de la tabla. Cambia tras confirmarse un cambio de promociones o
+     * de productos y cuando empieza o termina una promoción.
+     */
+    long version();
+
+    /**
+     * Registra que las promociones cambiaron en la transacción en curso; se
+     * aplica al confirmarse.
+     */
+    void registrarCambioPromociones();
+
+    /**
+     * Registra que un producto (precio, categoría o proveedor) cambió en la
+     * transacción en curso; se aplica al confirmarse.
+     */
+    void registrarCambioProducto(String idProducto);
+}
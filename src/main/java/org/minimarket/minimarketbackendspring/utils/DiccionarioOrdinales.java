@@ -0,0 +1,71 @@
+package org.minimarket.minimarketbackendspring.utils;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Asigna a cada clave (por ejemplo, un ID de producto) un entero denso que no
+ * cambia mientras viva la instancia, para guardar referencias como {@code int}
+ * en lugar de repetir la cadena.
+ *
+ * Las claves no se liberan: está pensado para conjuntos acotados, como el
+ * catálogo de productos. Es seguro usarlo desde varios hilos.
+ */
+public class DiccionarioOrdinales {
+
+    private final ConcurrentHashMap<String, Integer> ordinales = new ConcurrentHashMap<>();
+
+    // ordinal -> clave; se reemplaza al crecer
+    private volatile String[] claves = new String[256];
+
+    private int siguiente;
+
+    /**
+     * Ordinal de la clave, asignándole uno nuevo si aún no tiene.
+     */
+    public int ordinal(String clave) {
+        Integer ordinal = ordinales.get(clave);
+        if (ordinal != null) {
+            return ordinal;
+        }
+
+        synchronized (this) {
+            ordinal = ordinales.get(clave);
+            if (ordinal != null) {
+                return ordinal;
+            }
+            int nuevo = siguiente++;
+            if (nuevo == claves.length) {
+                claves = Arrays.copyOf(claves, claves.length * 2);
+            }
+            claves[nuevo] = clave;
+            // Se publica después de guardar la clave: quien vea el ordinal ve la clave
+            ordinales.put(clave, nuevo);
+            return nuevo;
+        }
+    }
+
+    /**
+     * Ordinal de la clave sin asignar uno nuevo.
+     *
+     * @return el ordinal, o -1 si la clave nunca se registró
+     */
+    public int buscar(String clave) {
+        Integer ordinal = ordinales.get(clave);
+        return ordinal != null ? ordinal : -1;
+    }
+
+    /**
+     * Clave de un ordinal ya asignado.
+     */
+    public String clave(int ordinal) {
+        return claves[ordinal];
+    }
+
+    /**
+     * Cantidad de claves registradas.
+     */
+    public int tamanio() {
+        return ordinales.size();
+    }
+}
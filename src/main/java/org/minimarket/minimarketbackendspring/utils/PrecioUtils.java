@@ -0,0 +1,29 @@
+package org.minimarket.minimarketbackendspring.utils;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Utilidades de cálculo de precios compartidas por los servicios de
+ * descuentos, carrito y pedidos.
+ */
+public final class PrecioUtils {
+
+    private PrecioUtils() {
+    }
+
+    /**
+     * Aplica un porcentaje de descuento: precio - (porcentaje / 100 * precio).
+     *
+     * @param precioOriginal precio sin descuento
+     * @param porcentaje     porcentaje de descuento (0-100)
+     * @return precio final redondeado a 2 decimales
+     */
+    public static BigDecimal aplicarPorcentaje(BigDecimal precioOriginal, BigDecimal porcentaje) {
+        BigDecimal porcentajeDescuento = porcentaje.divide(BigDecimal.valueOf(100));
+        BigDecimal descuentoAplicado = precioOriginal.multiply(porcentajeDescuento);
+        BigDecimal precioFinal = precioOriginal.subtract(descuentoAplicado);
+
+        return precioFinal.setScale(2, RoundingMode.HALF_UP);
+    }
+}
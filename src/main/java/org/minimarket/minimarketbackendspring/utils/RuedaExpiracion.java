@@ -0,0 +1,119 @@
+package org.minimarket.minimarketbackendspring.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rueda de tiempo (timing wheel) para expirar claves sin recorrer todas.
+ *
+ * El tiempo se divide en ticks de duración fija y cada clave se guarda en la
+ * ranura de su tick de vencimiento. Al avanzar solo se revisan las ranuras de
+ * los ticks transcurridos; las claves que vencen en una vuelta posterior de la
+ * rueda permanecen en su ranura hasta entonces.
+ *
+ * El tiempo se recibe como parámetro (milisegundos) para poder probarla sin
+ * depender del reloj.
+ *
+ * @param <K> tipo de la clave programada
+ */
+public class RuedaExpiracion<K> {
+
+    private final long duracionTickMs;
+
+    // Cada ranura guarda clave -> tick de vencimiento
+    private final List<Map<K, Long>> ranuras;
+
+    // Clave -> índice de su ranura, para cancelar sin buscar
+    private final Map<K, Integer> indice = new HashMap<>();
+
+    private long ultimoTick;
+
+    /**
+     * @param numeroRanuras  cantidad de ranuras de la rueda
+     * @param duracionTickMs duración de cada tick en milisegundos
+     * @param ahoraMs        instante inicial en milisegundos
+     */
+    public RuedaExpiracion(int numeroRanuras, long duracionTickMs, long ahoraMs) {
+        if (numeroRanuras <= 0 || duracionTickMs <= 0) {
+            throw new IllegalArgumentException("La rueda requiere ranuras y duración de tick positivas");
+        }
+        this.duracionTickMs = duracionTickMs;
+        this.ranuras = new ArrayList<>(numeroRanuras);
+        for (int i = 0; i < numeroRanuras; i++) {
+            ranuras.add(new HashMap<>());
+        }
+        this.ultimoTick = ahoraMs / duracionTickMs;
+    }
+
+    /**
+     * Programa (o reprograma) el vencimiento de una clave.
+     *
+     * @param clave       clave a programar
+     * @param vencimiento instante de vencimiento en milisegundos
+     */
+    public synchronized void programar(K clave, long vencimiento) {
+        cancelar(clave);
+
+        // Redondear hacia arriba para no vencer antes de tiempo
+        long tick = Math.max((vencimiento + duracionTickMs - 1) / duracionTickMs, ultimoTick + 1);
+        int ranura = (int) (tick % ranuras.size());
+        ranuras.get(ranura).put(clave, tick);
+        indice.put(clave, ranura);
+    }
+
+    /**
+     * Cancela el vencimiento de una clave.
+     *
+     * @param clave clave a cancelar
+     * @return true si la clave estaba programada
+     */
+    public synchronized boolean cancelar(K clave) {
+        Integer ranura = indice.remove(clave);
+        if (ranura == null) {
+            return false;
+        }
+        ranuras.get(ranura).remove(clave);
+        return true;
+    }
+
+    /**
+     * Avanza la rueda hasta el instante indicado y retira las claves vencidas.
+     *
+     * @param ahoraMs instante actual en milisegundos
+     * @return claves vencidas desde el último avance
+     */
+    public synchronized List<K> avanzar(long ahoraMs) {
+        long tickActual = ahoraMs / duracionTickMs;
+        List<K> vencidas = new ArrayList<>();
+        if (tickActual <= ultimoTick) {
+            return vencidas;
+        }
+
+        // Si pasó más de una vuelta basta con revisar cada ranura una vez
+        long ticksPendientes = Math.min(tickActual - ultimoTick, ranuras.size());
+        for (long t = tickActual - ticksPendientes + 1; t <= tickActual; t++) {
+            Iterator<Map.Entry<K, Long>> it = ranuras.get((int) (t % ranuras.size())).entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<K, Long> entry = it.next();
+                if (entry.getValue() <= tickActual) {
+                    vencidas.add(entry.getKey());
+                    indice.remove(entry.getKey());
+                    it.remove();
+                }
+            }
+        }
+
+        ultimoTick = tickActual;
+        return vencidas;
+    }
+
+    /**
+     * @return cantidad de claves programadas
+     */
+    public synchronized int tamanio() {
+        return indice.size();
+    }
+}
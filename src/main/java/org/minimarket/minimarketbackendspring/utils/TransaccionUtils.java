@@ -0,0 +1,53 @@
+package org.minimarket.minimarketbackendspring.utils;
+
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Utilidades para ejecutar acciones según el resultado de la transacción en
+ * curso.
+ *
+ * Sirve para mantener sincronizadas estructuras en memoria (que no participan
+ * en la transacción) con lo que realmente se confirmó en la base de datos.
+ */
+public final class TransaccionUtils {
+
+    private TransaccionUtils() {
+    }
+
+    /**
+     * Registra acciones a ejecutar cuando termine la transacción actual.
+     * Si no hay transacción activa se ejecuta {@code alConfirmar} de inmediato.
+     *
+     * @param alConfirmar acción a ejecutar si la transacción se confirma
+     * @param alRevertir  acción a ejecutar si la transacción se revierte o su
+     *                    resultado es desconocido
+     */
+    public static void alFinalizar(Runnable alConfirmar, Runnable alRevertir) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            alConfirmar.run();
+            return;
+        }
+
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_COMMITTED) {
+                    alConfirmar.run();
+                } else {
+                    alRevertir.run();
+                }
+            }
+        });
+    }
+
+    /**
+     * Ejecuta una acción solo después de que la transacción actual se confirme.
+     *
+     * @param accion acción a ejecutar
+     */
+    public static void despuesDeCommit(Runnable accion) {
+        alFinalizar(accion, () -> {
+        });
+    }
+}
@@ -0,0 +1,51 @@
+package org.minimarket.minimarketbackendspring.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Versiones en memoria por clave (por ejemplo, por usuario) para saber si lo
+ * que un cliente ya tiene sigue vigente sin consultar la base de datos.
+ *
+ * Todas las versiones salen de una misma secuencia: una clave desalojada que
+ * se vuelve a pedir recibe un número nuevo en lugar de repetir uno que ya se
+ * entregó con otros datos. Las versiones solo sirven dentro de esta instancia;
+ * para compararlas entre reinicios se combinan con {@link #ARRANQUE}.
+ */
+public class VersionesPorClave {
+
+    /**
+     * Identifica el arranque de la aplicación.
+     */
+    public static final String ARRANQUE = Long.toString(System.currentTimeMillis(), 36);
+
+    private final AtomicLong secuencia = new AtomicLong();
+
+    private final Cache<String, Long> versiones;
+
+    /**
+     * @param maximoClaves cantidad máxima de claves recordadas
+     */
+    public VersionesPorClave(long maximoClaves) {
+        this.versiones = CacheBuilder.newBuilder()
+                .maximumSize(maximoClaves)
+                .build();
+    }
+
+    /**
+     * Versión actual de la clave; si no se recuerda, se le asigna una nueva.
+     */
+    public long obtener(String clave) {
+        return versiones.asMap().computeIfAbsent(clave, c -> secuencia.incrementAndGet());
+    }
+
+    /**
+     * Da una versión nueva a la clave. Debe llamarse después de que el cambio
+     * sea visible para quien vuelva a leer los datos.
+     */
+    public void avanzar(String clave) {
+        versiones.put(clave, secuencia.incrementAndGet());
+    }
+}
@@ -135,6 +135,7 @@ CREATE TABLE productos (
                            descripcion  CLOB,
                            precio       FLOAT                                     NOT NULL,
                            stock        NUMBER                                    NOT NULL,
+                           version      NUMBER                   DEFAULT 0        NOT NULL,
                            foto         VARCHAR2(100),
                            id_categoria NUMBER                                    NOT NULL,
                            id_proveedor NUMBER                                    NOT NULL,
@@ -186,6 +187,7 @@ CREATE TABLE pedido (
                         total              NUMBER(10, 2) DEFAULT 0,
                         descuento_aplicado NUMBER(10, 2) DEFAULT 0,
                         impuesto           NUMBER(10, 2) DEFAULT 0,
+                        version            NUMBER        DEFAULT 0 NOT NULL,
                         created_by         VARCHAR2(36),
                         updated_by         VARCHAR2(36),
                         created_at         TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP,
@@ -196,9 +198,16 @@ CREATE TABLE pedido (
                         FOREIGN KEY (updated_by) REFERENCES usuarios (id_usuario) ON DELETE SET NULL
 );
 
+-- Secuencia del pedido: Hibernate reserva bloques de 50 ids (allocationSize)
+-- En una base con datos, usar START WITH igual a MAX(id_pedido) + 1
+CREATE SEQUENCE seq_pedido START WITH 1 INCREMENT BY 50;
+
 CREATE TABLE descuento_promocion (
                                      id_descuento NUMBER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
-                                     id_producto  VARCHAR2(36) NOT NULL,
+                                     -- Alcance: un producto, una categoría, un proveedor o (ninguno) todo el catálogo
+                                     id_producto  VARCHAR2(36),
+                                     id_categoria NUMBER,
+                                     id_proveedor NUMBER,
                                      descripcion  VARCHAR2(100),
                                      porcentaje   NUMBER(5, 2),
                                      fecha_inicio DATE,
@@ -206,7 +215,10 @@ CREATE TABLE descuento_promocion (
                                      estado       VARCHAR2(10) DEFAULT 'activo',
 
                                      CHECK (fecha_fin IS NULL OR fecha_fin >= fecha_inicio),
-                                     FOREIGN KEY (id_producto) REFERENCES productos (id_producto)
+                                     CHECK (NVL2(id_producto, 1, 0) + NVL2(id_categoria, 1, 0) + NVL2(id_proveedor, 1, 0) <= 1),
+                                     FOREIGN KEY (id_producto) REFERENCES productos (id_producto),
+                                     FOREIGN KEY (id_categoria) REFERENCES categoria (id_categoria),
+                                     FOREIGN KEY (id_proveedor) REFERENCES proveedor (id_proveedor)
 );
 
 CREATE TABLE detalle_pedido (
@@ -216,6 +228,7 @@ CREATE TABLE detalle_pedido (
                                 cantidad        NUMBER       NOT NULL,
                                 precio_unitario NUMBER(10, 2),
                                 subtotal        NUMBER(10, 2),
+                                version         NUMBER DEFAULT 0 NOT NULL,
                                 id_descuento    NUMBER,
 
                                 FOREIGN KEY (id_pedido) REFERENCES pedido (id_pedido) ON DELETE CASCADE,
@@ -223,6 +236,10 @@ CREATE TABLE detalle_pedido (
                                 FOREIGN KEY (id_descuento) REFERENCES descuento_promocion (id_descuento) ON DELETE SET NULL
 );
 
+-- Secuencia del detalle: permite insertar las líneas del pedido en lotes JDBC
+-- En una base con datos, usar START WITH igual a MAX(id_detalle) + 1
+CREATE SEQUENCE seq_detalle_pedido START WITH 1 INCREMENT BY 50;
+
 CREATE OR REPLACE TRIGGER trg_calc_subtotal
     BEFORE INSERT OR UPDATE ON detalle_pedido
                                 FOR EACH ROW
@@ -249,7 +266,22 @@ CREATE TABLE carrito_temporal (
                                   fecha_agregado TIMESTAMP DEFAULT CURRENT_TIMESTAMP,
 
                                   FOREIGN KEY (id_producto) REFERENCES productos (id_producto),
-                                  FOREIGN KEY (id_usuario) REFERENCES usuarios (id_usuario) ON DELETE SET NULL
+                                  FOREIGN KEY (id_usuario) REFERENCES usuarios (id_usuario) ON DELETE CASCADE,
+                                  -- Una línea por usuario y producto (MERGE del carrito); sirve también de índice por usuario
+                                  CONSTRAINT uq_carrito_usuario_producto UNIQUE (id_usuario, id_producto)
+);
+
+CREATE INDEX idx_pedido_usuario_estado ON pedido (id_usuario, estado);
+-- Claves Idempotency-Key de POST /api/pedido/desde-carrito: la primera inserción gana
+CREATE TABLE pedido_idempotencia (
+                                     clave      VARCHAR2(100) PRIMARY KEY,
+                                     id_usuario VARCHAR2(36)  NOT NULL,
+                                     id_pedido  NUMBER,
+                                     respuesta  CLOB,
+                                     created_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP NOT NULL,
+                                     -- Intento que tiene la clave; otro puede tomarla si vence sin respuesta
+                                     propietario  VARCHAR2(36) NOT NULL,
+                                     reclamada_at TIMESTAMP WITH TIME ZONE DEFAULT CURRENT_TIMESTAMP NOT NULL
 );
 
-CREATE INDEX idx_carrito_usuario ON carrito_temporal (id_usuario);
\ No newline at end of file
+CREATE INDEX idx_pedido_idempotencia_fecha ON pedido_idempotencia (created_at);
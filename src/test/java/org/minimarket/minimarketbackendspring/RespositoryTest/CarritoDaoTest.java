@@ -0,0 +1,177 @@
+package org.minimarket.minimarketbackendspring.RespositoryTest;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.minimarket.minimarketbackendspring.daos.impl.CarritoDaoImpl;
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO;
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO.Linea;
+import org.minimarket.minimarketbackendspring.entities.Usuario;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.startsWith;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.spy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/*
+    Test de las sentencias MERGE y de la purga de carritos sobre H2 en modo
+    Oracle (la misma sintaxis que se ejecuta en producción)
+ */
+@ActiveProfiles("test")
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@EntityScan(basePackageClasses = Usuario.class)
+@Import(CarritoDaoImpl.class)
+public class CarritoDaoTest {
+
+    @Autowired
+    private CarritoDAO carritoDAO;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("INSERT INTO USUARIOS (ID_USUARIO, NOMBRE, APELLIDO, EMAIL, ROL, ESTADO) "
+                + "VALUES ('U1', 'Ana', 'Diaz', 'ana@correo.com', 'cliente', 'activo')");
+        jdbcTemplate.update("INSERT INTO CATEGORIA (ID_CATEGORIA, NOMBRE, ESTADO) VALUES (1, 'Bebidas', 'activo')");
+        jdbcTemplate.update("INSERT INTO PROVEEDOR (ID_PROVEEDOR, NOMBRE, CONTACTO, EMAIL, ESTADO) "
+                + "VALUES (1, 'Proveedor', 'Contacto', 'prov@correo.com', 'activo')");
+        jdbcTemplate.update("INSERT INTO PRODUCTOS (ID_PRODUCTO, NOMBRE, PRECIO, STOCK, VERSION, ESTADO, "
+                + "ID_CATEGORIA, ID_PROVEEDOR) VALUES ('P1', 'Agua', 1.5, 20, 0, 'activo', 1, 1)");
+    }
+
+    @Test
+    void incrementarDebeInsertarYLuegoSumar() {
+        assertTrue(carritoDAO.incrementar("U1", "P1", 2, 10));
+        assertTrue(carritoDAO.incrementar("U1", "P1", 3, 10));
+
+        List<Linea> lineas = carritoDAO.findLineasByUsuario("U1");
+        assertEquals(1, lineas.size());
+        assertEquals(5L, lineas.get(0).cantidad());
+    }
+
+    @Test
+    void incrementarNoDebeEscribirSiSuperaElMaximo() {
+        // Línea nueva que ya supera el máximo
+        assertFalse(carritoDAO.incrementar("U1", "P1", 11, 10));
+        assertTrue(carritoDAO.findLineasByUsuario("U1").isEmpty());
+
+        assertTrue(carritoDAO.incrementar("U1", "P1", 8, 10));
+
+        assertFalse(carritoDAO.incrementar("U1", "P1", 3, 10));
+        assertEquals(8L, carritoDAO.findLineasByUsuario("U1").get(0).cantidad());
+    }
+
+    @Test
+    void incrementarNoDebeEscribirConUsuarioOProductoInexistente() {
+        assertFalse(carritoDAO.incrementar("NO-EXISTE", "P1", 1, 10));
+        assertFalse(carritoDAO.incrementar("U1", "NO-EXISTE", 1, 10));
+
+        assertTrue(carritoDAO.findLineasByUsuario("U1").isEmpty());
+        assertNull(carritoDAO.findLineasByUsuario("NO-EXISTE"));
+    }
+
+    @Test
+    void incrementarDebeReintentarComoActualizacionTrasUnaClaveDuplicada() {
+        JdbcTemplate original = jdbcTemplate;
+        JdbcTemplate espia = spy(original);
+        AtomicBoolean primera = new AtomicBoolean(true);
+        // Simula otra transacción que inserta la misma línea entre la lectura y la inserción
+        doAnswer(invocation -> {
+            if (primera.getAndSet(false)) {
+                original.update("INSERT INTO CARRITO_TEMPORAL (ID_USUARIO, ID_PRODUCTO, CANTIDAD, FECHA_AGREGADO) "
+                        + "VALUES ('U1', 'P1', 4, CURRENT_TIMESTAMP)");
+                throw new DuplicateKeyException("UQ_CARRITO_USUARIO_PRODUCTO");
+            }
+            return invocation.callRealMethod();
+        }).when(espia).update(startsWith("MERGE"), any(Object[].class));
+        ReflectionTestUtils.setField(carritoDAO, "jdbcTemplate", espia);
+        try {
+            assertTrue(carritoDAO.incrementar("U1", "P1", 2, 10));
+        } finally {
+            ReflectionTestUtils.setField(carritoDAO, "jdbcTemplate", original);
+        }
+
+        assertEquals(6L, carritoDAO.findLineasByUsuario("U1").get(0).cantidad());
+    }
+
+    @Test
+    void guardarLineasDebeInsertarYActualizarEnUnLote() {
+        LocalDateTime fecha = LocalDateTime.now().minusDays(1);
+        carritoDAO.guardarLineas(Map.of("U1", List.of(new Linea(null, "P1", 2, fecha))));
+        carritoDAO.guardarLineas(Map.of("U1", List.of(new Linea(null, "P1", 7, null))));
+
+        List<Linea> lineas = carritoDAO.findLineasByUsuario("U1");
+        assertEquals(1, lineas.size());
+        assertEquals(7L, lineas.get(0).cantidad());
+        // La actualización conserva la fecha con que se agregó la línea
+        assertEquals(fecha.withNano(0), lineas.get(0).fechaAgregado().withNano(0));
+    }
+
+    @Test
+    void purgaDebePaginarPorClaveEnVariosBloques() {
+        LocalDateTime corte = LocalDateTime.now().minusDays(7);
+        for (String idUsuario : List.of("U2", "U3", "U4", "U5")) {
+            insertarUsuario(idUsuario);
+        }
+        insertarLinea("U1", "P1", corte.minusDays(1));
+        insertarLinea("U2", "P1", corte.minusDays(2));
+        insertarLinea("U3", "P1", corte.plusDays(1));
+        insertarLinea("U4", "P1", corte.minusDays(3));
+        insertarLinea("U5", "P1", corte.minusDays(4));
+
+        assertEquals(List.of("U1", "U2"), carritoDAO.findUsuariosConCarritoAbandonado(corte, null, 2));
+        // U3 tiene una línea posterior al corte y no es candidato
+        assertEquals(List.of("U4", "U5"), carritoDAO.findUsuariosConCarritoAbandonado(corte, "U2", 2));
+        assertTrue(carritoDAO.findUsuariosConCarritoAbandonado(corte, "U5", 2).isEmpty());
+    }
+
+    @Test
+    void purgaDebeConservarCarritosTocadosDespuesDelCorte() {
+        LocalDateTime corte = LocalDateTime.now().minusDays(7);
+        insertarUsuario("U2");
+        jdbcTemplate.update("INSERT INTO PRODUCTOS (ID_PRODUCTO, NOMBRE, PRECIO, STOCK, VERSION, ESTADO, "
+                + "ID_CATEGORIA, ID_PROVEEDOR) VALUES ('P2', 'Jugo', 2.5, 20, 0, 'activo', 1, 1)");
+        insertarLinea("U1", "P1", corte.minusDays(1));
+        insertarLinea("U2", "P1", corte.minusDays(1));
+
+        List<String> candidatos = carritoDAO.findUsuariosConCarritoAbandonado(corte, null, 10);
+        assertEquals(List.of("U1", "U2"), candidatos);
+
+        // U2 agrega un producto entre la selección y el borrado
+        insertarLinea("U2", "P2", LocalDateTime.now());
+
+        assertEquals(1, carritoDAO.eliminarCarritosAbandonados(candidatos, corte));
+        assertTrue(carritoDAO.findLineasByUsuario("U1").isEmpty());
+        assertEquals(2, carritoDAO.findLineasByUsuario("U2").size());
+    }
+
+    private void insertarUsuario(String idUsuario) {
+        jdbcTemplate.update("INSERT INTO USUARIOS (ID_USUARIO, NOMBRE, APELLIDO, EMAIL, ROL, ESTADO) "
+                + "VALUES (?, 'Usuario', 'Prueba', ?, 'cliente', 'activo')", idUsuario,
+                idUsuario.toLowerCase() + "@correo.com");
+    }
+
+    private void insertarLinea(String idUsuario, String idProducto, LocalDateTime fecha) {
+        jdbcTemplate.update("INSERT INTO CARRITO_TEMPORAL (ID_USUARIO, ID_PRODUCTO, CANTIDAD, FECHA_AGREGADO) "
+                + "VALUES (?, ?, 1, ?)", idUsuario, idProducto, Timestamp.valueOf(fecha));
+    }
+}
@@ -0,0 +1,127 @@
+package org.minimarket.minimarketbackendspring.RespositoryTest;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.minimarket.minimarketbackendspring.daos.impl.StockDaoImpl;
+import org.minimarket.minimarketbackendspring.daos.interfaces.StockDAO;
+import org.minimarket.minimarketbackendspring.entities.Usuario;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+
+/*
+    Test de las actualizaciones de stock por lotes sobre H2 en modo Oracle:
+    cada lote debe informar exactamente qué líneas se rechazaron
+ */
+@ActiveProfiles("test")
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@EntityScan(basePackageClasses = Usuario.class)
+@Import(StockDaoImpl.class)
+public class StockDaoTest {
+
+    @Autowired
+    private StockDAO stockDAO;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("INSERT INTO CATEGORIA (ID_CATEGORIA, NOMBRE, ESTADO) VALUES (1, 'Bebidas', 'activo')");
+        jdbcTemplate.update("INSERT INTO PROVEEDOR (ID_PROVEEDOR, NOMBRE, CONTACTO, EMAIL, ESTADO) "
+                + "VALUES (1, 'Proveedor', 'Contacto', 'prov@correo.com', 'activo')");
+        insertarProducto("P1", 10);
+        insertarProducto("P2", 3);
+        insertarProducto("P3", 5);
+    }
+
+    @Test
+    void descontarStockDebeInformarSoloLasLineasRechazadas() {
+        Map<String, Long> cantidades = new LinkedHashMap<>();
+        cantidades.put("P1", 4L);
+        cantidades.put("P2", 5L); // Stock insuficiente
+        cantidades.put("P3", 5L); // Justo el stock disponible
+        cantidades.put("NO-EXISTE", 1L);
+
+        List<String> rechazados = stockDAO.descontarStock(cantidades, Map.of());
+
+        assertEquals(List.of("P2", "NO-EXISTE"), rechazados);
+        assertEquals(6L, stock("P1"));
+        assertEquals(3L, stock("P2"));
+        assertEquals(0L, stock("P3"));
+    }
+
+    @Test
+    void descontarStockDebeAvanzarVersionSoloEnLasLineasAplicadas() {
+        Map<String, Long> cantidades = new LinkedHashMap<>();
+        cantidades.put("P1", 1L);
+        cantidades.put("P2", 4L);
+
+        stockDAO.descontarStock(cantidades, Map.of());
+
+        assertEquals(1L, version("P1"));
+        assertEquals(0L, version("P2"));
+    }
+
+    @Test
+    void descontarStockDebeDejarLasUnidadesReservadas() {
+        Map<String, Long> cantidades = new LinkedHashMap<>();
+        cantidades.put("P1", 4L); // 10 - 4 deja las 6 reservadas
+        cantidades.put("P3", 3L); // 5 - 3 no deja las 3 reservadas
+
+        List<String> rechazados = stockDAO.descontarStock(cantidades, Map.of("P1", 6L, "P3", 3L));
+
+        assertEquals(List.of("P3"), rechazados);
+        assertEquals(6L, stock("P1"));
+        assertEquals(5L, stock("P3"));
+    }
+
+    @Test
+    void ajustarStockDebeAplicarVariacionesYAvanzarVersion() {
+        Map<String, Long> variaciones = new LinkedHashMap<>();
+        variaciones.put("P1", -3L);
+        variaciones.put("NO-EXISTE", 2L);
+        variaciones.put("P2", 7L);
+
+        List<String> rechazados = stockDAO.ajustarStock(variaciones);
+
+        assertEquals(List.of("NO-EXISTE"), rechazados);
+        assertEquals(7L, stock("P1"));
+        assertEquals(10L, stock("P2"));
+        assertEquals(1L, version("P1"));
+        assertEquals(1L, version("P2"));
+    }
+
+    @Test
+    void reponerStockNoDebeRechazarProductosExistentes() {
+        assertTrue(stockDAO.reponerStock(Map.of("P3", 2L)).isEmpty());
+        assertEquals(7L, stock("P3"));
+    }
+
+    private void insertarProducto(String idProducto, long stock) {
+        jdbcTemplate.update("INSERT INTO PRODUCTOS (ID_PRODUCTO, NOMBRE, PRECIO, STOCK, VERSION, ESTADO, "
+                + "ID_CATEGORIA, ID_PROVEEDOR) VALUES (?, ?, 1.5, ?, 0, 'activo', 1, 1)",
+                idProducto, "Producto " + idProducto, stock);
+    }
+
+    private long stock(String idProducto) {
+        return jdbcTemplate.queryForObject("SELECT STOCK FROM PRODUCTOS WHERE ID_PRODUCTO = ?", Long.class,
+                idProducto);
+    }
+
+    private long version(String idProducto) {
+        return jdbcTemplate.queryForObject("SELECT VERSION FROM PRODUCTOS WHERE ID_PRODUCTO = ?", Long.class,
+                idProducto);
+    }
+}
@@ -0,0 +1,65 @@
+package org.minimarket.minimarketbackendspring.unit;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO;
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO.Linea;
+import org.minimarket.minimarketbackendspring.services.impl.CarritoStoreMemoriaServiceImpl;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Pruebas del almacén de carritos en memoria: versiones por cambio de precios.
+ */
+class CarritoStoreMemoriaServiceTest {
+
+    private CarritoStoreMemoriaServiceImpl store;
+    private CarritoDAO carritoDAO;
+
+    @BeforeEach
+    void setUp() {
+        carritoDAO = mock(CarritoDAO.class);
+        store = new CarritoStoreMemoriaServiceImpl();
+        ReflectionTestUtils.setField(store, "carritoDAO", carritoDAO);
+        ReflectionTestUtils.setField(store, "transactionManager", mock(PlatformTransactionManager.class));
+        ReflectionTestUtils.setField(store, "meterRegistry", new SimpleMeterRegistry());
+        store.inicializar();
+    }
+
+    @Test
+    void debeAvanzarSoloLaVersionDeLosCarritosConLosProductosCambiados() {
+        when(carritoDAO.findLineasByUsuario("U1")).thenReturn(List.of(linea("P1"), linea("P2")));
+        when(carritoDAO.findLineasByUsuario("U2")).thenReturn(List.of(linea("P3")));
+        Long versionU1 = store.version("U1");
+        Long versionU2 = store.version("U2");
+
+        store.avanzarVersiones(Set.of("P2", "NO-EXISTE"));
+
+        assertNotEquals(versionU1, store.version("U1"));
+        assertEquals(versionU2, store.version("U2"));
+    }
+
+    @Test
+    void noDebeCambiarVersionesSiNingunCarritoTieneLosProductos() {
+        when(carritoDAO.findLineasByUsuario("U1")).thenReturn(List.of(linea("P1")));
+        Long version = store.version("U1");
+
+        store.avanzarVersiones(Set.of("P9"));
+
+        assertEquals(version, store.version("U1"));
+    }
+
+    private Linea linea(String idProducto) {
+        return new Linea(null, idProducto, 1L, LocalDateTime.now());
+    }
+}
@@ -1,37 +1,49 @@
 package org.minimarket.minimarketbackendspring.unit;
 
 import java.math.BigDecimal;
-import java.time.Instant;
 import java.time.LocalDateTime;
-import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO;
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO.Linea;
+import org.minimarket.minimarketbackendspring.daos.interfaces.CarritoDAO.ProductoVista;
 import org.minimarket.minimarketbackendspring.dtos.CarritoTemporalDto;
+import org.minimarket.minimarketbackendspring.dtos.requests.CarritoOperacionDTO;
 import org.minimarket.minimarketbackendspring.entities.CarritoTemporal;
 import org.minimarket.minimarketbackendspring.entities.Producto;
 import org.minimarket.minimarketbackendspring.entities.Usuario;
 import org.minimarket.minimarketbackendspring.repositories.CarritoTemporalRepository;
 import org.minimarket.minimarketbackendspring.repositories.ProductoRepository;
-import org.minimarket.minimarketbackendspring.repositories.UsuarioRepository;
 import org.minimarket.minimarketbackendspring.services.impl.CarritoTemporalServiceImpl;
+import org.minimarket.minimarketbackendspring.services.interfaces.CarritoStoreService;
 import org.minimarket.minimarketbackendspring.services.interfaces.DescuentoPromocionService;
-import static org.mockito.ArgumentMatchers.any;
+import org.minimarket.minimarketbackendspring.services.interfaces.StockLedgerService;
+import org.minimarket.minimarketbackendspring.services.interfaces.StockReservaService;
+import org.minimarket.minimarketbackendspring.services.interfaces.TablaPreciosService.CambioPrecios;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
-import static org.mockito.Mockito.atLeast;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
 
 import jakarta.persistence.EntityNotFoundException;
 
@@ -46,11 +58,20 @@ class CarritoTemporalServiceTest {
     private CarritoTemporalRepository carritoRepository;
 
     @Mock
-    private UsuarioRepository usuarioRepository;
+    private CarritoStoreService carritoStore;
 
     @Mock
     private ProductoRepository productoRepository;
 
+    @Mock
+    private CarritoDAO carritoDAO;
+
+    @Mock
+    private StockLedgerService stockLedgerService;
+
+    @Mock
+    private StockReservaService stockReservaService;
+
     @Mock
     private DescuentoPromocionService descuentoService;
 
@@ -64,6 +85,9 @@ class CarritoTemporalServiceTest {
 
     @BeforeEach
     void setUp() {
+        ReflectionTestUtils.setField(carritoService, "maximoResumenes", 100L);
+        carritoService.inicializar();
+
         // Setup de datos de prueba para TDD usando tus DTOs reales
         usuarioMock = new Usuario();
         usuarioMock.setIdUsuario("USER123");
@@ -106,11 +130,10 @@ class CarritoTemporalServiceTest {
         String idProducto = "PROD001";
         Long cantidad = 2L;
 
-        when(usuarioRepository.findById(idUsuario)).thenReturn(Optional.of(usuarioMock));
         when(productoRepository.findById(idProducto)).thenReturn(Optional.of(productoMock));
-        when(carritoRepository.existsByIdUsuario_IdUsuarioAndIdProducto_IdProducto(idUsuario, idProducto))
-                .thenReturn(false);
-        when(carritoRepository.save(any(CarritoTemporal.class))).thenReturn(carritoMock);
+        when(stockLedgerService.obtenerStock(idProducto)).thenReturn(100L);
+        when(carritoStore.agregar(idUsuario, idProducto, 2L, 100L))
+                .thenReturn(new Linea(null, idProducto, 2L, LocalDateTime.now()));
 
         // When - Ejecutar funcionalidad bajo prueba TDD
         CarritoTemporalDto resultado = carritoService.agregarProductoAlCarrito(idUsuario, idProducto, cantidad);
@@ -124,10 +147,9 @@ class CarritoTemporalServiceTest {
         assertEquals(2L, resultado.getCantidad());
 
         // Verificar interacciones según TDD
-        verify(usuarioRepository).findById(idUsuario);
         verify(productoRepository).findById(idProducto);
-        verify(carritoRepository).existsByIdUsuario_IdUsuarioAndIdProducto_IdProducto(idUsuario, idProducto);
-        verify(carritoRepository).save(any(CarritoTemporal.class));
+        verify(carritoStore).agregar(idUsuario, idProducto, 2L, 100L);
+        verify(carritoStore, never()).obtener(anyString());
     }
 
     /**
@@ -140,19 +162,10 @@ class CarritoTemporalServiceTest {
         String idProducto = "PROD001";
         Long cantidadAdicional = 3L;
 
-        CarritoTemporal carritoExistente = new CarritoTemporal();
-        carritoExistente.setId(1L);
-        carritoExistente.setIdUsuario(usuarioMock);
-        carritoExistente.setIdProducto(productoMock);
-        carritoExistente.setCantidad(2L);
-
-        when(carritoRepository.existsByIdUsuario_IdUsuarioAndIdProducto_IdProducto(idUsuario, idProducto))
-                .thenReturn(true);
-        when(carritoRepository.findByIdUsuario_IdUsuarioAndIdProducto_IdProducto(idUsuario, idProducto))
-                .thenReturn(carritoExistente);
-
-        when(carritoRepository.findById(1L)).thenReturn(Optional.of(carritoExistente));        
-        when(carritoRepository.save(any(CarritoTemporal.class))).thenReturn(carritoExistente);
+        when(productoRepository.findById(idProducto)).thenReturn(Optional.of(productoMock));
+        when(stockLedgerService.obtenerStock(idProducto)).thenReturn(100L);
+        when(carritoStore.agregar(idUsuario, idProducto, cantidadAdicional, 100L))
+                .thenReturn(new Linea(1L, idProducto, 5L, carritoMock.getFechaAgregado()));
 
         // When - Agregar más cantidad del mismo producto
         CarritoTemporalDto resultado = carritoService.agregarProductoAlCarrito(idUsuario, idProducto, cantidadAdicional);
@@ -160,9 +173,8 @@ class CarritoTemporalServiceTest {
         // Then - Debe incrementar cantidad existente (2 + 3 = 5)
         assertNotNull(resultado);
         assertEquals(5L, resultado.getCantidad(), "Cantidad debe incrementarse de 2 a 5");
-        verify(carritoRepository).existsByIdUsuario_IdUsuarioAndIdProducto_IdProducto(idUsuario, idProducto);
-        verify(carritoRepository, atLeast(1)).findByIdUsuario_IdUsuarioAndIdProducto_IdProducto(idUsuario, idProducto);
-        verify(carritoRepository).save(any(CarritoTemporal.class));
+        assertEquals(1L, resultado.getId(), "Debe conservar el item existente");
+        verify(carritoStore).agregar(idUsuario, idProducto, cantidadAdicional, 100L);
     }
 
     /**
@@ -173,15 +185,14 @@ class CarritoTemporalServiceTest {
         // Given - Carrito con productos que tienen descuentos activos
         String idUsuario = "USER123";
 
-        List<CarritoTemporal> itemsCarrito = Arrays.asList(carritoMock);
-
-
-        when(usuarioRepository.existsById(idUsuario)).thenReturn(true);
-        when(carritoRepository.findByIdUsuario_IdUsuario(idUsuario)).thenReturn(itemsCarrito);
+        when(carritoStore.obtener(idUsuario)).thenReturn(List.of(lineaMock()));
 
         // Configurar descuentos - producto con 10% descuento
-        when(descuentoService.calcularPrecioConDescuento("PROD001", BigDecimal.valueOf(4.50)))
-                .thenReturn(BigDecimal.valueOf(4.05));
+        when(carritoDAO.findVistaProductos(eq(List.of("PROD001"))))
+                .thenReturn(Map.of("PROD001", vista()));
+        // El descuento lo resuelve la tabla de precios a través del servicio de descuentos
+        when(descuentoService.findMejorPorcentajePorProducto(eq(List.of("PROD001")), any()))
+                .thenReturn(Map.of("PROD001", BigDecimal.valueOf(10)));
 
         // When - Calcular total con descuentos
         BigDecimal total = carritoService.calcularTotalCarritoConDescuentos(idUsuario);
@@ -192,7 +203,7 @@ class CarritoTemporalServiceTest {
         assertTrue(total.compareTo(BigDecimal.ZERO) > 0, "Total debe ser mayor a cero");
 
         // Verificar que se calcularon descuentos
-        verify(descuentoService).calcularPrecioConDescuento("PROD001", BigDecimal.valueOf(4.50));
+        verify(carritoDAO).findVistaProductos(eq(List.of("PROD001")));
     }
 
     /**
@@ -204,13 +215,12 @@ class CarritoTemporalServiceTest {
         // Given - Usuario con items en carrito
         String idUsuario = "USER123";
 
-        List<CarritoTemporal> itemsCarrito = Arrays.asList(carritoMock);
-
-        when(usuarioRepository.existsById(idUsuario)).thenReturn(true);
-        when(carritoRepository.findByIdUsuario_IdUsuario(idUsuario)).thenReturn(itemsCarrito);
-        when(descuentoService.tieneDescuentosActivos("PROD001")).thenReturn(true);
-        when(descuentoService.calcularPrecioConDescuento("PROD001", BigDecimal.valueOf(4.50)))
-                .thenReturn(BigDecimal.valueOf(4.05));
+        when(carritoStore.obtener(idUsuario)).thenReturn(List.of(lineaMock()));
+        when(carritoDAO.findVistaProductos(eq(List.of("PROD001"))))
+                .thenReturn(Map.of("PROD001", vista()));
+        // El descuento lo resuelve la tabla de precios a través del servicio de descuentos
+        when(descuentoService.findMejorPorcentajePorProducto(eq(List.of("PROD001")), any()))
+                .thenReturn(Map.of("PROD001", BigDecimal.valueOf(10)));
 
         // When - Obtener carrito con descuentos
         List<CarritoTemporalDto> resultado = carritoService.findByUsuarioConDescuentos(idUsuario);
@@ -219,9 +229,95 @@ class CarritoTemporalServiceTest {
         assertNotNull(resultado, "Debe retornar lista de items del carrito");
         assertFalse(resultado.isEmpty(), "Lista no debe estar vacía");
 
-        // Verificar que se consultaron descuentos
-        verify(descuentoService).tieneDescuentosActivos("PROD001");
-        verify(descuentoService).calcularPrecioConDescuento("PROD001", BigDecimal.valueOf(4.50));
+        // Verificar que productos y descuentos se obtuvieron en una sola consulta
+        verify(carritoDAO).findVistaProductos(eq(List.of("PROD001")));
+        verify(productoRepository, never()).findAllById(any());
+        assertEquals(0, BigDecimal.valueOf(4.05).compareTo(resultado.get(0).getPrecioConDescuento()));
+        assertTrue(resultado.get(0).getTieneDescuento(), "El item debe marcarse con descuento");
+    }
+
+    /**
+     * Los endpoints de totales, conteo e items comparten un resumen que solo
+     * se recalcula cuando cambia la versión del carrito.
+     */
+    @Test
+    void debeReutilizarResumenMientrasNoCambieLaVersion() {
+        String idUsuario = "USER123";
+
+        when(carritoStore.versionado()).thenReturn(true);
+        when(carritoStore.version(idUsuario)).thenReturn(7L, 7L, 7L, 8L);
+        when(carritoStore.obtener(idUsuario)).thenReturn(List.of(lineaMock()));
+        when(carritoDAO.findVistaProductos(eq(List.of("PROD001"))))
+                .thenReturn(Map.of("PROD001", vista()));
+        // El descuento lo resuelve la tabla de precios a través del servicio de descuentos
+        when(descuentoService.findMejorPorcentajePorProducto(eq(List.of("PROD001")), any()))
+                .thenReturn(Map.of("PROD001", BigDecimal.valueOf(10)));
+
+        assertEquals(0, BigDecimal.valueOf(9.00).compareTo(carritoService.calcularTotalCarrito(idUsuario)));
+        assertEquals(0, BigDecimal.valueOf(8.10).compareTo(carritoService.calcularTotalCarritoConDescuentos(idUsuario)));
+        assertEquals(1, carritoService.findByUsuarioConDescuentos(idUsuario).size());
+        verify(carritoDAO, times(1)).findVistaProductos(any());
+
+        // Un cambio en el carrito da otra versión y obliga a recalcular
+        carritoService.calcularTotalCarrito(idUsuario);
+        verify(carritoDAO, times(2)).findVistaProductos(any());
+    }
+
+    /**
+     * Un cambio de precios solo invalida los carritos con esos productos.
+     */
+    @Test
+    void debeAvanzarLaVersionDeLosCarritosConProductosCuyoPrecioCambio() {
+        carritoService.alCambiarPrecios(new CambioPrecios(Set.of("PROD001")));
+
+        verify(carritoStore).avanzarVersiones(Set.of("PROD001"));
+    }
+
+    /**
+     * Sin almacén versionado no hay ETag y el resumen se recalcula siempre.
+     */
+    @Test
+    void debeRecalcularResumenSiElAlmacenNoEstaVersionado() {
+        String idUsuario = "USER123";
+
+        when(carritoStore.versionado()).thenReturn(false);
+        when(carritoStore.obtener(idUsuario)).thenReturn(List.of(lineaMock()));
+        when(carritoDAO.findVistaProductos(eq(List.of("PROD001"))))
+                .thenReturn(Map.of("PROD001", vista()));
+
+        assertNull(carritoService.versionCarrito(idUsuario));
+        carritoService.calcularTotalCarrito(idUsuario);
+        carritoService.calcularTotalCarrito(idUsuario);
+        verify(carritoDAO, times(2)).findVistaProductos(any());
+        verify(carritoStore, never()).version(any());
+    }
+
+    /**
+     * La validación del carrito carga el stock de todas las líneas de una vez y
+     * aplica quitados y reducciones en una sola operación del almacén.
+     */
+    @Test
+    void debeAjustarCarritoAlStockEnUnSoloLote() {
+        String idUsuario = "USER123";
+        Producto agotado = new Producto();
+        agotado.setIdProducto("PROD002");
+        agotado.setStock(0L);
+
+        when(carritoStore.obtener(idUsuario)).thenReturn(List.of(
+                new Linea(1L, "PROD001", 5L, LocalDateTime.now()),
+                new Linea(2L, "PROD002", 2L, LocalDateTime.now())));
+        when(productoRepository.findAllById(List.of("PROD001", "PROD002")))
+                .thenReturn(List.of(productoMock, agotado));
+        when(stockLedgerService.obtenerStock("PROD001")).thenReturn(3L);
+        when(stockLedgerService.obtenerStock("PROD002")).thenReturn(0L);
+
+        List<CarritoTemporalDto> resultado = carritoService.findByUsuarioConValidacion(idUsuario);
+
+        assertEquals(1, resultado.size());
+        assertEquals(3L, resultado.get(0).getCantidad());
+        verify(carritoStore).ajustar(idUsuario, List.of("PROD002"), Map.of("PROD001", 3L));
+        verify(productoRepository, never()).findById(anyString());
+        verify(carritoStore, never()).quitar(anyString(), anyString());
     }
 
     /**
@@ -231,13 +327,13 @@ class CarritoTemporalServiceTest {
     void debeVaciarCarritoCompleto_TDD() {
         // Given - Usuario con carrito lleno
         String idUsuario = "USER123";
-        when(usuarioRepository.existsById(idUsuario)).thenReturn(true);
+        when(carritoStore.obtener(idUsuario)).thenReturn(List.of(lineaMock()));
 
         // When - Vaciar carrito
         carritoService.vaciarCarrito(idUsuario);
 
         // Then - Debe eliminar todos los items del usuario
-        verify(carritoRepository).deleteByIdUsuario_IdUsuario(idUsuario);
+        verify(carritoStore).vaciar(idUsuario);
     }
 
     /**
@@ -249,7 +345,9 @@ class CarritoTemporalServiceTest {
         String idUsuarioInexistente = "USER999";
         String idProducto = "PROD001";
 
-        when(usuarioRepository.findById(idUsuarioInexistente)).thenReturn(Optional.empty());
+        when(productoRepository.findById(idProducto)).thenReturn(Optional.of(productoMock));
+        when(carritoStore.agregar(eq(idUsuarioInexistente), eq(idProducto), eq(1L), anyLong()))
+                .thenThrow(new EntityNotFoundException("Usuario no encontrado con ID: " + idUsuarioInexistente));
 
         // When & Then - Debe lanzar excepción
         EntityNotFoundException exception = assertThrows(EntityNotFoundException.class,
@@ -258,7 +356,7 @@ class CarritoTemporalServiceTest {
         assertEquals("Usuario no encontrado con ID: USER999", exception.getMessage());
 
         // No debe intentar guardar nada
-        verify(carritoRepository, never()).save(any());
+        verify(carritoStore, never()).fijar(anyString(), anyString(), anyLong());
     }
 
     /**
@@ -270,7 +368,6 @@ class CarritoTemporalServiceTest {
         String idUsuario = "USER123";
         String idProductoInexistente = "PROD999";
 
-        when(usuarioRepository.findById(idUsuario)).thenReturn(Optional.of(usuarioMock));
         when(productoRepository.findById(idProductoInexistente)).thenReturn(Optional.empty());
 
         // When & Then - Debe lanzar excepción
@@ -278,6 +375,7 @@ class CarritoTemporalServiceTest {
                 () -> carritoService.agregarProductoAlCarrito(idUsuario, idProductoInexistente, 1L));
 
         assertEquals("Producto no encontrado con ID: PROD999", exception.getMessage());
+        verify(carritoStore, never()).agregar(anyString(), anyString(), anyLong(), anyLong());
     }
 
     /**
@@ -287,14 +385,17 @@ class CarritoTemporalServiceTest {
     void debeContarItemsEnCarritoCorrectamente_TDD() {
         // Given - Usuario con 3 items en carrito
         String idUsuario = "USER123";
-        when(carritoRepository.countByIdUsuario_IdUsuario(idUsuario)).thenReturn(3L);
+        when(carritoStore.obtener(idUsuario)).thenReturn(List.of(
+                lineaMock(),
+                new Linea(2L, "PROD002", 1L, LocalDateTime.now()),
+                new Linea(3L, "PROD003", 4L, LocalDateTime.now())));
 
         // When - Contar items
         Long count = carritoService.countByUsuario(idUsuario);
 
         // Then - Debe retornar cantidad correcta
         assertEquals(3L, count, "Debe retornar el número correcto de items en carrito");
-        verify(carritoRepository).countByIdUsuario_IdUsuario(idUsuario);
+        verify(carritoStore).obtener(idUsuario);
     }
 
     /**
@@ -306,19 +407,69 @@ class CarritoTemporalServiceTest {
         String idUsuario = "USER123";
         String idProducto = "PROD001";
 
-        CarritoTemporal carritoExistente = new CarritoTemporal();
-        carritoExistente.setId(1L);
-        carritoExistente.setIdUsuario(usuarioMock);
-        carritoExistente.setIdProducto(productoMock);
+        when(carritoStore.obtener(idUsuario)).thenReturn(List.of(lineaMock()));
+        when(carritoStore.quitar(idUsuario, idProducto)).thenReturn(true);
 
-        when(carritoRepository.findByIdUsuario_IdUsuarioAndIdProducto_IdProducto(idUsuario, idProducto))
-                .thenReturn(carritoExistente);
- 
-        when(carritoRepository.existsById(1L)).thenReturn(true);      
         // When - Eliminar producto específico
         carritoService.eliminarProductoDelCarrito(idUsuario, idProducto);
 
         // Then - Debe eliminar solo ese producto
-       verify(carritoRepository).deleteById(1L);
+        verify(carritoStore).quitar(idUsuario, idProducto);
+    }
+
+    /**
+     * Edición por lotes: solo se escribe el resultado neto de cada producto.
+     */
+    @Test
+    void debeAplicarOperacionesEnLote() {
+        String idUsuario = "USER123";
+        Producto producto2 = new Producto();
+        producto2.setIdProducto("PROD002");
+        producto2.setNombre("Pan");
+        producto2.setPrecio(0.50);
+        producto2.setStock(10L);
+
+        when(carritoStore.obtener(idUsuario)).thenReturn(List.of(lineaMock()));
+        when(productoRepository.findAllById(List.of("PROD002"))).thenReturn(List.of(producto2));
+        when(stockLedgerService.obtenerStock("PROD002")).thenReturn(10L);
+        when(carritoDAO.findVistaProductos(any())).thenReturn(Map.of());
+
+        carritoService.aplicarOperaciones(idUsuario, List.of(
+                new CarritoOperacionDTO(CarritoOperacionDTO.AGREGAR, "PROD002", 2L),
+                new CarritoOperacionDTO(CarritoOperacionDTO.FIJAR, "PROD002", 6L),
+                new CarritoOperacionDTO(CarritoOperacionDTO.ELIMINAR, "PROD001", null)));
+
+        verify(carritoStore).quitar(idUsuario, "PROD001");
+        verify(carritoStore).fijar(idUsuario, "PROD002", 6L);
+        verify(carritoStore, never()).fijar(idUsuario, "PROD002", 2L);
+    }
+
+    /**
+     * Si un producto del lote no tiene stock no se aplica ninguna operación.
+     */
+    @Test
+    void debeRechazarLoteCompleto_StockInsuficiente() {
+        String idUsuario = "USER123";
+
+        when(carritoStore.obtener(idUsuario)).thenReturn(List.of(lineaMock()));
+        when(productoRepository.findAllById(List.of("PROD001"))).thenReturn(List.of(productoMock));
+        when(stockLedgerService.obtenerStock("PROD001")).thenReturn(100L);
+
+        IllegalStateException exception = assertThrows(IllegalStateException.class,
+                () -> carritoService.aplicarOperaciones(idUsuario, List.of(
+                        new CarritoOperacionDTO(CarritoOperacionDTO.AGREGAR, "PROD001", 99L))));
+
+        assertEquals("Stock insuficiente para los productos: PROD001", exception.getMessage());
+        verify(carritoStore, never()).fijar(anyString(), anyString(), anyLong());
+        verify(carritoStore, never()).quitar(anyString(), anyString());
+    }
+
+    private ProductoVista vista() {
+        return new ProductoVista("PROD001", productoMock.getNombre(), productoMock.getPrecio(),
+                productoMock.getStock());
+    }
+
+    private Linea lineaMock() {
+        return new Linea(carritoMock.getId(), "PROD001", carritoMock.getCantidad(), carritoMock.getFechaAgregado());
     }
 }
@@ -0,0 +1,89 @@
+package org.minimarket.minimarketbackendspring.unit;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.minimarket.minimarketbackendspring.dtos.DescuentoPromocionDTO;
+import org.minimarket.minimarketbackendspring.dtos.PrecioEfectivoDTO;
+import org.minimarket.minimarketbackendspring.dtos.requests.PrecioConsultaDTO;
+import org.minimarket.minimarketbackendspring.repositories.DescuentoPromocionRepository;
+import org.minimarket.minimarketbackendspring.services.impl.DescuentoPromocionServiceImpl;
+import org.minimarket.minimarketbackendspring.services.interfaces.TablaPreciosService;
+import org.minimarket.minimarketbackendspring.services.interfaces.TablaPreciosService.PrecioVigente;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+/**
+ * Pruebas del servicio de descuentos sobre la tabla de precios.
+ */
+@ExtendWith(MockitoExtension.class)
+class DescuentoPromocionServiceTest {
+
+    @Mock
+    private DescuentoPromocionRepository descuentoRepository;
+
+    @Mock
+    private TablaPreciosService tablaPrecios;
+
+    @InjectMocks
+    private DescuentoPromocionServiceImpl descuentoService;
+
+    @Test
+    void debeCalcularPreciosEfectivosDeVariosProductosEnUnaLlamada() {
+        when(tablaPrecios.obtener("P001")).thenReturn(new PrecioVigente("P001", new BigDecimal("10.0"), 1L,
+                new BigDecimal("20"), new BigDecimal("8.00")));
+        when(tablaPrecios.obtener("P002")).thenReturn(new PrecioVigente("P002", new BigDecimal("4.5"), null,
+                null, new BigDecimal("4.5")));
+
+        List<PrecioEfectivoDTO> precios = descuentoService.calcularPreciosEfectivos(List.of(
+                new PrecioConsultaDTO("P001", 3L),
+                new PrecioConsultaDTO("P002", null),
+                new PrecioConsultaDTO("P999", 1L)));
+
+        assertEquals(2, precios.size());
+        assertEquals(1L, precios.get(0).getIdDescuento());
+        assertEquals(new BigDecimal("8.00"), precios.get(0).getPrecioFinal());
+        assertEquals(new BigDecimal("6.00"), precios.get(0).getAhorro());
+        assertNull(precios.get(1).getIdDescuento());
+        assertEquals(new BigDecimal("4.5"), precios.get(1).getPrecioFinal());
+        assertEquals(1L, precios.get(1).getCantidad());
+    }
+
+    @Test
+    void debeRechazarUnaPromocionConMasDeUnAlcance() {
+        DescuentoPromocionDTO dto = new DescuentoPromocionDTO();
+        dto.setDescripcion("Promo");
+        dto.setPorcentaje(new BigDecimal("10"));
+        dto.setIdCategoriaId(1L);
+        dto.setIdProveedorId(2L);
+
+        assertThrows(IllegalArgumentException.class, () -> descuentoService.save(dto, null));
+        verify(descuentoRepository, never()).save(any());
+    }
+
+    @Test
+    void debeExigirAlcanceExplicitoParaTodoElCatalogo() {
+        DescuentoPromocionDTO dto = new DescuentoPromocionDTO();
+        dto.setDescripcion("Promo");
+        dto.setPorcentaje(new BigDecimal("10"));
+
+        // Omitir el producto no debe descontar todo el catálogo
+        assertThrows(IllegalArgumentException.class, () -> descuentoService.save(dto, null));
+        verify(descuentoRepository, never()).save(any());
+
+        dto.setAlcance(DescuentoPromocionDTO.ALCANCE_CATALOGO);
+        when(descuentoRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+        assertEquals(DescuentoPromocionDTO.ALCANCE_CATALOGO, descuentoService.save(dto, null).getAlcance());
+        verify(tablaPrecios).registrarCambioPromociones();
+    }
+}
@@ -0,0 +1,39 @@
+package org.minimarket.minimarketbackendspring.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import org.junit.jupiter.api.Test;
+import org.minimarket.minimarketbackendspring.utils.DiccionarioOrdinales;
+
+/**
+ * Pruebas del diccionario de ordinales usado por el carrito en memoria.
+ */
+class DiccionarioOrdinalesTest {
+
+    @Test
+    void debeAsignarOrdinalesEstablesYDensos() {
+        DiccionarioOrdinales diccionario = new DiccionarioOrdinales();
+
+        int primero = diccionario.ordinal("P001");
+        int segundo = diccionario.ordinal("P002");
+
+        assertEquals(0, primero);
+        assertEquals(1, segundo);
+        assertEquals(primero, diccionario.ordinal("P001"));
+        assertEquals("P002", diccionario.clave(segundo));
+        assertEquals(-1, diccionario.buscar("P003"));
+        assertEquals(2, diccionario.tamanio());
+    }
+
+    @Test
+    void debeCrecerMasAllaDeLaCapacidadInicial() {
+        DiccionarioOrdinales diccionario = new DiccionarioOrdinales();
+        for (int i = 0; i < 1000; i++) {
+            diccionario.ordinal("P" + i);
+        }
+
+        assertEquals("P999", diccionario.clave(diccionario.buscar("P999")));
+        assertNotEquals(-1, diccionario.buscar("P0"));
+        assertEquals(1000, diccionario.tamanio());
+    }
+}
@@ -0,0 +1,59 @@
+package org.minimarket.minimarketbackendspring.unit;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.minimarket.minimarketbackendspring.repositories.PedidoRepository;
+import org.minimarket.minimarketbackendspring.services.impl.PedidoActivoIndexServiceImpl;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Pruebas del índice de pedidos activos: carga sin locks y cambios
+ * confirmados durante la carga.
+ */
+class PedidoActivoIndexServiceTest {
+
+    private PedidoActivoIndexServiceImpl indice;
+    private PedidoRepository pedidoRepository;
+
+    @BeforeEach
+    void setUp() {
+        pedidoRepository = mock(PedidoRepository.class);
+        indice = new PedidoActivoIndexServiceImpl();
+        ReflectionTestUtils.setField(indice, "pedidoRepository", pedidoRepository);
+        ReflectionTestUtils.setField(indice, "maximoUsuarios", 100L);
+        indice.inicializar();
+    }
+
+    @Test
+    void debeCargarUnaVezYAplicarLosCambiosConfirmados() {
+        when(pedidoRepository.findIdsByUsuarioAndEstadoIn(eq("U1"), any())).thenReturn(List.of(1L));
+
+        assertTrue(indice.tienePedidoActivo("U1"));
+        indice.registrarEstado("U1", 1L, "entregado");
+        assertFalse(indice.tienePedidoActivo("U1"));
+        verify(pedidoRepository, times(1)).findIdsByUsuarioAndEstadoIn(eq("U1"), any());
+    }
+
+    @Test
+    void noDebeGuardarUnaCargaQueNoVioUnCambioConfirmadoDuranteLaConsulta() {
+        // La consulta lee el pedido 1 activo y mientras tanto se confirma su entrega
+        when(pedidoRepository.findIdsByUsuarioAndEstadoIn(eq("U1"), any())).thenAnswer(invocation -> {
+            indice.registrarEstado("U1", 1L, "entregado");
+            return List.of(1L);
+        }).thenReturn(List.of());
+
+        indice.tienePedidoActivo("U1");
+        assertFalse(indice.tienePedidoActivo("U1"));
+        verify(pedidoRepository, times(2)).findIdsByUsuarioAndEstadoIn(eq("U1"), any());
+    }
+}
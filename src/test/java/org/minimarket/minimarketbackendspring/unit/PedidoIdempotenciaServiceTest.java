@@ -0,0 +1,178 @@
+package org.minimarket.minimarketbackendspring.unit;
+
+import java.time.OffsetDateTime;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.minimarket.minimarketbackendspring.dtos.PedidoDTO;
+import org.minimarket.minimarketbackendspring.entities.PedidoIdempotencia;
+import org.minimarket.minimarketbackendspring.repositories.PedidoIdempotenciaRepository;
+import org.minimarket.minimarketbackendspring.services.impl.PedidoIdempotenciaServiceImpl;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionSystemException;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Pruebas de la idempotencia de creación de pedidos: repetición, duplicados
+ * concurrentes, reclamos vencidos y fallas al confirmar.
+ */
+class PedidoIdempotenciaServiceTest {
+
+    private PedidoIdempotenciaServiceImpl idempotenciaService;
+    private PedidoIdempotenciaRepository repository;
+    private PlatformTransactionManager transactionManager;
+
+    // Estado de la transacción que crea el pedido (las de reclamo usan otro)
+    private final SimpleTransactionStatus transaccionPedido = new SimpleTransactionStatus();
+
+    @BeforeEach
+    void setUp() {
+        repository = mock(PedidoIdempotenciaRepository.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenAnswer(invocation -> {
+            TransactionDefinition definicion = invocation.getArgument(0);
+            return definicion.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW
+                    ? new SimpleTransactionStatus()
+                    : transaccionPedido;
+        });
+        when(repository.guardarRespuesta(anyString(), anyString(), any(), anyString())).thenReturn(1);
+
+        idempotenciaService = new PedidoIdempotenciaServiceImpl();
+        ReflectionTestUtils.setField(idempotenciaService, "pedidoIdempotenciaRepository", repository);
+        ReflectionTestUtils.setField(idempotenciaService, "transactionManager", transactionManager);
+        ReflectionTestUtils.setField(idempotenciaService, "objectMapper", JsonMapper.builder().findAndAddModules().build());
+        ReflectionTestUtils.setField(idempotenciaService, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(idempotenciaService, "ttlHoras", 24L);
+        ReflectionTestUtils.setField(idempotenciaService, "maximoEnCache", 100L);
+        ReflectionTestUtils.setField(idempotenciaService, "reclamoVenceSegundos", 120L);
+        idempotenciaService.inicializar();
+    }
+
+    @Test
+    void debeRepetirLaRespuestaGuardadaSinVolverACrearElPedido() {
+        when(repository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("clave repetida"));
+        PedidoIdempotencia registro = registro(OffsetDateTime.now());
+        registro.setIdPedido(7L);
+        registro.setRespuesta("{\"id\":7}");
+        when(repository.findById("K1")).thenReturn(Optional.of(registro));
+
+        PedidoDTO pedido = idempotenciaService.ejecutar("K1", "U1", () -> {
+            throw new AssertionError("No debe crear otro pedido");
+        });
+
+        assertEquals(7L, pedido.getId());
+        // La segunda repetición sale del LRU sin consultar la tabla
+        assertEquals(7L, idempotenciaService.ejecutar("K1", "U1", () -> pedido(8L)).getId());
+        verify(repository, never()).guardarRespuesta(anyString(), anyString(), any(), anyString());
+    }
+
+    @Test
+    void debeCrearUnSoloPedidoConDuplicadosConcurrentes() throws Exception {
+        CountDownLatch iniciado = new CountDownLatch(1);
+        CountDownLatch liberar = new CountDownLatch(1);
+        AtomicInteger creados = new AtomicInteger();
+
+        CompletableFuture<PedidoDTO> primera = CompletableFuture.supplyAsync(
+                () -> idempotenciaService.ejecutar("K1", "U1", () -> {
+                    iniciado.countDown();
+                    esperar(liberar);
+                    creados.incrementAndGet();
+                    return pedido(1L);
+                }));
+        assertTrue(iniciado.await(5, TimeUnit.SECONDS));
+        CompletableFuture<PedidoDTO> segunda = CompletableFuture.supplyAsync(
+                () -> idempotenciaService.ejecutar("K1", "U1", () -> {
+                    creados.incrementAndGet();
+                    return pedido(2L);
+                }));
+        liberar.countDown();
+
+        assertEquals(1L, primera.get(5, TimeUnit.SECONDS).getId());
+        assertEquals(1L, segunda.get(5, TimeUnit.SECONDS).getId());
+        assertEquals(1, creados.get());
+    }
+
+    @Test
+    void debeRechazarUnaClaveReclamadaEnOtraInstanciaSinVencer() {
+        when(repository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("clave repetida"));
+        when(repository.findById("K1")).thenReturn(Optional.of(registro(OffsetDateTime.now())));
+
+        assertThrows(IllegalStateException.class, () -> idempotenciaService.ejecutar("K1", "U1", () -> pedido(1L)));
+    }
+
+    @Test
+    void debeTomarUnReclamoVencidoYProcesarLaSolicitud() {
+        when(repository.saveAndFlush(any())).thenThrow(new DataIntegrityViolationException("clave repetida"));
+        when(repository.findById("K1")).thenReturn(Optional.of(registro(OffsetDateTime.now().minusMinutes(10))));
+        when(repository.tomarReclamoVencido(eq("K1"), anyString(), any(), any())).thenReturn(1);
+
+        PedidoDTO pedido = idempotenciaService.ejecutar("K1", "U1", () -> pedido(3L));
+
+        assertEquals(3L, pedido.getId());
+        verify(repository).guardarRespuesta(eq("K1"), anyString(), eq(3L), anyString());
+    }
+
+    @Test
+    void debeRevertirSiOtroIntentoTomoElReclamo() {
+        when(repository.guardarRespuesta(anyString(), anyString(), anyLong(), anyString())).thenReturn(0);
+
+        assertThrows(IllegalStateException.class, () -> idempotenciaService.ejecutar("K1", "U1", () -> pedido(4L)));
+        verify(transactionManager).rollback(transaccionPedido);
+    }
+
+    @Test
+    void debeLiberarLaClaveSoloSiLaReversionEsSegura() {
+        assertThrows(IllegalStateException.class, () -> idempotenciaService.ejecutar("K1", "U1", () -> {
+            throw new IllegalStateException("Carrito vacío");
+        }));
+        verify(repository).liberar(eq("K1"), anyString());
+
+        // Commit con resultado desconocido: la clave queda reclamada
+        doThrow(new TransactionSystemException("conexión perdida")).when(transactionManager).commit(transaccionPedido);
+        assertThrows(TransactionSystemException.class,
+                () -> idempotenciaService.ejecutar("K2", "U1", () -> pedido(5L)));
+        verify(repository, never()).liberar(eq("K2"), anyString());
+    }
+
+    private PedidoIdempotencia registro(OffsetDateTime reclamadaAt) {
+        return new PedidoIdempotencia("K1", "U1", "otro-intento", reclamadaAt);
+    }
+
+    private PedidoDTO pedido(Long id) {
+        PedidoDTO pedido = new PedidoDTO();
+        pedido.setId(id);
+        return pedido;
+    }
+
+    private void esperar(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
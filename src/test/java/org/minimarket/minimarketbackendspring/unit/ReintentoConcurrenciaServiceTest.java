@@ -0,0 +1,73 @@
+package org.minimarket.minimarketbackendspring.unit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.minimarket.minimarketbackendspring.services.impl.ReintentoConcurrenciaServiceImpl;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Pruebas del ejecutor con reintentos ante conflictos de concurrencia.
+ */
+class ReintentoConcurrenciaServiceTest {
+
+    private ReintentoConcurrenciaServiceImpl reintentoService;
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        reintentoService = new ReintentoConcurrenciaServiceImpl();
+        ReflectionTestUtils.setField(reintentoService, "meterRegistry", meterRegistry);
+        ReflectionTestUtils.setField(reintentoService, "maxIntentos", 3);
+        ReflectionTestUtils.setField(reintentoService, "esperaBaseMs", 1L);
+    }
+
+    @Test
+    void debeReintentarHastaQueNoHayaConflicto() {
+        AtomicInteger intentos = new AtomicInteger();
+
+        String resultado = reintentoService.ejecutar("prueba", () -> {
+            if (intentos.incrementAndGet() < 3) {
+                throw new OptimisticLockingFailureException("conflicto");
+            }
+            return "ok";
+        });
+
+        assertEquals("ok", resultado);
+        assertEquals(3, intentos.get());
+        assertEquals(2.0, meterRegistry.counter("concurrencia.conflictos", "operacion", "prueba").count());
+        assertEquals(2.0, meterRegistry.counter("concurrencia.reintentos", "operacion", "prueba").count());
+    }
+
+    @Test
+    void debePropagarConflictoAlAgotarIntentos() {
+        AtomicInteger intentos = new AtomicInteger();
+
+        assertThrows(OptimisticLockingFailureException.class, () -> reintentoService.ejecutar("prueba", () -> {
+            intentos.incrementAndGet();
+            throw new OptimisticLockingFailureException("conflicto");
+        }));
+
+        assertEquals(3, intentos.get());
+        assertEquals(1.0, meterRegistry.counter("concurrencia.reintentos.agotados", "operacion", "prueba").count());
+    }
+
+    @Test
+    void noDebeReintentarOtrosErrores() {
+        AtomicInteger intentos = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> reintentoService.ejecutar("prueba", () -> {
+            intentos.incrementAndGet();
+            throw new IllegalStateException("sin stock");
+        }));
+
+        assertEquals(1, intentos.get());
+    }
+}
@@ -0,0 +1,62 @@
+package org.minimarket.minimarketbackendspring.unit;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.minimarket.minimarketbackendspring.utils.RuedaExpiracion;
+
+/**
+ * Pruebas de la rueda de expiración usada por las reservas de stock.
+ */
+class RuedaExpiracionTest {
+
+    @Test
+    void debeVencerClaveSoloAlLlegarSuTick() {
+        RuedaExpiracion<Long> rueda = new RuedaExpiracion<>(8, 1000, 0);
+        rueda.programar(1L, 3000);
+
+        assertTrue(rueda.avanzar(2999).isEmpty());
+        assertEquals(List.of(1L), rueda.avanzar(3000));
+        assertEquals(0, rueda.tamanio());
+    }
+
+    @Test
+    void debeRespetarVueltasCompletasDeLaRueda() {
+        RuedaExpiracion<Long> rueda = new RuedaExpiracion<>(4, 1000, 0);
+        // Misma ranura que el tick 2, pero dos vueltas después
+        rueda.programar(1L, 10_000);
+
+        assertTrue(rueda.avanzar(2000).isEmpty());
+        assertTrue(rueda.avanzar(6000).isEmpty());
+        assertEquals(List.of(1L), rueda.avanzar(10_000));
+    }
+
+    @Test
+    void debeVencerTodoSiPasaMasDeUnaVuelta() {
+        RuedaExpiracion<Long> rueda = new RuedaExpiracion<>(4, 1000, 0);
+        rueda.programar(1L, 1000);
+        rueda.programar(2L, 3000);
+
+        List<Long> vencidas = rueda.avanzar(60_000);
+
+        assertEquals(2, vencidas.size());
+        assertTrue(vencidas.containsAll(List.of(1L, 2L)));
+    }
+
+    @Test
+    void debeCancelarYReprogramar() {
+        RuedaExpiracion<Long> rueda = new RuedaExpiracion<>(8, 1000, 0);
+        rueda.programar(1L, 2000);
+        rueda.programar(2L, 2000);
+
+        assertTrue(rueda.cancelar(1L));
+        assertFalse(rueda.cancelar(1L));
+
+        rueda.programar(2L, 5000);
+        assertTrue(rueda.avanzar(4000).isEmpty());
+        assertEquals(List.of(2L), rueda.avanzar(5000));
+    }
+}
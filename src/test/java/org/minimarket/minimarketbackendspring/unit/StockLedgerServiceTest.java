@@ -0,0 +1,158 @@
+package org.minimarket.minimarketbackendspring.unit;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.minimarket.minimarketbackendspring.daos.interfaces.StockDAO;
+import org.minimarket.minimarketbackendspring.services.impl.StockLedgerServiceImpl;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Pruebas del ledger de stock: confirmación, reversión y sincronización con
+ * transacciones abiertas.
+ */
+class StockLedgerServiceTest {
+
+    private StockLedgerServiceImpl ledger;
+    private StockDAO stockDAO;
+
+    @BeforeEach
+    void setUp() {
+        stockDAO = mock(StockDAO.class);
+        TransactionTemplate transactionTemplate = mock(TransactionTemplate.class);
+        when(transactionTemplate.execute(any())).thenAnswer(
+                invocation -> ((TransactionCallback<?>) invocation.getArgument(0)).doInTransaction(null));
+        when(stockDAO.findAllStock()).thenReturn(Map.of("P1", 10L, "P2", 5L));
+        when(stockDAO.ajustarStock(any())).thenReturn(List.of());
+
+        ledger = new StockLedgerServiceImpl();
+        ReflectionTestUtils.setField(ledger, "stockDAO", stockDAO);
+        ReflectionTestUtils.setField(ledger, "transactionTemplate", transactionTemplate);
+        ReflectionTestUtils.setField(ledger, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(ledger, "habilitado", true);
+        ledger.registrarMetricas();
+        ledger.cargar();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void debePersistirLasVariacionesConfirmadasEnUnLote() {
+        iniciarTransaccion();
+        assertEquals(List.of(), ledger.descontar(Map.of("P1", 3L), Map.of()));
+        assertEquals(List.of(), ledger.reponer(Map.of("P2", 2L)));
+        assertEquals(7L, ledger.obtenerStock("P1"));
+
+        // Nada se escribe mientras la transacción sigue abierta
+        assertEquals(0, ledger.persistirPendientes());
+        terminarTransaccion(TransactionSynchronization.STATUS_COMMITTED);
+
+        assertEquals(2, ledger.persistirPendientes());
+        verify(stockDAO).ajustarStock(Map.of("P1", -3L, "P2", 2L));
+        assertEquals(7L, ledger.obtenerStock("P1"));
+        assertEquals(7L, ledger.obtenerStock("P2"));
+    }
+
+    @Test
+    void debeDeshacerLasVariacionesAlRevertir() {
+        iniciarTransaccion();
+        assertEquals(List.of("P2"), ledger.descontar(Map.of("P1", 3L, "P2", 6L), Map.of()));
+        ledger.descontar(Map.of("P1", 3L), Map.of());
+        ledger.reponer(Map.of("P2", 2L));
+        terminarTransaccion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals(10L, ledger.obtenerStock("P1"));
+        assertEquals(5L, ledger.obtenerStock("P2"));
+        assertEquals(0, ledger.persistirPendientes());
+        verify(stockDAO, never()).ajustarStock(any());
+    }
+
+    @Test
+    void noDebeDescontarLasUnidadesReservadasPorOtrosPedidos() {
+        // P1 tiene 10 y otros pedidos reservan 8: solo quedan 2 para vender
+        assertEquals(List.of("P1"), ledger.descontar(Map.of("P1", 3L), Map.of("P1", 8L)));
+        assertEquals(10L, ledger.obtenerStock("P1"));
+
+        assertEquals(List.of(), ledger.descontar(Map.of("P1", 2L), Map.of("P1", 8L)));
+        assertEquals(8L, ledger.obtenerStock("P1"));
+    }
+
+    @Test
+    void debeConservarUnDescuentoEnCursoAlSincronizarYConfirmar() {
+        iniciarTransaccion();
+        ledger.descontar(Map.of("P1", 3L), Map.of());
+
+        // Un alta o edición del producto escribe el stock sin el descuento aún sin confirmar
+        stockEnBaseDatos("P1", 10L);
+        ledger.sincronizarProducto("P1");
+        assertEquals(7L, ledger.obtenerStock("P1"));
+
+        terminarTransaccion(TransactionSynchronization.STATUS_COMMITTED);
+        assertEquals(7L, ledger.obtenerStock("P1"));
+        ledger.persistirPendientes();
+        verify(stockDAO).ajustarStock(Map.of("P1", -3L));
+    }
+
+    @Test
+    void debeConservarUnDescuentoEnCursoAlSincronizarYRevertir() {
+        iniciarTransaccion();
+        ledger.descontar(Map.of("P1", 3L), Map.of());
+        stockEnBaseDatos("P1", 20L);
+        ledger.sincronizarProducto("P1");
+        assertEquals(17L, ledger.obtenerStock("P1"));
+
+        terminarTransaccion(TransactionSynchronization.STATUS_ROLLED_BACK);
+        assertEquals(20L, ledger.obtenerStock("P1"));
+        assertEquals(0, ledger.persistirPendientes());
+    }
+
+    @Test
+    void debeLeerElStockPersistidoSiLasPendientesSeEscribieronAntesDeSincronizar() {
+        iniciarTransaccion();
+        ledger.descontar(Map.of("P1", 3L), Map.of());
+        terminarTransaccion(TransactionSynchronization.STATUS_COMMITTED);
+
+        // Se guarda el producto con stock 10 y, antes de sincronizar, la
+        // escritura de pendientes aplica el descuento sobre lo guardado
+        ledger.persistirPendientes();
+        stockEnBaseDatos("P1", 7L);
+        ledger.sincronizarProducto("P1");
+
+        assertEquals(7L, ledger.obtenerStock("P1"));
+        assertEquals(0, ledger.persistirPendientes());
+    }
+
+    private void stockEnBaseDatos(String idProducto, long stock) {
+        when(stockDAO.findStockByIds(List.of(idProducto))).thenReturn(Map.of(idProducto, stock));
+    }
+
+    private void iniciarTransaccion() {
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    private void terminarTransaccion(int estado) {
+        List<TransactionSynchronization> sincronizaciones = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        sincronizaciones.forEach(sincronizacion -> sincronizacion.afterCompletion(estado));
+    }
+}
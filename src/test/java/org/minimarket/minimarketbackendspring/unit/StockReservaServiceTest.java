@@ -0,0 +1,145 @@
+package org.minimarket.minimarketbackendspring.unit;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.minimarket.minimarketbackendspring.daos.interfaces.StockDAO;
+import org.minimarket.minimarketbackendspring.services.impl.StockReservaServiceImpl;
+import org.minimarket.minimarketbackendspring.services.interfaces.StockLedgerService;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+
+/**
+ * Pruebas de las reservas de stock: reserva todo o nada, confirmación,
+ * liberación al revertir, vencimiento y ajuste a las líneas del pedido.
+ */
+class StockReservaServiceTest {
+
+    private static final long TTL_MINUTOS = 15L;
+
+    private StockReservaServiceImpl reservas;
+
+    @BeforeEach
+    void setUp() {
+        StockLedgerService stockLedgerService = mock(StockLedgerService.class);
+        when(stockLedgerService.obtenerStock("P1")).thenReturn(10L);
+        when(stockLedgerService.obtenerStock("P2")).thenReturn(5L);
+
+        reservas = new StockReservaServiceImpl();
+        ReflectionTestUtils.setField(reservas, "stockLedgerService", stockLedgerService);
+        ReflectionTestUtils.setField(reservas, "stockDAO", mock(StockDAO.class));
+        ReflectionTestUtils.setField(reservas, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(reservas, "ttlMinutos", TTL_MINUTOS);
+        reservas.registrarMetricas();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void debeReservarTodoONadaConsiderandoOtrasReservas() {
+        assertEquals(List.of(), reservas.reservar(1L, Map.of("P1", 6L, "P2", 1L)));
+
+        // Quedan 4 de P1: el pedido 2 no reserva nada, ni siquiera P2
+        assertEquals(List.of("P1"), reservas.reservar(2L, Map.of("P1", 5L, "P2", 1L)));
+        assertFalse(reservas.tieneReservaVigente(2L));
+        assertEquals(6L, reservas.cantidadReservada("P1"));
+        assertEquals(1L, reservas.cantidadReservada("P2"));
+    }
+
+    @Test
+    void debeDejarDeContarLaReservaAlConfirmar() {
+        reservas.reservar(1L, Map.of("P1", 6L));
+        reservas.reservar(2L, Map.of("P1", 3L));
+        assertEquals(Map.of("P1", 3L), reservas.cantidadesReservadasPorOtros(1L, List.of("P1")));
+
+        reservas.confirmar(1L);
+
+        assertFalse(reservas.tieneReservaVigente(1L));
+        assertEquals(3L, reservas.cantidadReservada("P1"));
+    }
+
+    @Test
+    void debeLiberarLaReservaSiLaTransaccionSeRevierte() {
+        iniciarTransaccion();
+        reservas.reservar(1L, Map.of("P1", 6L));
+        assertTrue(reservas.tieneReservaVigente(1L));
+
+        terminarTransaccion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertFalse(reservas.tieneReservaVigente(1L));
+        assertEquals(0L, reservas.cantidadReservada("P1"));
+    }
+
+    @Test
+    void debeLiberarLasReservasVencidas() {
+        reservas.reservar(1L, Map.of("P1", 6L));
+
+        reservas.liberarVencidas(System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(TTL_MINUTOS) + 2000L);
+
+        assertFalse(reservas.tieneReservaVigente(1L));
+        assertEquals(0L, reservas.cantidadReservada("P1"));
+    }
+
+    @Test
+    void debeAjustarLaReservaALasLineasDelPedido() {
+        reservas.reservar(1L, Map.of("P1", 6L, "P2", 2L));
+        reservas.reservar(2L, Map.of("P1", 3L));
+
+        // P1 solo puede crecer en 1 (10 - 9 reservadas): el ajuste no cambia nada
+        assertEquals(List.of("P1"), reservas.ajustar(1L, Map.of("P1", 8L, "P2", 0L)));
+        assertEquals(9L, reservas.cantidadReservada("P1"));
+        assertEquals(2L, reservas.cantidadReservada("P2"));
+
+        assertEquals(List.of(), reservas.ajustar(1L, Map.of("P1", 7L, "P2", 0L)));
+        assertEquals(10L, reservas.cantidadReservada("P1"));
+        assertEquals(0L, reservas.cantidadReservada("P2"));
+    }
+
+    @Test
+    void debeRestaurarElAjusteSiLaTransaccionSeRevierte() {
+        reservas.reservar(1L, Map.of("P1", 6L));
+
+        iniciarTransaccion();
+        reservas.ajustar(1L, Map.of("P1", 2L, "P2", 4L));
+        assertEquals(2L, reservas.cantidadReservada("P1"));
+        terminarTransaccion(TransactionSynchronization.STATUS_ROLLED_BACK);
+
+        assertEquals(6L, reservas.cantidadReservada("P1"));
+        assertEquals(0L, reservas.cantidadReservada("P2"));
+        assertTrue(reservas.tieneReservaVigente(1L));
+    }
+
+    @Test
+    void noDebeAjustarUnPedidoSinReserva() {
+        assertEquals(List.of(), reservas.ajustar(1L, Map.of("P1", 50L)));
+        assertFalse(reservas.tieneReservaVigente(1L));
+        assertEquals(0L, reservas.cantidadReservada("P1"));
+    }
+
+    private void iniciarTransaccion() {
+        TransactionSynchronizationManager.initSynchronization();
+    }
+
+    private void terminarTransaccion(int estado) {
+        List<TransactionSynchronization> sincronizaciones = TransactionSynchronizationManager.getSynchronizations();
+        TransactionSynchronizationManager.clearSynchronization();
+        sincronizaciones.forEach(sincronizacion -> sincronizacion.afterCompletion(estado));
+    }
+}
@@ -0,0 +1,187 @@
+package org.minimarket.minimarketbackendspring.unit;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.minimarket.minimarketbackendspring.entities.Categoria;
+import org.minimarket.minimarketbackendspring.entities.DescuentoPromocion;
+import org.minimarket.minimarketbackendspring.entities.Producto;
+import org.minimarket.minimarketbackendspring.repositories.DescuentoPromocionRepository;
+import org.minimarket.minimarketbackendspring.repositories.ProductoRepository;
+import org.minimarket.minimarketbackendspring.services.impl.TablaPreciosServiceImpl;
+import org.minimarket.minimarketbackendspring.services.interfaces.TablaPreciosService.CambioPrecios;
+import org.minimarket.minimarketbackendspring.services.interfaces.TablaPreciosService.PrecioVigente;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Pruebas de la tabla de precios: precedencia de alcances y recálculo por
+ * partes.
+ */
+@ExtendWith(MockitoExtension.class)
+class TablaPreciosServiceTest {
+
+    @Mock
+    private DescuentoPromocionRepository descuentoRepository;
+
+    @Mock
+    private ProductoRepository productoRepository;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @InjectMocks
+    private TablaPreciosServiceImpl tablaPrecios;
+
+    // Tareas encargadas al executor; cada prueba decide cuándo ejecutarlas
+    private final List<Runnable> tareas = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(tablaPrecios, "tareasExecutor", (TaskExecutor) tareas::add);
+        tablaPrecios.inicializar();
+    }
+
+    @Test
+    void debeAplicarLaPromocionDelAlcanceMasEspecifico() {
+        LocalDate hoy = LocalDate.now();
+        when(descuentoRepository.findByEstadoConAlcance("activo")).thenReturn(List.of(
+                descuento(1L, "P001", null, "10", hoy, hoy.plusDays(1)),
+                descuento(2L, null, 7L, "30", hoy.minusDays(1), hoy),
+                descuento(3L, null, null, "5", hoy, hoy.plusDays(10)),
+                descuento(4L, null, 7L, "50", hoy.plusDays(1), hoy.plusDays(5))));
+        when(productoRepository.findAlcancesYPrecios()).thenReturn(filas(
+                new Object[] { "P001", 7L, null, 100.0 },
+                new Object[] { "P002", 7L, null, 100.0 },
+                new Object[] { "P003", 8L, 3L, 100.0 }));
+
+        // Producto antes que categoría, aunque la de categoría tenga mayor porcentaje
+        assertEquals(1L, tablaPrecios.obtener("P001").idDescuento());
+        assertEquals(new BigDecimal("90.00"), tablaPrecios.obtener("P001").precioFinal());
+        assertEquals(2L, tablaPrecios.obtener("P002").idDescuento());
+        assertEquals(3L, tablaPrecios.obtener("P003").idDescuento());
+        assertNull(tablaPrecios.obtener("P999"));
+        assertEquals(3, tablaPrecios.promocionesVigentes("P001").size());
+        assertTrue(tablaPrecios.esVigente(2L));
+        assertFalse(tablaPrecios.esVigente(4L));
+
+        // Mañana termina la de categoría y empieza la de 50%
+        assertEquals(new BigDecimal("50"), tablaPrecios.porcentajes(List.of("P002"), hoy.plusDays(1)).get("P002"));
+        verify(descuentoRepository, times(1)).findByEstadoConAlcance("activo");
+    }
+
+    @Test
+    void debeRecalcularSoloElProductoCambiado() {
+        LocalDate hoy = LocalDate.now();
+        when(descuentoRepository.findByEstadoConAlcance("activo")).thenReturn(List.of(
+                descuento(1L, null, 7L, "20", hoy, hoy.plusDays(3))));
+        when(productoRepository.findAlcancesYPrecios()).thenReturn(filas(
+                new Object[] { "P001", 8L, null, 10.0 },
+                new Object[] { "P002", 8L, null, 4.0 }));
+        when(productoRepository.findAlcancesYPrecios(any())).thenReturn(filas(
+                new Object[] { "P001", 7L, null, 10.0 }));
+
+        PrecioVigente antes = tablaPrecios.obtener("P001");
+        assertNull(antes.idDescuento());
+        verify(eventPublisher, never()).publishEvent(any(Object.class));
+
+        // Sin transacción activa el cambio se registra de inmediato
+        tablaPrecios.registrarCambioProducto("P001");
+        ejecutarTareas();
+        assertEquals(new BigDecimal("8.00"), tablaPrecios.obtener("P001").precioFinal());
+        assertEquals(new BigDecimal("4.0"), tablaPrecios.obtener("P002").precioFinal());
+        assertEquals(1L, tablaPrecios.version());
+        verify(productoRepository, times(1)).findAlcancesYPrecios();
+        verify(productoRepository, times(1)).findAlcancesYPrecios(List.of("P001"));
+        verify(descuentoRepository, times(1)).findByEstadoConAlcance("activo");
+        verify(eventPublisher).publishEvent(new CambioPrecios(Set.of("P001")));
+    }
+
+    @Test
+    void debeServirLaTablaPublicadaMientrasSeActualiza() {
+        LocalDate hoy = LocalDate.now();
+        when(descuentoRepository.findByEstadoConAlcance("activo")).thenReturn(List.of(
+                descuento(1L, "P001", null, "10", hoy, hoy.plusDays(1))));
+        when(productoRepository.findAlcancesYPrecios()).thenReturn(filas(
+                new Object[] { "P001", 7L, null, 100.0 }));
+        tablaPrecios.cargar();
+
+        // Como el checkout, que consulta precios desde su transacción de escritura
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            tablaPrecios.registrarCambioPromociones();
+            tablaPrecios.registrarCambioPromociones();
+            assertEquals(new BigDecimal("90.00"), tablaPrecios.obtener("P001").precioFinal());
+            assertEquals(new BigDecimal("90.00"), tablaPrecios.obtener("P001").precioFinal());
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+
+        // La lectura no tocó la base de datos; la actualización quedó encargada una vez
+        verify(descuentoRepository, times(1)).findByEstadoConAlcance("activo");
+        assertEquals(1, tareas.size());
+
+        ejecutarTareas();
+        verify(descuentoRepository, times(2)).findByEstadoConAlcance("activo");
+        verify(transactionManager, times(2)).getTransaction(
+                argThat(definicion -> definicion.getPropagationBehavior() == TransactionDefinition.PROPAGATION_REQUIRES_NEW
+                        && definicion.isReadOnly()));
+    }
+
+    private void ejecutarTareas() {
+        List<Runnable> pendientes = new ArrayList<>(tareas);
+        tareas.clear();
+        pendientes.forEach(Runnable::run);
+    }
+
+    private List<Object[]> filas(Object[]... filas) {
+        return new ArrayList<>(List.of(filas));
+    }
+
+    private DescuentoPromocion descuento(Long id, String idProducto, Long idCategoria, String porcentaje,
+            LocalDate inicio, LocalDate fin) {
+        DescuentoPromocion descuento = new DescuentoPromocion();
+        descuento.setId(id);
+        if (idProducto != null) {
+            Producto producto = new Producto();
+            producto.setIdProducto(idProducto);
+            descuento.setIdProducto(producto);
+        }
+        if (idCategoria != null) {
+            Categoria categoria = new Categoria();
+            categoria.setId(idCategoria);
+            descuento.setIdCategoria(categoria);
+        }
+        descuento.setPorcentaje(new BigDecimal(porcentaje));
+        descuento.setFechaInicio(inicio);
+        descuento.setFechaFin(fin);
+        descuento.setEstado("activo");
+        return descuento;
+    }
+}
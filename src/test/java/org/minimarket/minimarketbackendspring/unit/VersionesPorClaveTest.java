@@ -0,0 +1,34 @@
+package org.minimarket.minimarketbackendspring.unit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import org.junit.jupiter.api.Test;
+import org.minimarket.minimarketbackendspring.utils.VersionesPorClave;
+
+/**
+ * Pruebas de las versiones por clave usadas en las respuestas condicionales.
+ */
+class VersionesPorClaveTest {
+
+    @Test
+    void debeMantenerVersionHastaQueAvance() {
+        VersionesPorClave versiones = new VersionesPorClave(10);
+        long inicial = versiones.obtener("U1");
+
+        assertEquals(inicial, versiones.obtener("U1"));
+        versiones.avanzar("U1");
+        assertNotEquals(inicial, versiones.obtener("U1"));
+    }
+
+    @Test
+    void noDebeRepetirVersionTrasDesalojar() {
+        VersionesPorClave versiones = new VersionesPorClave(1);
+        long inicial = versiones.obtener("U1");
+
+        // Con capacidad 1, pedir otra clave desaloja U1
+        versiones.obtener("U2");
+        versiones.obtener("U2");
+
+        assertNotEquals(inicial, versiones.obtener("U1"));
+    }
+}